@@ -0,0 +1,200 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.ThreadMode;
+import com.github.ganquan.tiny.retrofit.annotate.Batch;
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import io.reactivex.Single;
+import io.reactivex.SingleObserver;
+import io.reactivex.disposables.Disposable;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * 500个调用的突发流量：逐个请求 vs {@code @Batch}合并请求
+ * <p>
+ * mock server每个请求固定延迟rttMillis模拟网络往返；结束时打印每轮突发的平均请求数和单次调用延迟的p50
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBurstBenchmark {
+    private static final int BURST = 500;
+
+    @Param({"10"})
+    int rttMillis;
+
+    private final Gson gson = new Gson();
+    private MockWebServer server;
+    private ItemService service;
+    private long[] latencies = new long[0];
+    private int latencyCount;
+    private int bursts;
+
+    interface ItemService {
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://burst.bench/item")
+        Single<Item> item(@Field("id") String id);
+
+        @Batch(window = 10, maxSize = 50)
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://burst.bench/items")
+        Single<Item> batchedItem(@Field("id") String id);
+    }
+
+    static class Item {
+        String id;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                Thread.sleep(rttMillis);
+                return new MockResponse().setBody(respond(request));
+            }
+        });
+        server.start();
+        final HttpUrl base = server.url("/");
+        JtRetrofit.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        okhttp3.Request request = chain.request();
+                        return chain.proceed(request.newBuilder()
+                                .url(request.url().newBuilder()
+                                        .host(base.host())
+                                        .port(base.port())
+                                        .build())
+                                .build());
+                    }
+                })
+                .build());
+        service = JtRetrofit.create(ItemService.class);
+    }
+
+    private String respond(RecordedRequest request) {
+        String body = request.getBody().readUtf8();
+        if (!request.getPath().endsWith("/items")) {
+            return "{\"id\":\"item\"}";
+        }
+        try {
+            List<Map<String, String>> calls = gson.fromJson(
+                    URLDecoder.decode(body.substring(body.indexOf('=') + 1), "UTF-8"),
+                    new TypeToken<List<Map<String, String>>>() {
+                    }.getType());
+            StringBuilder out = new StringBuilder("[");
+            for (int i = 0; i < calls.size(); i++) {
+                out.append(i > 0 ? "," : "")
+                        .append("{\"data\":{\"id\":\"").append(calls.get(i).get("id")).append("\"}}");
+            }
+            return out.append(']').toString();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        long[] sorted = Arrays.copyOf(latencies, latencyCount);
+        Arrays.sort(sorted);
+        System.out.println("\nrequests per burst: " + server.getRequestCount() / Math.max(bursts, 1)
+                + ", p50 latency: " + (sorted.length == 0 ? 0 : sorted[sorted.length / 2] / 1000) + " us");
+        server.shutdown();
+    }
+
+    private void burst(boolean batched) throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(BURST);
+        final long[] burstLatencies = new long[BURST];
+        for (int i = 0; i < BURST; i++) {
+            final int index = i;
+            final long start = System.nanoTime();
+            String id = String.valueOf(i);
+            (batched ? service.batchedItem(id) : service.item(id)).subscribe(new SingleObserver<Item>() {
+                @Override
+                public void onSubscribe(Disposable d) {
+                }
+
+                @Override
+                public void onSuccess(Item item) {
+                    burstLatencies[index] = System.nanoTime() - start;
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    done.countDown();
+                }
+            });
+        }
+        if (!done.await(60, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("burst timed out");
+        }
+        record(burstLatencies);
+    }
+
+    private synchronized void record(long[] burstLatencies) {
+        if (latencyCount + burstLatencies.length > latencies.length) {
+            latencies = Arrays.copyOf(latencies, (latencyCount + burstLatencies.length) * 2);
+        }
+        System.arraycopy(burstLatencies, 0, latencies, latencyCount, burstLatencies.length);
+        latencyCount += burstLatencies.length;
+        bursts++;
+    }
+
+    @Benchmark
+    public void unbatched() throws InterruptedException {
+        burst(false);
+    }
+
+    @Benchmark
+    public void batched() throws InterruptedException {
+        burst(true);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BatchBurstBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
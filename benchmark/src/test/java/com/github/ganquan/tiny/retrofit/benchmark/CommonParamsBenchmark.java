@@ -0,0 +1,82 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.IHttpInterceptor;
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+
+/**
+ * 15个公共参数时构建一个Request的开销：每个请求都执行拦截器(改动前的唯一方式) vs 静态拦截器的快照
+ * <p>
+ * 拦截器模拟常见的实现，每次从"用户信息"拼出参数值，例如设备id、版本号、渠道
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommonParamsBenchmark {
+    private static final int PARAMS = 15;
+
+    @Param({"false", "true"})
+    boolean snapshot;
+
+    @Setup
+    public void setUp() {
+        for (int i = 0; i < PARAMS; i++) {
+            final String key = "common" + i;
+            final int index = i;
+            IHttpInterceptor interceptor = new IHttpInterceptor() {
+                @Override
+                public void onHandleDataParams(Map<String, String> apiParams) {
+                    apiParams.put(key, "user-" + index + "-" + Integer.toHexString(key.hashCode()));
+                }
+            };
+            if (snapshot) {
+                JtRetrofit.addStaticHttpInterceptor(interceptor);
+            } else {
+                JtRetrofit.addHttpInterceptor(interceptor);
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        JtRetrofit.clearHttpInterceptors();
+    }
+
+    @Benchmark
+    public Object buildRequest() {
+        return JtRetrofit.create()
+                .url("http://localhost/user/42/update")
+                .addFormParams("name", "Gan Quan")
+                .addFormParams("email", "gq@example.com")
+                .build();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CommonParamsBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.internal.Request;
+
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Sink;
+import okio.Timeout;
+
+/**
+ * {@link com.github.ganquan.tiny.retrofit.annotate.Compressed}的CPU开销和传输字节数：
+ * 把日志形式的表单请求体写入只计数的sink，score是每次写入的耗时(单线程CPU时间)，
+ * 每个参数组合结束时打印写入sink的字节数；gc.alloc.rate.norm用来确认压缩时没有缓冲整个请求体
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx256m")
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+    @Param({"10240", "1048576", "10485760"})
+    int size;
+
+    @Param({"false", "true"})
+    boolean compressed;
+
+    private Request request;
+    private MethodHandle buildRequest;
+    private long wireBytes;
+
+    @Setup
+    public void setUp() throws Exception {
+        //模拟上传的日志：时间、级别、事件和随机id，重复度与实际日志接近
+        Random random = new Random(1);
+        String[] events = {"click", "expose", "scroll", "pay", "share"};
+        StringBuilder logs = new StringBuilder(size + 128);
+        while (logs.length() < size) {
+            logs.append("2018-04-09 12:").append(random.nextInt(60)).append(':').append(random.nextInt(60))
+                    .append(" I/Upload: event=").append(events[random.nextInt(events.length)])
+                    .append(" id=").append(Long.toHexString(random.nextLong()))
+                    .append(" page=home\n");
+        }
+        logs.setLength(size);
+        JtRetrofit.setCompressionThreshold(1024);
+        Request.Builder builder = JtRetrofit.create().url("http://localhost/log/upload")
+                .addField("logs", logs.toString());
+        if (compressed) {
+            builder.compressed();
+        }
+        request = builder.build();
+        Method method = Request.class.getDeclaredMethod("buildRequest");
+        method.setAccessible(true);
+        buildRequest = MethodHandles.lookup().unreflect(method);
+    }
+
+    @TearDown(Level.Trial)
+    public void report() {
+        System.out.println("\nsize=" + size + " compressed=" + compressed + " wire bytes=" + wireBytes);
+    }
+
+    @Benchmark
+    public long writeBody() throws Throwable {
+        okhttp3.Request okRequest = (okhttp3.Request) buildRequest.invoke(request);
+        CountingSink counter = new CountingSink();
+        BufferedSink sink = Okio.buffer(counter);
+        okRequest.body().writeTo(sink);
+        sink.close();
+        wireBytes = counter.count;
+        return counter.count;
+    }
+
+    /**
+     * 只计数，丢弃写入的数据
+     */
+    private static final class CountingSink implements Sink {
+        long count;
+
+        @Override
+        public void write(Buffer source, long byteCount) throws IOException {
+            count += byteCount;
+            source.skip(byteCount);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public Timeout timeout() {
+            return Timeout.NONE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CompressionBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,173 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.ThreadMode;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.SaveTo;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+
+/**
+ * {@link SaveTo}下载到磁盘：堆限制为32MB，下载512MB也不会OOM；gc.alloc.rate.norm不随文件大小增长
+ * <p>
+ * 本地server从固定的数组循环写出响应体，自身没有与文件大小相关的分配
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx32m")
+@State(Scope.Benchmark)
+public class DownloadBenchmark {
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+    @Param({"1", "64", "512"})
+    int megabytes;
+
+    private ServerSocket serverSocket;
+    private DownloadService service;
+    private File target;
+
+    interface DownloadService {
+        @Threading(subscribeOn = ThreadMode.IMMEDIATE, observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/file")
+        Single<File> download(@Path("port") int port, @SaveTo File target);
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("localhost"));
+        final long length = megabytes * 1024L * 1024L;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve(length);
+            }
+        }, "DownloadBenchmark-server");
+        thread.setDaemon(true);
+        thread.start();
+        target = File.createTempFile("download", ".bin");
+        service = JtRetrofit.create(DownloadService.class);
+    }
+
+    private void serve(long length) {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        handle(socket, length);
+                    }
+                }).start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * keep-alive连接上依次读请求(忽略Range)，写出length字节的200响应
+     */
+    private static void handle(Socket socket, long length) {
+        byte[] chunk = new byte[64 * 1024];
+        try (Socket closing = socket) {
+            InputStream in = new BufferedInputStream(closing.getInputStream());
+            OutputStream out = closing.getOutputStream();
+            while (true) {
+                long requestBodyLength = readHeaders(in);
+                if (requestBodyLength < 0) {
+                    return;
+                }
+                for (long i = 0; i < requestBodyLength; i++) {
+                    in.read();
+                }
+                String head = "HTTP/1.1 200 OK\r\nContent-Length: " + length + "\r\n\r\n";
+                out.write(head.getBytes(LATIN1));
+                for (long written = 0; written < length; written += chunk.length) {
+                    out.write(chunk, 0, (int) Math.min(chunk.length, length - written));
+                }
+                out.flush();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * @return 请求体长度，连接关闭时为-1
+     */
+    private static long readHeaders(InputStream in) throws IOException {
+        long contentLength = 0;
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            int c = in.read();
+            if (c == -1) {
+                return -1;
+            }
+            if (c != '\n') {
+                if (c != '\r') {
+                    line.append((char) c);
+                }
+                continue;
+            }
+            if (line.length() == 0) {
+                return contentLength;
+            }
+            String header = line.toString().toLowerCase(Locale.US);
+            if (header.startsWith("content-length:")) {
+                contentLength = Long.parseLong(header.substring("content-length:".length()).trim());
+            }
+            line.setLength(0);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        serverSocket.close();
+        target.delete();
+    }
+
+    @Benchmark
+    public File download() {
+        return service.download(serverSocket.getLocalPort(), target).blockingGet();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(DownloadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,169 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.IHttpInterceptor;
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.FieldMap;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+import com.github.ganquan.tiny.retrofit.internal.Request;
+
+import io.reactivex.Single;
+import okio.Buffer;
+
+/**
+ * 不涉及网络的请求构建开销：代理分发、MethodHandler创建、Request构建和请求体编码
+ * <p>
+ * 用gc profiler的gc.alloc.rate.norm观察每次操作的分配字节数。MethodHandler和buildRequest()不是公开api，
+ * 在setup中通过反射取得
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HotPathBenchmark {
+    /**
+     * 通过{@link IHttpInterceptor}添加公共参数的拦截器数量
+     */
+    @Param({"0", "4"})
+    int interceptors;
+
+    private UserService service;
+    private Map<String, String> extra;
+    private Constructor<?> methodHandlerConstructor;
+    private Method userMethod;
+    private MethodHandle buildRequest;
+    private File avatar;
+
+    interface UserService {
+        @Url("http://localhost/user/{id}/update")
+        Single<String> update(@Path("id") long id, @Field("name") String name,
+                              @Field("email") String email, @FieldMap Map<String, String> extra);
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        for (int i = 0; i < interceptors; i++) {
+            final String key = "common" + i;
+            JtRetrofit.addHttpInterceptor(new IHttpInterceptor() {
+                @Override
+                public void onHandleDataParams(Map<String, String> apiParams) {
+                    apiParams.put(key, "value of " + key);
+                }
+            });
+        }
+        service = JtRetrofit.create(UserService.class);
+        extra = new HashMap<>();
+        extra.put("city", "Shen Zhen");
+        extra.put("lang", "zh-CN");
+
+        userMethod = UserService.class.getDeclaredMethod("update", long.class, String.class,
+                String.class, Map.class);
+        methodHandlerConstructor = Class.forName(JtRetrofit.class.getName() + "$MethodHandler")
+                .getDeclaredConstructor(Method.class);
+        methodHandlerConstructor.setAccessible(true);
+        Method method = Request.class.getDeclaredMethod("buildRequest");
+        method.setAccessible(true);
+        buildRequest = MethodHandles.lookup().unreflect(method);
+
+        avatar = File.createTempFile("avatar", ".png");
+        avatar.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(avatar)) {
+            out.write(new byte[16 * 1024]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        JtRetrofit.clearHttpInterceptors();
+        avatar.delete();
+    }
+
+    private Request.Builder builder() {
+        return JtRetrofit.create()
+                .url("http://localhost/user/42/update")
+                .addFormParams("name", "Gan Quan")
+                .addFormParams("email", "gq@example.com")
+                .addFormParams(extra);
+    }
+
+    /**
+     * 缓存的代理 + MethodHandler.invoke，返回未订阅的Single
+     */
+    @Benchmark
+    public Object proxyInvoke() {
+        return JtRetrofit.create(UserService.class).update(42, "Gan Quan", "gq@example.com", extra);
+    }
+
+    /**
+     * 首次调用方法时解析注解的开销
+     */
+    @Benchmark
+    public Object methodHandlerConstruction() throws Exception {
+        return methodHandlerConstructor.newInstance(userMethod);
+    }
+
+    /**
+     * Request.Builder.build()，包括拦截器添加公共参数
+     */
+    @Benchmark
+    public Object requestBuild() {
+        return builder().build();
+    }
+
+    @Benchmark
+    public long formBody() throws Throwable {
+        return writeBody(builder().build());
+    }
+
+    @Benchmark
+    public long multipartBody() throws Throwable {
+        return writeBody(builder().addFormDataPart("avatar", avatar).build());
+    }
+
+    private long writeBody(Request request) throws Throwable {
+        okhttp3.Request okRequest = (okhttp3.Request) buildRequest.invoke(request);
+        Buffer sink = new Buffer();
+        okRequest.body().writeTo(sink);
+        long size = sink.size();
+        sink.clear();
+        return size;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HotPathBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+import com.github.ganquan.tiny.retrofit.internal.Request;
+
+import io.reactivex.Single;
+
+/**
+ * 一次api调用从方法参数到okhttp3.Request的分配字节数：MethodHandler把参数写入预先分配的builder，
+ * Request直接使用builder的表单参数生成请求，不包括请求体编码；其中约1KB是okhttp解析url的分配
+ * <p>
+ * 分配预算由library的InvokeAllocationTest检查，这里查看gc.alloc.rate.norm
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InvokeAllocationBenchmark {
+    private MethodHandle newBuilder;
+    private MethodHandle buildRequest;
+    private Object[] args;
+
+    interface UserService {
+        @Url("http://localhost/user/{id}/update")
+        Single<String> update(@Path("id") long id, @Field("name") String name, @Field("email") String email,
+                              @Field("age") int age);
+    }
+
+    @Setup
+    public void setUp() throws Throwable {
+        Method load = JtRetrofit.class.getDeclaredMethod("loadMethodHandler", Method.class);
+        load.setAccessible(true);
+        Object handler = load.invoke(null, UserService.class.getDeclaredMethod("update", long.class,
+                String.class, String.class, int.class));
+        Method method = handler.getClass().getDeclaredMethod("newBuilder", Object[].class);
+        method.setAccessible(true);
+        newBuilder = MethodHandles.lookup().unreflect(method).bindTo(handler);
+        method = Request.class.getDeclaredMethod("buildRequest");
+        method.setAccessible(true);
+        buildRequest = MethodHandles.lookup().unreflect(method);
+        //代理每次调用都会创建参数数组，这里复用同一个，只统计框架本身的分配
+        args = new Object[] {42L, "Gan Quan", "gq@example.com", 18};
+    }
+
+    @Benchmark
+    public Object invokeToOkRequest() throws Throwable {
+        Request.Builder builder = (Request.Builder) newBuilder.invoke(args);
+        return (okhttp3.Request) buildRequest.invoke(builder.build());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InvokeAllocationBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,150 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.Converter;
+import com.github.ganquan.tiny.retrofit.GsonConverterFactory;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import okio.Okio;
+
+/**
+ * 5MB响应的解析开销：旧实现先responseBody.string()再fromJson，新实现通过JsonReader直接读body字节流
+ * <p>
+ * 每次迭代结束时打印堆的峰值占用(peak heap)，配合gc profiler的gc.alloc.rate.norm对比内存开销
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgs = {"-Xms256m", "-Xmx256m"})
+@State(Scope.Benchmark)
+public class JsonDecodeBenchmark {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final Type ITEMS = new TypeToken<List<Item>>() {
+    }.getType();
+
+    @Param({"5242880"})
+    int bytes;
+
+    private final Gson gson = new Gson();
+    @SuppressWarnings("unchecked")
+    private final Converter<List<Item>> converter = (Converter<List<Item>>)
+            GsonConverterFactory.create(gson).responseBodyConverter(ITEMS, new Annotation[0]);
+    private byte[] payload;
+    private long peakHeap;
+
+    static class Item {
+        long id;
+        String name;
+        String description;
+    }
+
+    @Setup
+    public void setUp() {
+        StringBuilder json = new StringBuilder(bytes + 256).append('[');
+        for (int i = 0; json.length() < bytes; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i)
+                    .append(",\"name\":\"item-").append(i)
+                    .append("\",\"description\":\"tiny retrofit streaming decode benchmark item\"}");
+        }
+        payload = json.append(']').toString().getBytes(Charset.forName("UTF-8"));
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeak() {
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void recordPeak() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        peakHeap = Math.max(peakHeap, peak);
+    }
+
+    @TearDown
+    public void printPeak() {
+        System.out.println("\npeak heap: " + (peakHeap >> 20) + " MB");
+    }
+
+    private ResponseBody newBody() {
+        return ResponseBody.create(JSON, payload.length,
+                Okio.buffer(Okio.source(new ByteArrayInputStream(payload))));
+    }
+
+    /**
+     * 旧实现：先把整个body解码为String(UTF-16，约为字节数的2倍)，再解析
+     */
+    @Benchmark
+    public List<Item> string() throws IOException {
+        ResponseBody body = newBody();
+        try {
+            return gson.fromJson(body.string(), ITEMS);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * 新实现：默认的GsonConverterFactory，JsonReader直接读取charStream
+     */
+    @Benchmark
+    public List<Item> streaming() throws IOException {
+        ResponseBody body = newBody();
+        try {
+            return converter.convert(body);
+        } finally {
+            body.close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(JsonDecodeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,156 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ServerSocketFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.ThreadMode;
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * 完整的请求往返：在调用线程上阻塞执行，经过本地mock server，解析小/中/大三种JSON响应
+ * <p>
+ * 响应体预先生成，server不做额外计算；gc.alloc.rate.norm包括okhttp和mock server在同一进程内的分配
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RoundTripBenchmark {
+    /**
+     * 响应中的元素个数，对应约100B、10KB、1MB的响应体
+     */
+    @Param({"1", "100", "10000"})
+    int items;
+
+    private MockWebServer server;
+    private ItemService service;
+
+    interface ItemService {
+        @Threading(subscribeOn = ThreadMode.IMMEDIATE, observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/items")
+        Single<List<Item>> items(@Path("port") int port, @Field("page") String page);
+    }
+
+    static class Item {
+        long id;
+        String name;
+        String description;
+        double price;
+        boolean available;
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        final Buffer body = new Buffer().writeUtf8(json(items));
+        server = new MockWebServer();
+        server.setServerSocketFactory(new NoDelayServerSocketFactory());
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(body.clone());
+            }
+        });
+        server.start();
+        service = JtRetrofit.create(ItemService.class);
+    }
+
+    /**
+     * mock server分两次写响应头和响应体，开启Nagle时会与客户端的延迟ACK叠加出约40ms的等待
+     */
+    static class NoDelayServerSocketFactory extends ServerSocketFactory {
+        @Override
+        public ServerSocket createServerSocket() throws IOException {
+            return new ServerSocket() {
+                @Override
+                public Socket accept() throws IOException {
+                    Socket socket = super.accept();
+                    socket.setTcpNoDelay(true);
+                    return socket;
+                }
+            };
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ServerSocket createServerSocket(int port, int backlog, InetAddress address)
+                throws IOException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static String json(int items) {
+        StringBuilder out = new StringBuilder("[");
+        for (int i = 0; i < items; i++) {
+            out.append(i > 0 ? "," : "")
+                    .append("{\"id\":").append(i)
+                    .append(",\"name\":\"item ").append(i)
+                    .append("\",\"description\":\"a reasonably sized description of item ").append(i)
+                    .append("\",\"price\":").append(i * 1.5)
+                    .append(",\"available\":").append(i % 2 == 0)
+                    .append('}');
+        }
+        return out.append(']').toString();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public List<Item> roundTrip() {
+        return service.items(server.getPort(), "1").blockingGet();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(RoundTripBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.RequestSigner;
+
+/**
+ * 20个参数的HMAC-SHA256签名：{@link RequestSigner}逐字节送入复用的Mac vs 拦截器中常见的排序、拼接字符串再签名
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SigningBenchmark {
+    private static final int PARAMS = 20;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] SECRET = "benchmark-secret".getBytes(UTF_8);
+    private static final char[] HEX_DIGITS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final String[] names = new String[PARAMS];
+    private final String[] values = new String[PARAMS];
+    private final Map<String, String> map = new HashMap<>();
+    private RequestSigner.Params params;
+    private RequestSigner signer;
+    private Mac mac;
+
+    @Setup
+    public void setUp() throws Exception {
+        //与请求中的顺序一样是无序的
+        for (int i = 0; i < PARAMS; i++) {
+            names[i] = "param_" + (i * 7 % PARAMS);
+            values[i] = i % 4 == 0 ? "中文值" + i : "value-" + i + "-" + Integer.toHexString(i * 31);
+            map.put(names[i], values[i]);
+        }
+        params = new RequestSigner.Params() {
+            @Override
+            public int size() {
+                return PARAMS;
+            }
+
+            @Override
+            public String name(int index) {
+                return names[index];
+            }
+
+            @Override
+            public String value(int index) {
+                return values[index];
+            }
+        };
+        signer = new RequestSigner.Builder(SECRET).build();
+        mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+    }
+
+    @Benchmark
+    public String streaming() {
+        return signer.sign(params);
+    }
+
+    /**
+     * 改动前在IHttpInterceptor中的做法，Mac已经复用
+     */
+    @Benchmark
+    public String concatenated() {
+        StringBuilder content = new StringBuilder();
+        for (Map.Entry<String, String> entry : new TreeMap<>(map).entrySet()) {
+            if (content.length() > 0) {
+                content.append('&');
+            }
+            content.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        byte[] digest = mac.doFinal(content.toString().getBytes(UTF_8));
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(HEX_DIGITS[b >> 4 & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+        return hex.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SigningBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
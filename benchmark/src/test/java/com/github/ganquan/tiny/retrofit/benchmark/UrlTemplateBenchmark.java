@@ -0,0 +1,77 @@
+package com.github.ganquan.tiny.retrofit.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.github.ganquan.tiny.retrofit.internal.UrlTemplate;
+
+/**
+ * 对比旧的逐个String.format + replace展开@Path与预编译UrlTemplate一次展开的开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UrlTemplateBenchmark {
+
+    @Param({"1", "2", "3", "4", "5"})
+    int placeholders;
+
+    private String url;
+    private String[] names;
+    private Object[] values;
+    private UrlTemplate template;
+
+    @Setup
+    public void setUp() {
+        StringBuilder builder = new StringBuilder("https://api.example.com/v1");
+        names = new String[placeholders];
+        values = new Object[placeholders];
+        for (int i = 0; i < placeholders; i++) {
+            names[i] = "param" + i;
+            values[i] = "value-" + i;
+            builder.append("/segment").append(i).append("/{").append(names[i]).append('}');
+        }
+        url = builder.toString();
+        template = UrlTemplate.parse(url);
+    }
+
+    /**
+     * 旧实现：PathRequestAction对每个参数做一次String.format和全量replace
+     */
+    @Benchmark
+    public String formatAndReplace() {
+        String result = url;
+        for (int i = 0; i < names.length; i++) {
+            result = result.replace(String.format("{%s}", names[i]), values[i].toString());
+        }
+        return result;
+    }
+
+    @Benchmark
+    public String urlTemplate() {
+        return template.expand(values, null);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(UrlTemplateBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,427 @@
+package com.github.ganquan.tiny.retrofit.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * 编译期为api接口生成实现类，替代运行时的动态代理
+ * <p>
+ * 对于声明了{@code @Url}方法的接口{@code FooService}，在同一个包下生成{@code FooService$Impl}，
+ * 每个方法直接构造Request.Builder，不再需要反射解析注解。{@code JtRetrofit.create(Class)}
+ * 发现生成类时优先使用，否则回退到动态代理。
+ * <p>
+ * 使用方式：
+ * <pre>{@code
+ * annotationProcessor project(':compiler')
+ * }</pre>
+ * 接口中如果使用了本处理器不支持的注解，会跳过该接口，运行时仍走动态代理。
+ *
+ * @author GanQuan
+ */
+public class JtServiceProcessor extends AbstractProcessor {
+    static final String ANNOTATE_PACKAGE = "com.github.ganquan.tiny.retrofit.annotate";
+    static final String URL = ANNOTATE_PACKAGE + ".Url";
+    static final String FIELD = ANNOTATE_PACKAGE + ".Field";
+    static final String FIELD_MAP = ANNOTATE_PACKAGE + ".FieldMap";
+    static final String PATH = ANNOTATE_PACKAGE + ".Path";
+    static final String THREADING = ANNOTATE_PACKAGE + ".Threading";
+    static final String CACHEABLE = ANNOTATE_PACKAGE + ".Cacheable";
+    static final String COALESCE = ANNOTATE_PACKAGE + ".Coalesce";
+    static final String SINGLE = "io.reactivex.Single";
+    static final String FLOWABLE = "io.reactivex.Flowable";
+
+    /**
+     * 生成类名的后缀，需要和JtRetrofit中保持一致
+     */
+    static final String GENERATED_SUFFIX = "$Impl";
+
+    private static final Set<String> SUPPORTED_ANNOTATIONS =
+            new HashSet<>(Arrays.asList(URL, FIELD, FIELD_MAP, PATH, THREADING, CACHEABLE,
+                    COALESCE));
+
+    private Messager messager;
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return new LinkedHashSet<>(SUPPORTED_ANNOTATIONS);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        messager = processingEnv.getMessager();
+        Set<TypeElement> services = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            if (!URL.equals(annotation.getQualifiedName().toString())) {
+                continue;
+            }
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                Element enclosing = element.getEnclosingElement();
+                if (element.getKind() == ElementKind.METHOD
+                        && enclosing.getKind() == ElementKind.INTERFACE) {
+                    services.add((TypeElement) enclosing);
+                }
+            }
+        }
+
+        for (TypeElement service : services) {
+            ServiceImplWriter.Service model = parseService(service);
+            if (model != null) {
+                writeService(service, model);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解析api接口，校验失败或者包含不支持的注解时返回null
+     */
+    private ServiceImplWriter.Service parseService(TypeElement service) {
+        if (!service.getInterfaces().isEmpty()) {
+            error(service, "API interfaces must not extend other interfaces.");
+            return null;
+        }
+        if (!service.getTypeParameters().isEmpty()) {
+            error(service, "API interfaces must not declare type parameters.");
+            return null;
+        }
+        if (service.getModifiers().contains(Modifier.PRIVATE)) {
+            error(service, "API interfaces must not be private.");
+            return null;
+        }
+
+        ServiceImplWriter.Service model = new ServiceImplWriter.Service(
+                processingEnv.getElementUtils().getPackageOf(service).getQualifiedName().toString(),
+                implSimpleName(service),
+                service.getQualifiedName().toString(),
+                processingEnv.getElementUtils().getBinaryName(service).toString());
+
+        for (ExecutableElement method : ElementFilter.methodsIn(service.getEnclosedElements())) {
+            if (!method.getModifiers().contains(Modifier.ABSTRACT)) {
+                continue;
+            }
+            if (hasUnsupportedAnnotation(method) || returnsFlowable(method)) {
+                note(service, "skip generating " + model.implName
+                        + ", it uses annotations or return types resolved only by the runtime proxy");
+                return null;
+            }
+            ServiceImplWriter.ServiceMethod serviceMethod = parseMethod(method);
+            if (serviceMethod == null) {
+                return null;
+            }
+            model.methods.add(serviceMethod);
+        }
+        return model;
+    }
+
+    private ServiceImplWriter.ServiceMethod parseMethod(ExecutableElement method) {
+        if (!method.getTypeParameters().isEmpty()) {
+            error(method, "API methods must not declare type parameters.");
+            return null;
+        }
+
+        TypeMirror returnType = method.getReturnType();
+        TypeMirror responseType = null;
+        if (returnType.getKind() == TypeKind.DECLARED) {
+            DeclaredType declaredType = (DeclaredType) returnType;
+            TypeElement rawType = (TypeElement) declaredType.asElement();
+            if (SINGLE.equals(rawType.getQualifiedName().toString())
+                    && declaredType.getTypeArguments().size() == 1) {
+                responseType = declaredType.getTypeArguments().get(0);
+            }
+        }
+        if (responseType == null) {
+            error(method, "you must return a type == Single.class");
+            return null;
+        }
+        if (!isConcrete(responseType)) {
+            error(method, "Single type argument must not contain type variables or wildcards.");
+            return null;
+        }
+
+        String url = (String) annotationValue(method, URL);
+        if (url == null) {
+            error(method, "API methods must be annotated with @Url.");
+            return null;
+        }
+
+        ServiceImplWriter.ServiceMethod serviceMethod = new ServiceImplWriter.ServiceMethod(
+                method.getSimpleName().toString(), returnType.toString(),
+                processingEnv.getTypeUtils().erasure(responseType).toString(),
+                responseType.toString(), url, method.isVarArgs());
+        AnnotationMirror threading = annotationMirror(method, THREADING);
+        if (threading != null) {
+            serviceMethod.subscribeOn = enumValue(threading, "subscribeOn");
+            serviceMethod.observeOn = enumValue(threading, "observeOn");
+        }
+        AnnotationMirror cacheable = annotationMirror(method, CACHEABLE);
+        if (cacheable != null) {
+            long ttl = (Long) elementValue(cacheable, "ttl").getValue();
+            serviceMethod.cacheTtlMillis =
+                    TimeUnit.valueOf(enumValue(cacheable, "unit")).toMillis(ttl);
+            if (serviceMethod.cacheTtlMillis <= 0) {
+                error(method, "@Cacheable ttl must be positive");
+                return null;
+            }
+            for (Object value : (List<?>) elementValue(cacheable, "excludeParams").getValue()) {
+                serviceMethod.cacheExcludedParams.add((String) ((AnnotationValue) value).getValue());
+            }
+        }
+        AnnotationMirror coalesce = annotationMirror(method, COALESCE);
+        if (coalesce != null) {
+            serviceMethod.coalesce = true;
+            for (Object value : (List<?>) elementValue(coalesce, "excludeParams").getValue()) {
+                serviceMethod.coalesceExcludedParams.add((String) ((AnnotationValue) value).getValue());
+            }
+        }
+        for (TypeMirror thrownType : method.getThrownTypes()) {
+            serviceMethod.thrownTypes.add(thrownType.toString());
+        }
+
+        Set<String> pathNames = new LinkedHashSet<>();
+        for (VariableElement parameter : method.getParameters()) {
+            ServiceImplWriter.Parameter p = parseParameter(parameter);
+            if (p == null) {
+                return null;
+            }
+            if (p.kind == ServiceImplWriter.Parameter.PATH && !pathNames.add(p.key)) {
+                error(parameter, "duplicate @Path(\"" + p.key + "\")");
+                return null;
+            }
+            serviceMethod.parameters.add(p);
+            serviceMethod.parameterClasses.add(processingEnv.getTypeUtils().erasure(parameter.asType()).toString());
+        }
+
+        parsePlaceholders(url, serviceMethod.placeholders);
+        for (String placeholder : serviceMethod.placeholders) {
+            if (!pathNames.contains(placeholder)) {
+                error(method, "missing @Path(\"" + placeholder + "\") parameter");
+                return null;
+            }
+        }
+        pathNames.removeAll(serviceMethod.placeholders);
+        if (!pathNames.isEmpty()) {
+            error(method, "url does not contain {" + pathNames.iterator().next() + "}");
+            return null;
+        }
+        return serviceMethod;
+    }
+
+    /**
+     * 与运行时UrlTemplate的规则一致：{@code {name}}，name需符合{@code [a-zA-Z][a-zA-Z0-9_-]*}
+     */
+    private static void parsePlaceholders(String url, List<String> placeholders) {
+        int i = 0;
+        while (i < url.length()) {
+            int end = url.charAt(i) == '{' ? url.indexOf('}', i) : -1;
+            if (end > i + 1 && isPlaceholderName(url.substring(i + 1, end))) {
+                placeholders.add(url.substring(i + 1, end));
+                i = end + 1;
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isPlaceholderName(String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean letter = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+            if (!letter && (i == 0 || !((c >= '0' && c <= '9') || c == '_' || c == '-'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ServiceImplWriter.Parameter parseParameter(VariableElement parameter) {
+        String name = parameter.getSimpleName().toString();
+        String type = parameter.asType().toString();
+        AnnotationMirror mirror = null;
+        for (AnnotationMirror candidate : parameter.getAnnotationMirrors()) {
+            if (SUPPORTED_ANNOTATIONS.contains(qualifiedName(candidate))) {
+                mirror = candidate;
+                break;
+            }
+        }
+        if (mirror == null) {
+            error(parameter, "No tiny-retrofit annotation found.");
+            return null;
+        }
+
+        String annotation = qualifiedName(mirror);
+        if (FIELD.equals(annotation)) {
+            return new ServiceImplWriter.Parameter(ServiceImplWriter.Parameter.FIELD, name,
+                    type, (String) annotationValue(parameter, FIELD));
+        } else if (FIELD_MAP.equals(annotation)) {
+            TypeMirror erasure = processingEnv.getTypeUtils().erasure(parameter.asType());
+            if (!"java.util.Map".equals(erasure.toString())) {
+                error(parameter, "@FieldMap parameter type must be Map.");
+                return null;
+            }
+            return new ServiceImplWriter.Parameter(ServiceImplWriter.Parameter.FIELD_MAP, name,
+                    type, null);
+        } else if (PATH.equals(annotation)) {
+            return new ServiceImplWriter.Parameter(ServiceImplWriter.Parameter.PATH, name,
+                    type, (String) annotationValue(parameter, PATH));
+        }
+        error(parameter, "@Url is a method annotation.");
+        return null;
+    }
+
+    /**
+     * 流式返回的方法交给运行时代理
+     */
+    private static boolean returnsFlowable(ExecutableElement method) {
+        TypeMirror returnType = method.getReturnType();
+        return returnType.getKind() == TypeKind.DECLARED && FLOWABLE.equals(
+                ((TypeElement) ((DeclaredType) returnType).asElement()).getQualifiedName().toString());
+    }
+
+    private boolean hasUnsupportedAnnotation(ExecutableElement method) {
+        List<AnnotationMirror> mirrors = new ArrayList<>(method.getAnnotationMirrors());
+        for (VariableElement parameter : method.getParameters()) {
+            mirrors.addAll(parameter.getAnnotationMirrors());
+        }
+        for (AnnotationMirror mirror : mirrors) {
+            String name = qualifiedName(mirror);
+            if (name.startsWith(ANNOTATE_PACKAGE + ".") && !SUPPORTED_ANNOTATIONS.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isConcrete(TypeMirror type) {
+        switch (type.getKind()) {
+            case DECLARED:
+                for (TypeMirror argument : ((DeclaredType) type).getTypeArguments()) {
+                    if (!isConcrete(argument)) {
+                        return false;
+                    }
+                }
+                return true;
+            case ARRAY:
+                return isConcrete(((ArrayType) type).getComponentType());
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * 嵌套接口的生成类名与其binary name保持一致，例如Outer$FooService$Impl，便于运行时Class.forName
+     */
+    private static String implSimpleName(TypeElement service) {
+        String simpleName = service.getSimpleName().toString();
+        Element enclosing = service.getEnclosingElement();
+        while (enclosing.getKind().isClass() || enclosing.getKind().isInterface()) {
+            simpleName = enclosing.getSimpleName() + "$" + simpleName;
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return simpleName + GENERATED_SUFFIX;
+    }
+
+    private static String qualifiedName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private static AnnotationMirror annotationMirror(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (annotation.equals(qualifiedName(mirror))) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取枚举类型的注解成员，未声明时使用默认值
+     */
+    private String enumValue(AnnotationMirror mirror, String name) {
+        return ((VariableElement) elementValue(mirror, name).getValue()).getSimpleName().toString();
+    }
+
+    /**
+     * 读取注解成员，未声明时使用默认值
+     */
+    private AnnotationValue elementValue(AnnotationMirror mirror, String name) {
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(mirror);
+        for (ExecutableElement key : values.keySet()) {
+            if (name.equals(key.getSimpleName().toString())) {
+                return values.get(key);
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+
+    private static Object annotationValue(Element element, String annotation) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (!annotation.equals(qualifiedName(mirror))) {
+                continue;
+            }
+            for (ExecutableElement key : mirror.getElementValues().keySet()) {
+                if ("value".equals(key.getSimpleName().toString())) {
+                    AnnotationValue value = mirror.getElementValues().get(key);
+                    return value.getValue();
+                }
+            }
+            // 使用注解默认值
+            return "";
+        }
+        return null;
+    }
+
+    private void writeService(TypeElement service, ServiceImplWriter.Service model) {
+        String qualifiedName = model.packageName.isEmpty()
+                ? model.implName : model.packageName + "." + model.implName;
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, service);
+            try (Writer writer = file.openWriter()) {
+                writer.write(ServiceImplWriter.write(model));
+            }
+        } catch (IOException e) {
+            error(service, "Unable to write " + qualifiedName + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void note(Element element, String message) {
+        messager.printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+}
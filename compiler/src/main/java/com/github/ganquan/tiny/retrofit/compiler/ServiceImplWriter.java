@@ -0,0 +1,339 @@
+package com.github.ganquan.tiny.retrofit.compiler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 根据解析出的接口模型输出{@code FooService$Impl}源码
+ *
+ * @author GanQuan
+ */
+final class ServiceImplWriter {
+    private static final String INDENT = "    ";
+    private static final String BUILDER = "$builder";
+    private static final String ANNOTATIONS = "$annotations";
+    private static final String CONVERTER = "com.github.ganquan.tiny.retrofit.Converter";
+    private static final String THREADING_POLICY =
+            "com.github.ganquan.tiny.retrofit.ThreadingPolicy";
+    private static final String THREAD_MODE = "com.github.ganquan.tiny.retrofit.ThreadMode";
+    private static final String URL_TEMPLATE =
+            "com.github.ganquan.tiny.retrofit.internal.UrlTemplate";
+
+    private ServiceImplWriter() {
+        throw new AssertionError("No instances.");
+    }
+
+    static class Service {
+        final String packageName;
+        final String implName;
+        final String interfaceName;
+        /**
+         * 与运行时Class.getName()一致，用于生成按方法熔断和统计的key
+         */
+        final String binaryName;
+        final List<ServiceMethod> methods = new ArrayList<>();
+
+        Service(String packageName, String implName, String interfaceName, String binaryName) {
+            this.packageName = packageName;
+            this.implName = implName;
+            this.interfaceName = interfaceName;
+            this.binaryName = binaryName;
+        }
+    }
+
+    static class ServiceMethod {
+        final String name;
+        final String returnType;
+        final String rawResponseType;
+        final String responseType;
+        final String url;
+        final boolean varArgs;
+        /**
+         * url中的{@code {name}}占位符，按出现顺序
+         */
+        final List<String> placeholders = new ArrayList<>();
+        final List<String> thrownTypes = new ArrayList<>();
+        final List<Parameter> parameters = new ArrayList<>();
+        /**
+         * 参数类型擦除后的源码形式，用于运行时查找方法上的注解
+         */
+        final List<String> parameterClasses = new ArrayList<>();
+        /**
+         * {@code @Threading}声明的ThreadMode，未声明时为null
+         */
+        String subscribeOn;
+        String observeOn;
+        /**
+         * {@code @Cacheable}声明的有效期，为0时不缓存
+         */
+        long cacheTtlMillis;
+        final List<String> cacheExcludedParams = new ArrayList<>();
+        boolean coalesce;
+        final List<String> coalesceExcludedParams = new ArrayList<>();
+
+        ServiceMethod(String name, String returnType, String rawResponseType, String responseType,
+                      String url, boolean varArgs) {
+            this.name = name;
+            this.returnType = returnType;
+            this.rawResponseType = rawResponseType;
+            this.responseType = responseType;
+            this.url = url;
+            this.varArgs = varArgs;
+        }
+    }
+
+    static class Parameter {
+        static final int FIELD = 0;
+        static final int FIELD_MAP = 1;
+        static final int PATH = 2;
+
+        final int kind;
+        final String name;
+        final String type;
+        final String key;
+
+        Parameter(int kind, String name, String type, String key) {
+            this.kind = kind;
+            this.name = name;
+            this.type = type;
+            this.key = key;
+        }
+    }
+
+    static String write(Service service) {
+        StringBuilder out = new StringBuilder();
+        out.append("// Generated code from tiny-retrofit. Do not modify!\n");
+        if (!service.packageName.isEmpty()) {
+            out.append("package ").append(service.packageName).append(";\n\n");
+        }
+        out.append("@SuppressWarnings(\"unchecked\")\n")
+                .append("public final class ").append(service.implName)
+                .append(" implements ").append(service.interfaceName).append(" {\n");
+
+        for (int i = 0; i < service.methods.size(); i++) {
+            writeResponseType(out, i, service.methods.get(i));
+            writeUrlTemplate(out, i, service.methods.get(i));
+            writeThreadingPolicy(out, i, service.methods.get(i));
+        }
+        out.append('\n');
+        for (int i = 0; i < service.methods.size(); i++) {
+            out.append(INDENT).append("private final ").append(CONVERTER).append('<')
+                    .append(service.methods.get(i).responseType).append("> ")
+                    .append(converterField(i)).append(";\n");
+        }
+
+        // converter在创建实例时查找一次，之后每次调用复用；与动态代理一样把方法上的注解交给Converter.Factory
+        out.append('\n')
+                .append(INDENT).append("public ").append(service.implName).append("() {\n");
+        for (int i = 0; i < service.methods.size(); i++) {
+            ServiceMethod method = service.methods.get(i);
+            out.append(INDENT).append(INDENT).append(converterField(i)).append(" =\n")
+                    .append(INDENT).append(INDENT).append(INDENT).append(INDENT)
+                    .append("com.github.ganquan.tiny.retrofit.JtRetrofit.responseBodyConverter(")
+                    .append(responseTypeField(i)).append(",\n")
+                    .append(INDENT).append(INDENT).append(INDENT).append(INDENT).append(INDENT).append(INDENT)
+                    .append(ANNOTATIONS).append('(').append(stringLiteral(method.name));
+            for (String parameterClass : method.parameterClasses) {
+                out.append(", ").append(parameterClass).append(".class");
+            }
+            out.append("));\n");
+        }
+        out.append(INDENT).append("}\n");
+
+        out.append('\n')
+                .append(INDENT).append("private static java.lang.annotation.Annotation[] ").append(ANNOTATIONS)
+                .append("(String name, Class<?>... parameterTypes) {\n")
+                .append(INDENT).append(INDENT).append("try {\n")
+                .append(INDENT).append(INDENT).append(INDENT).append("return ").append(service.interfaceName)
+                .append(".class.getDeclaredMethod(name, parameterTypes).getAnnotations();\n")
+                .append(INDENT).append(INDENT).append("} catch (NoSuchMethodException e) {\n")
+                .append(INDENT).append(INDENT).append(INDENT).append("throw new AssertionError(e);\n")
+                .append(INDENT).append(INDENT).append("}\n")
+                .append(INDENT).append("}\n");
+
+        for (int i = 0; i < service.methods.size(); i++) {
+            out.append('\n');
+            writeMethod(out, i, service.binaryName, service.methods.get(i));
+        }
+        out.append("}\n");
+        return out.toString();
+    }
+
+    /**
+     * 返回值类型在类加载时解析一次，泛型类型通过TypeToken保留
+     */
+    private static void writeResponseType(StringBuilder out, int index, ServiceMethod method) {
+        out.append(INDENT).append("private static final java.lang.reflect.Type ")
+                .append(responseTypeField(index)).append(" = ");
+        if (method.rawResponseType.equals(method.responseType)) {
+            out.append(method.responseType).append(".class;\n");
+        } else {
+            out.append("new com.google.gson.reflect.TypeToken<").append(method.responseType)
+                    .append(">() {\n")
+                    .append(INDENT).append(INDENT).append("}.getType();\n");
+        }
+    }
+
+    /**
+     * 含有占位符的url在类加载时解析为UrlTemplate，与动态代理共用同一套展开和编码逻辑
+     */
+    private static void writeUrlTemplate(StringBuilder out, int index, ServiceMethod method) {
+        if (method.placeholders.isEmpty()) {
+            return;
+        }
+        out.append(INDENT).append("private static final ").append(URL_TEMPLATE).append(' ')
+                .append(urlTemplateField(index)).append(" =\n")
+                .append(INDENT).append(INDENT).append(INDENT).append(URL_TEMPLATE).append(".parse(")
+                .append(stringLiteral(method.url)).append(");\n");
+    }
+
+    private static void writeThreadingPolicy(StringBuilder out, int index, ServiceMethod method) {
+        if (method.subscribeOn == null) {
+            return;
+        }
+        out.append(INDENT).append("private static final ").append(THREADING_POLICY).append(' ')
+                .append(threadingPolicyField(index)).append(" =\n")
+                .append(INDENT).append(INDENT).append(INDENT).append(THREADING_POLICY).append(".of(")
+                .append(THREAD_MODE).append('.').append(method.subscribeOn).append(", ")
+                .append(THREAD_MODE).append('.').append(method.observeOn).append(");\n");
+    }
+
+    private static void writeMethod(StringBuilder out, int index, String binaryName,
+                                    ServiceMethod method) {
+        out.append(INDENT).append("@Override\n")
+                .append(INDENT).append("public ").append(method.returnType).append(' ')
+                .append(method.name).append('(');
+        for (int i = 0; i < method.parameters.size(); i++) {
+            Parameter parameter = method.parameters.get(i);
+            if (i > 0) {
+                out.append(", ");
+            }
+            String type = parameter.type;
+            if (method.varArgs && i == method.parameters.size() - 1 && type.endsWith("[]")) {
+                type = type.substring(0, type.length() - 2) + "...";
+            }
+            out.append("final ").append(type).append(' ').append(parameter.name);
+        }
+        out.append(')');
+        for (int i = 0; i < method.thrownTypes.size(); i++) {
+            out.append(i == 0 ? " throws " : ", ").append(method.thrownTypes.get(i));
+        }
+        out.append(" {\n");
+
+        //与MethodHandler相同：每个@Field一个，每个@FieldMap预留4个
+        int fieldCount = 0;
+        for (Parameter parameter : method.parameters) {
+            if (parameter.kind == Parameter.FIELD) {
+                fieldCount++;
+            } else if (parameter.kind == Parameter.FIELD_MAP) {
+                fieldCount += 4;
+            }
+        }
+        String body = INDENT + INDENT;
+        out.append(body).append("com.github.ganquan.tiny.retrofit.internal.Request.Builder ")
+                .append(BUILDER).append(" =\n")
+                .append(body).append(INDENT).append(INDENT)
+                .append("com.github.ganquan.tiny.retrofit.JtRetrofit.create(").append(fieldCount).append(").url(");
+        writeUrl(out, index, method);
+        out.append(");\n");
+
+        for (Parameter parameter : method.parameters) {
+            if (parameter.kind == Parameter.FIELD) {
+                out.append(body).append(BUILDER).append(".addField(")
+                        .append(stringLiteral(parameter.key)).append(", ")
+                        .append(parameter.name).append(");\n");
+            } else if (parameter.kind == Parameter.FIELD_MAP) {
+                out.append(body).append(BUILDER).append(".addFieldMap(")
+                        .append(parameter.name).append(");\n");
+            }
+        }
+        if (method.cacheTtlMillis > 0) {
+            out.append(body).append(BUILDER).append(".cacheable(").append(responseTypeField(index))
+                    .append(", ").append(method.cacheTtlMillis).append('L');
+            for (String param : method.cacheExcludedParams) {
+                out.append(", ").append(stringLiteral(param));
+            }
+            out.append(");\n");
+        }
+        if (method.coalesce) {
+            out.append(body).append(BUILDER).append(".coalesce(").append(responseTypeField(index));
+            for (String param : method.coalesceExcludedParams) {
+                out.append(", ").append(stringLiteral(param));
+            }
+            out.append(");\n");
+        }
+        out.append(body).append(BUILDER).append(".methodKey(")
+                .append(stringLiteral(binaryName + '#' + method.name)).append(");\n");
+        out.append(body).append("return ").append(BUILDER).append(".build().post(")
+                .append(converterField(index));
+        if (method.subscribeOn != null) {
+            out.append(", ").append(threadingPolicyField(index));
+        }
+        out.append(");\n")
+                .append(INDENT).append("}\n");
+    }
+
+    private static void writeUrl(StringBuilder out, int index, ServiceMethod method) {
+        if (method.placeholders.isEmpty()) {
+            out.append(stringLiteral(method.url));
+            return;
+        }
+        out.append(urlTemplateField(index)).append(".expand(new java.lang.Object[] {");
+        for (int i = 0; i < method.placeholders.size(); i++) {
+            if (i > 0) {
+                out.append(", ");
+            }
+            out.append(findPath(method, method.placeholders.get(i)).name);
+        }
+        out.append("}, null)");
+    }
+
+    private static Parameter findPath(ServiceMethod method, String name) {
+        for (Parameter parameter : method.parameters) {
+            if (parameter.kind == Parameter.PATH && parameter.key.equals(name)) {
+                return parameter;
+            }
+        }
+        throw new IllegalStateException("missing @Path(\"" + name + "\")");
+    }
+
+    private static String threadingPolicyField(int index) {
+        return "THREADING_POLICY_" + index;
+    }
+
+    private static String converterField(int index) {
+        return "converter" + index;
+    }
+
+    private static String urlTemplateField(int index) {
+        return "URL_TEMPLATE_" + index;
+    }
+
+    private static String responseTypeField(int index) {
+        return "RESPONSE_TYPE_" + index;
+    }
+
+    private static String stringLiteral(String value) {
+        StringBuilder literal = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    literal.append("\\\"");
+                    break;
+                case '\\':
+                    literal.append("\\\\");
+                    break;
+                case '\n':
+                    literal.append("\\n");
+                    break;
+                case '\t':
+                    literal.append("\\t");
+                    break;
+                default:
+                    literal.append(c);
+            }
+        }
+        return literal.append('"').toString();
+    }
+}
@@ -0,0 +1,424 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.ganquan.tiny.retrofit.internal.Preconditions;
+import com.github.ganquan.tiny.retrofit.internal.Request;
+
+import android.util.Log;
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.Single;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+
+/**
+ * 分片上传大文件，中断后从最后确认的分片继续
+ * <p>
+ * 文件按chunkSize切分，每个分片是一个multipart请求，除了{@link Builder#addFormParams}添加的参数外还包括：
+ * uploadId、index(分片序号)、offset、size(分片字节数)、total(文件字节数)、chunks(分片数)，
+ * 分片内容放在名为partName的part中。服务端对每个分片返回2xx和非空响应体表示已确认
+ * <p>
+ * 设置了progressFile时每确认一个分片就保存一次进度，使用同一个progressFile重新上传时沿用uploadId并跳过已确认的分片；
+ * 文件的大小或修改时间变化后进度失效，从头上传。全部完成后删除progressFile
+ * <p>
+ * 分片内容通过FileChannel按位置读取，所有分片共用一个FileChannel；
+ * 分片请求和普通请求一样经过拦截器、熔断器和并发限制，并按retryPolicy重试
+ * <pre>{@code
+ * new ChunkedUpload.Builder("https://example.com/upload", video)
+ *         .progressFile(new File(context.getFilesDir(), "video.upload"))
+ *         .build()
+ *         .start()
+ *         .observeOn(AndroidSchedulers.mainThread())
+ *         .subscribe(...);
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+public final class ChunkedUpload {
+    private static final String TAG = "ChunkedUpload";
+    private static final int PROGRESS_VERSION = 1;
+    private static final MediaType OCTET_STREAM = MediaType.parse("application/octet-stream");
+    private static final ThreadingPolicy CHUNK_POLICY = ThreadingPolicy.of(Schedulers.io(), null);
+    private static final Converter<Boolean> ACK = new Converter<Boolean>() {
+        @Override
+        public Boolean convert(ResponseBody body) {
+            return Boolean.TRUE;
+        }
+    };
+
+    private final String url;
+    private final File file;
+    private final int chunkSize;
+    private final int parallelism;
+    private final File progressFile;
+    private final String partName;
+    private final Map<String, String> formParams;
+    private final RetryPolicy retryPolicy;
+
+    private ChunkedUpload(Builder builder) {
+        this.url = builder.url;
+        this.file = builder.file;
+        this.chunkSize = builder.chunkSize;
+        this.parallelism = builder.parallelism;
+        this.progressFile = builder.progressFile;
+        this.partName = builder.partName;
+        this.formParams = new LinkedHashMap<>(builder.formParams);
+        this.retryPolicy = builder.retryPolicy;
+    }
+
+    public static final class Progress {
+        public final String uploadId;
+        public final long uploadedBytes;
+        public final long totalBytes;
+        public final int uploadedChunks;
+        public final int totalChunks;
+
+        Progress(String uploadId, long uploadedBytes, long totalBytes, int uploadedChunks, int totalChunks) {
+            this.uploadId = uploadId;
+            this.uploadedBytes = uploadedBytes;
+            this.totalBytes = totalBytes;
+            this.uploadedChunks = uploadedChunks;
+            this.totalChunks = totalChunks;
+        }
+
+        public boolean isDone() {
+            return uploadedChunks == totalChunks;
+        }
+
+        @Override
+        public String toString() {
+            return "Progress{" + uploadedBytes + "/" + totalBytes + " bytes, "
+                    + uploadedChunks + "/" + totalChunks + " chunks}";
+        }
+    }
+
+    /**
+     * 开始或继续上传
+     * <p>
+     * 订阅时先发出已恢复的进度，之后每确认一个分片发出一次，全部确认后完成；进度在io线程上发出。
+     * 取消订阅会取消进行中的分片请求，已确认的进度保留
+     *
+     * @return
+     */
+    public Observable<Progress> start() {
+        return Observable.using(
+                new Callable<Session>() {
+                    @Override
+                    public Session call() throws IOException {
+                        return new Session();
+                    }
+                },
+                new Function<Session, ObservableSource<Progress>>() {
+                    @Override
+                    public ObservableSource<Progress> apply(Session session) {
+                        return session.run();
+                    }
+                },
+                new Consumer<Session>() {
+                    @Override
+                    public void accept(Session session) {
+                        session.close();
+                    }
+                })
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * 一次上传过程：打开的FileChannel和已确认的分片
+     */
+    private final class Session {
+        final RandomAccessFile randomAccessFile;
+        final FileChannel channel;
+        final long length;
+        final long lastModified;
+        final int chunkCount;
+        final String uploadId;
+        /**
+         * guarded by this
+         */
+        final BitSet acked;
+        final AtomicLong uploadedBytes = new AtomicLong();
+
+        Session() throws IOException {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            channel = randomAccessFile.getChannel();
+            length = channel.size();
+            lastModified = file.lastModified();
+            chunkCount = (int) Math.max(1, (length + chunkSize - 1) / chunkSize);
+
+            String savedId = null;
+            BitSet savedAcked = null;
+            if (progressFile != null && progressFile.exists()) {
+                try (DataInputStream in = new DataInputStream(new FileInputStream(progressFile))) {
+                    if (in.readInt() == PROGRESS_VERSION) {
+                        String id = in.readUTF();
+                        if (in.readLong() == length && in.readLong() == lastModified
+                                && in.readInt() == chunkSize) {
+                            byte[] bits = new byte[in.readInt()];
+                            in.readFully(bits);
+                            savedId = id;
+                            savedAcked = BitSet.valueOf(bits);
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "discard unreadable progress " + progressFile, e);
+                }
+            }
+            uploadId = savedId != null ? savedId : UUID.randomUUID().toString();
+            acked = savedAcked != null ? savedAcked : new BitSet(chunkCount);
+            for (int i = acked.nextSetBit(0); i >= 0; i = acked.nextSetBit(i + 1)) {
+                uploadedBytes.addAndGet(chunkLength(i));
+            }
+        }
+
+        Observable<Progress> run() {
+            List<Integer> pending = new ArrayList<>();
+            for (int i = 0; i < chunkCount; i++) {
+                if (!acked.get(i)) {
+                    pending.add(i);
+                }
+            }
+            return Observable.fromIterable(pending)
+                    .flatMap(new Function<Integer, ObservableSource<Progress>>() {
+                        @Override
+                        public ObservableSource<Progress> apply(final Integer index) {
+                            return upload(index).map(new Function<Boolean, Progress>() {
+                                @Override
+                                public Progress apply(Boolean ignored) throws IOException {
+                                    return ack(index);
+                                }
+                            }).toObservable();
+                        }
+                    }, parallelism)
+                    .startWith(progress())
+                    .doOnComplete(new Action() {
+                        @Override
+                        public void run() {
+                            if (progressFile != null) {
+                                progressFile.delete();
+                            }
+                        }
+                    });
+        }
+
+        long chunkLength(int index) {
+            return Math.min(chunkSize, length - (long) index * chunkSize);
+        }
+
+        Single<Boolean> upload(int index) {
+            long offset = (long) index * chunkSize;
+            long size = chunkLength(index);
+            Request.Builder builder = JtRetrofit.create().url(url)
+                    .addFormParams(formParams)
+                    .addFormParams("uploadId", uploadId)
+                    .addFormParams("index", String.valueOf(index))
+                    .addFormParams("offset", String.valueOf(offset))
+                    .addFormParams("size", String.valueOf(size))
+                    .addFormParams("total", String.valueOf(length))
+                    .addFormParams("chunks", String.valueOf(chunkCount))
+                    .addFormDataPart(partName, file.getName(), new ChunkBody(channel, offset, size))
+                    .retry(retryPolicy);
+            return builder.build().post(ACK, CHUNK_POLICY);
+        }
+
+        Progress ack(int index) throws IOException {
+            long uploaded = uploadedBytes.addAndGet(chunkLength(index));
+            int chunks;
+            synchronized (this) {
+                acked.set(index);
+                chunks = acked.cardinality();
+                save();
+            }
+            return new Progress(uploadId, uploaded, length, chunks, chunkCount);
+        }
+
+        synchronized Progress progress() {
+            return new Progress(uploadId, uploadedBytes.get(), length, acked.cardinality(), chunkCount);
+        }
+
+        /**
+         * 先写临时文件再重命名，中途被杀死时保留上一次的进度
+         */
+        private void save() throws IOException {
+            if (progressFile == null) {
+                return;
+            }
+            File tmp = new File(progressFile.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                byte[] bits = acked.toByteArray();
+                out.writeInt(PROGRESS_VERSION);
+                out.writeUTF(uploadId);
+                out.writeLong(length);
+                out.writeLong(lastModified);
+                out.writeInt(chunkSize);
+                out.writeInt(bits.length);
+                out.write(bits);
+            }
+            if (!tmp.renameTo(progressFile)) {
+                throw new IOException("can not save progress to " + progressFile);
+            }
+        }
+
+        void close() {
+            try {
+                randomAccessFile.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * 文件的一段，每次写出时按位置读取，okhttp重试时可以重复写出
+     */
+    private static final class ChunkBody extends RequestBody {
+        private final FileChannel channel;
+        private final long offset;
+        private final long size;
+
+        ChunkBody(FileChannel channel, long offset, long size) {
+            this.channel = channel;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        @Override
+        public MediaType contentType() {
+            return OCTET_STREAM;
+        }
+
+        @Override
+        public long contentLength() {
+            return size;
+        }
+
+        @Override
+        public void writeTo(BufferedSink sink) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(size, 8192));
+            long position = offset;
+            long end = offset + size;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("file truncated at " + position);
+                }
+                sink.write(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final String url;
+        private final File file;
+        private int chunkSize = 1024 * 1024;
+        private int parallelism = 3;
+        private File progressFile;
+        private String partName = "file";
+        private final Map<String, String> formParams = new LinkedHashMap<>();
+        private RetryPolicy retryPolicy = new RetryPolicy.Builder().build();
+
+        public Builder(String url, File file) {
+            this.url = Preconditions.checkNotNull(url, "url == null");
+            this.file = Preconditions.checkNotNull(file, "file == null");
+        }
+
+        /**
+         * @param chunkSize 分片字节数，默认1MB；恢复上传时必须与上次相同，否则从头上传
+         *
+         * @return
+         */
+        public Builder chunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("chunkSize <= 0: " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param parallelism 同时上传的分片数，默认3
+         *
+         * @return
+         */
+        public Builder parallelism(int parallelism) {
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("parallelism <= 0: " + parallelism);
+            }
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * @param progressFile 保存进度的文件，为null(默认)时不保存，中断后从头上传
+         *
+         * @return
+         */
+        public Builder progressFile(File progressFile) {
+            this.progressFile = progressFile;
+            return this;
+        }
+
+        /**
+         * @param partName 分片内容的part名，默认file
+         *
+         * @return
+         */
+        public Builder partName(String partName) {
+            this.partName = Preconditions.checkNotNull(partName, "partName == null");
+            return this;
+        }
+
+        /**
+         * 每个分片请求都带上的表单参数
+         *
+         * @param key
+         * @param value
+         *
+         * @return
+         */
+        public Builder addFormParams(String key, String value) {
+            formParams.put(key, value);
+            return this;
+        }
+
+        /**
+         * @param retryPolicy 单个分片的重试策略，默认{@code new RetryPolicy.Builder().build()}；为null时不重试
+         *
+         * @return
+         */
+        public Builder retryPolicy(RetryPolicy retryPolicy) {
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        public ChunkedUpload build() {
+            return new ChunkedUpload(this);
+        }
+    }
+}
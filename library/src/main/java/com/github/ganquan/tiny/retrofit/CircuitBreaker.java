@@ -0,0 +1,365 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 熔断器：后端故障时直接失败，不再建立连接、等待超时
+ * <p>
+ * CLOSED：正常请求，按滚动窗口统计失败率和慢请求率，调用数达到minimumCalls且任一比例超过阈值时进入OPEN；<br>
+ * OPEN：请求直接以{@link JtApiException#CODE_CIRCUIT_OPEN}失败，经过openDuration后进入HALF_OPEN；<br>
+ * HALF_OPEN：只放行halfOpenCalls个试探请求，全部成功回到CLOSED，任一失败或者过慢回到OPEN
+ * <p>
+ * 失败指IOException和5xx响应，4xx和解析错误不计入。滚动窗口按秒分桶，过期的桶通过CAS整体替换为新的桶，
+ * 所有状态和计数都是原子变量，请求路径上没有锁
+ *
+ * @author GanQuan
+ * @see JtRetrofit#setCircuitBreakerConfig(Config)
+ */
+public final class CircuitBreaker {
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final long NANOS_PER_BUCKET = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * 未使用的桶，不会计入任何窗口
+     */
+    private static final Bucket EMPTY = new Bucket(Long.MIN_VALUE);
+
+    private final Config config;
+    private final AtomicReferenceArray<Bucket> buckets;
+    private final AtomicInteger state = new AtomicInteger(State.CLOSED.ordinal());
+    private volatile long openedAt;
+    /**
+     * HALF_OPEN时剩余的试探名额和已成功的试探数
+     */
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    CircuitBreaker(Config config) {
+        this.config = config;
+        this.buckets = new AtomicReferenceArray<>(config.windowSeconds);
+        resetWindow();
+    }
+
+    /**
+     * 一秒内的调用统计，epoch为所属的秒；过期的桶不清零，而是替换为新的桶，
+     * 已经拿到新桶的线程的计数不会被其他线程的换桶清掉
+     */
+    private static final class Bucket {
+        final long epoch;
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger slowCalls = new AtomicInteger();
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    public State state() {
+        State current = State.values()[state.get()];
+        if (current == State.OPEN && openExpired(System.nanoTime())) {
+            return State.HALF_OPEN;
+        }
+        return current;
+    }
+
+    /**
+     * 请求前调用
+     *
+     * @return 是否允许发出请求；返回true后必须调用{@link #onResult}或{@link #onIgnored()}
+     */
+    public boolean tryAcquire() {
+        int current = state.get();
+        if (current == State.CLOSED.ordinal()) {
+            return true;
+        }
+        if (current == State.OPEN.ordinal()) {
+            if (!openExpired(System.nanoTime())) {
+                return false;
+            }
+            if (state.compareAndSet(current, State.HALF_OPEN.ordinal())) {
+                halfOpenSuccesses.set(0);
+                halfOpenPermits.set(config.halfOpenCalls);
+            }
+        }
+        return state.get() == State.HALF_OPEN.ordinal() && acquirePermit();
+    }
+
+    private boolean acquirePermit() {
+        for (; ; ) {
+            int permits = halfOpenPermits.get();
+            if (permits <= 0) {
+                return false;
+            }
+            if (halfOpenPermits.compareAndSet(permits, permits - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 请求被取消等不计入统计的情况，归还HALF_OPEN的试探名额
+     */
+    public void onIgnored() {
+        if (state.get() == State.HALF_OPEN.ordinal()) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录请求结果
+     *
+     * @param durationNanos 从发出请求到收到响应头的耗时
+     * @param error         成功时为null
+     */
+    public void onResult(long durationNanos, Throwable error) {
+        boolean failure = isFailure(error);
+        boolean slow = durationNanos >= config.slowCallNanos;
+        long now = System.nanoTime();
+
+        if (state.get() == State.HALF_OPEN.ordinal()) {
+            if (failure || slow) {
+                open(State.HALF_OPEN, now);
+            } else if (halfOpenSuccesses.incrementAndGet() >= config.halfOpenCalls
+                    && state.compareAndSet(State.HALF_OPEN.ordinal(), State.CLOSED.ordinal())) {
+                resetWindow();
+            }
+            return;
+        }
+        if (state.get() != State.CLOSED.ordinal()) {
+            return;
+        }
+
+        Bucket bucket = bucket(now / NANOS_PER_BUCKET);
+        bucket.calls.incrementAndGet();
+        if (failure) {
+            bucket.failures.incrementAndGet();
+        }
+        if (slow) {
+            bucket.slowCalls.incrementAndGet();
+        }
+        if ((failure || slow) && shouldOpen(now / NANOS_PER_BUCKET)) {
+            open(State.CLOSED, now);
+        }
+    }
+
+    private static boolean isFailure(Throwable error) {
+        if (error == null) {
+            return false;
+        }
+        if (error instanceof IOException) {
+            return true;
+        }
+        return error instanceof JtApiException && ((JtApiException) error).httpCode >= 500;
+    }
+
+    private Bucket bucket(long second) {
+        int length = buckets.length();
+        //nanoTime可能是负数
+        int index = (int) ((second % length + length) % length);
+        for (; ; ) {
+            Bucket bucket = buckets.get(index);
+            if (bucket.epoch >= second) {
+                return bucket;
+            }
+            Bucket next = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, next)) {
+                return next;
+            }
+        }
+    }
+
+    private boolean shouldOpen(long second) {
+        int calls = 0;
+        int failures = 0;
+        int slowCalls = 0;
+        for (int i = 0, length = buckets.length(); i < length; i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket.epoch > second - length) {
+                calls += bucket.calls.get();
+                failures += bucket.failures.get();
+                slowCalls += bucket.slowCalls.get();
+            }
+        }
+        return calls >= config.minimumCalls
+                && (failures >= calls * config.failureRateThreshold
+                || slowCalls >= calls * config.slowCallRateThreshold);
+    }
+
+    private void open(State from, long now) {
+        if (state.compareAndSet(from.ordinal(), State.OPEN.ordinal())) {
+            openedAt = now;
+        }
+    }
+
+    private boolean openExpired(long now) {
+        return now - openedAt >= config.openDurationNanos;
+    }
+
+    private void resetWindow() {
+        for (int i = 0, length = buckets.length(); i < length; i++) {
+            buckets.set(i, EMPTY);
+        }
+    }
+
+    /**
+     * 按host(和方法)懒加载熔断器，修改配置时整体替换
+     */
+    static final class Registry {
+        final Config config;
+        private final ConcurrentMap<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+        Registry(Config config) {
+            this.config = config;
+        }
+
+        CircuitBreaker get(String host, String methodKey) {
+            String key = config.perMethod && methodKey != null ? host + '#' + methodKey : host;
+            CircuitBreaker breaker = breakers.get(key);
+            if (breaker == null) {
+                CircuitBreaker created = new CircuitBreaker(config);
+                breaker = breakers.putIfAbsent(key, created);
+                if (breaker == null) {
+                    breaker = created;
+                }
+            }
+            return breaker;
+        }
+    }
+
+    public static final class Config {
+        final int windowSeconds;
+        final int minimumCalls;
+        final float failureRateThreshold;
+        final float slowCallRateThreshold;
+        final long slowCallNanos;
+        final long openDurationNanos;
+        final int halfOpenCalls;
+        final boolean perMethod;
+
+        private Config(Builder builder) {
+            this.windowSeconds = builder.windowSeconds;
+            this.minimumCalls = builder.minimumCalls;
+            this.failureRateThreshold = builder.failureRateThreshold;
+            this.slowCallRateThreshold = builder.slowCallRateThreshold;
+            this.slowCallNanos = builder.slowCallNanos;
+            this.openDurationNanos = builder.openDurationNanos;
+            this.halfOpenCalls = builder.halfOpenCalls;
+            this.perMethod = builder.perMethod;
+        }
+
+        public static final class Builder {
+            private int windowSeconds = 10;
+            private int minimumCalls = 20;
+            private float failureRateThreshold = 0.5f;
+            private float slowCallRateThreshold = 1f;
+            private long slowCallNanos = TimeUnit.SECONDS.toNanos(5);
+            private long openDurationNanos = TimeUnit.SECONDS.toNanos(30);
+            private int halfOpenCalls = 3;
+            private boolean perMethod;
+
+            /**
+             * @param seconds 滚动窗口长度，默认10秒
+             *
+             * @return
+             */
+            public Builder window(int seconds) {
+                if (seconds < 1) {
+                    throw new IllegalArgumentException("window < 1: " + seconds);
+                }
+                this.windowSeconds = seconds;
+                return this;
+            }
+
+            /**
+             * @param minimumCalls 窗口内至少有多少次调用才计算比例，默认20
+             *
+             * @return
+             */
+            public Builder minimumCalls(int minimumCalls) {
+                if (minimumCalls < 1) {
+                    throw new IllegalArgumentException("minimumCalls < 1: " + minimumCalls);
+                }
+                this.minimumCalls = minimumCalls;
+                return this;
+            }
+
+            /**
+             * @param threshold 失败率阈值(0, 1]，默认0.5
+             *
+             * @return
+             */
+            public Builder failureRateThreshold(float threshold) {
+                this.failureRateThreshold = checkRate(threshold);
+                return this;
+            }
+
+            /**
+             * 慢请求率阈值，默认1(只有全部请求都慢时才熔断)
+             *
+             * @param threshold    (0, 1]
+             * @param slowDuration 超过该耗时的请求算作慢请求，默认5秒
+             * @param unit
+             *
+             * @return
+             */
+            public Builder slowCallRateThreshold(float threshold, long slowDuration, TimeUnit unit) {
+                this.slowCallRateThreshold = checkRate(threshold);
+                this.slowCallNanos = unit.toNanos(slowDuration);
+                return this;
+            }
+
+            /**
+             * @param duration OPEN状态的持续时间，默认30秒
+             * @param unit
+             *
+             * @return
+             */
+            public Builder openDuration(long duration, TimeUnit unit) {
+                this.openDurationNanos = unit.toNanos(duration);
+                return this;
+            }
+
+            /**
+             * @param calls HALF_OPEN状态放行的试探请求数，默认3
+             *
+             * @return
+             */
+            public Builder halfOpenCalls(int calls) {
+                if (calls < 1) {
+                    throw new IllegalArgumentException("halfOpenCalls < 1: " + calls);
+                }
+                this.halfOpenCalls = calls;
+                return this;
+            }
+
+            /**
+             * @param perMethod true：每个host下的每个api方法单独熔断；false(默认)：同一个host共用一个熔断器
+             *
+             * @return
+             */
+            public Builder perMethod(boolean perMethod) {
+                this.perMethod = perMethod;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(this);
+            }
+
+            private static float checkRate(float rate) {
+                if (!(rate > 0 && rate <= 1)) {
+                    throw new IllegalArgumentException("rate must be in (0, 1]: " + rate);
+                }
+                return rate;
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.github.ganquan.tiny.retrofit.internal.Preconditions;
+
+/**
+ * 公共参数的拦截器注册表
+ * <p>
+ * 静态拦截器添加的参数(设备id、版本号、渠道等)只在需要时计算一次，保存为不可变的{@link Snapshot}，
+ * 之后的请求直接复用，直到调用{@link #invalidate()}，例如登录状态变化时；
+ * 普通拦截器和原来一样，每个请求都会执行一次，可以读取和修改该请求的参数。
+ * <p>
+ * 拦截器列表是copy-on-write的，请求进行中也可以安全地增删
+ *
+ * @author GanQuan
+ */
+public final class CommonParams {
+    private static final List<IHttpInterceptor> staticInterceptors = new CopyOnWriteArrayList<>();
+    private static final List<IHttpInterceptor> interceptors = new CopyOnWriteArrayList<>();
+    private static final Object lock = new Object();
+    /**
+     * 为null时表示需要重新计算
+     */
+    private static volatile Snapshot snapshot;
+    /**
+     * guarded by lock
+     */
+    private static long version;
+
+    private CommonParams() {
+    }
+
+    /**
+     * 增加每个请求都执行的拦截器
+     *
+     * @param interceptor
+     */
+    static void addInterceptor(IHttpInterceptor interceptor) {
+        interceptors.add(Preconditions.checkNotNull(interceptor, "interceptor == null"));
+    }
+
+    /**
+     * 增加静态拦截器，它收到的是一个空的Map，添加的参数会保存在快照中
+     *
+     * @param interceptor
+     */
+    static void addStaticInterceptor(IHttpInterceptor interceptor) {
+        staticInterceptors.add(Preconditions.checkNotNull(interceptor, "interceptor == null"));
+        invalidate();
+    }
+
+    static boolean removeInterceptor(IHttpInterceptor interceptor) {
+        if (staticInterceptors.remove(interceptor)) {
+            invalidate();
+            return true;
+        }
+        return interceptors.remove(interceptor);
+    }
+
+    static void clear() {
+        interceptors.clear();
+        staticInterceptors.clear();
+        invalidate();
+    }
+
+    /**
+     * 丢弃当前快照，下一个请求重新执行静态拦截器
+     */
+    static void invalidate() {
+        synchronized (lock) {
+            snapshot = null;
+        }
+    }
+
+    /**
+     * 当前的快照，需要时执行静态拦截器重新计算
+     *
+     * @return
+     */
+    public static Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current != null) {
+            return current;
+        }
+        synchronized (lock) {
+            //与invalidate()互斥，计算期间的invalidate不会被覆盖
+            current = snapshot;
+            if (current == null) {
+                Map<String, String> params = new LinkedHashMap<>();
+                for (IHttpInterceptor interceptor : staticInterceptors) {
+                    interceptor.onHandleDataParams(params);
+                }
+                current = snapshot = new Snapshot(++version, params);
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 把公共参数写入一个请求的参数：先放入快照中的参数(替换同名参数)，再按添加顺序执行普通拦截器
+     *
+     * @param apiParams
+     */
+    public static void applyTo(Map<String, String> apiParams) {
+        Snapshot current = snapshot();
+        for (int i = 0; i < current.names.length; i++) {
+            apiParams.put(current.names[i], current.values[i]);
+        }
+        if (!interceptors.isEmpty()) {
+            for (IHttpInterceptor interceptor : interceptors) {
+                interceptor.onHandleDataParams(apiParams);
+            }
+        }
+    }
+
+    /**
+     * 静态拦截器的计算结果，创建后不再改变
+     */
+    public static final class Snapshot {
+        private final long version;
+        private final String[] names;
+        private final String[] values;
+        private final Map<String, String> params;
+
+        Snapshot(long version, Map<String, String> computed) {
+            Map<String, String> params = new LinkedHashMap<>(computed.size() * 2);
+            for (Map.Entry<String, String> entry : computed.entrySet()) {
+                if (entry.getKey() != null && entry.getValue() != null) {
+                    params.put(entry.getKey(), entry.getValue());
+                }
+            }
+            this.version = version;
+            this.names = params.keySet().toArray(new String[params.size()]);
+            this.values = params.values().toArray(new String[params.size()]);
+            this.params = Collections.unmodifiableMap(params);
+        }
+
+        /**
+         * 每次重新计算都会递增
+         *
+         * @return
+         */
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * 不可修改的参数，按静态拦截器添加的顺序
+         *
+         * @return
+         */
+        public Map<String, String> getParams() {
+            return params;
+        }
+    }
+}
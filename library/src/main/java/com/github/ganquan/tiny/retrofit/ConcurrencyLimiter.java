@@ -0,0 +1,297 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按RTT自适应调整的并发限制(TCP Vegas算法)
+ * <p>
+ * 记录观测到的最小RTT作为无排队时的延迟，每个请求完成后估算排队数 {@code limit * (1 - minRtt / rtt)}：
+ * 小于alpha时limit加1，大于beta时减1，IOException(超时、连接失败)时limit按比例减小。
+ * 超出limit的请求进入等待队列，有请求完成时按顺序发出；队列满时以
+ * {@link JtApiException#CODE_LIMIT_EXCEEDED}失败
+ * <p>
+ * 每隔probeInterval个样本重置最小RTT，避免网络基础延迟变化后limit一直偏小
+ *
+ * @author GanQuan
+ * @see JtRetrofit#setConcurrencyLimitConfig(Config)
+ */
+public final class ConcurrencyLimiter {
+    private final Config config;
+    private final AtomicInteger limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong minRtt = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+    /**
+     * ConcurrentLinkedQueue.size()需要遍历，单独计数
+     */
+    private final AtomicInteger queueDepth = new AtomicInteger();
+
+    ConcurrencyLimiter(Config config) {
+        this.config = config;
+        this.limit = new AtomicInteger(config.initialLimit);
+    }
+
+    /**
+     * 获取发出请求的名额，有请求在排队时不插队
+     *
+     * @return 获取成功后必须调用{@link #onSample}或{@link #release()}
+     */
+    public boolean tryAcquire() {
+        return waiting.isEmpty() && acquirePermit();
+    }
+
+    /**
+     * 没有名额时排队等待
+     *
+     * @param job 获得名额后在归还名额的线程上执行，不能阻塞
+     *
+     * @return false：队列已满，job不会执行
+     */
+    public boolean enqueue(Runnable job) {
+        if (queueDepth.incrementAndGet() > config.maxQueue) {
+            queueDepth.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            return false;
+        }
+        waiting.offer(job);
+        // 入队前可能已经有请求完成，重新检查名额，避免没有线程唤醒队列
+        drain();
+        return true;
+    }
+
+    private boolean acquirePermit() {
+        for (; ; ) {
+            int current = inFlight.get();
+            if (current >= limit.get()) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还名额并记录本次请求的RTT
+     *
+     * @param rttNanos 从发出请求到收到响应头的耗时
+     * @param dropped  是否因为IOException失败
+     */
+    public void onSample(long rttNanos, boolean dropped) {
+        update(rttNanos, dropped);
+        release();
+    }
+
+    /**
+     * 归还名额，不记录样本，例如请求被取消
+     */
+    public void release() {
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && acquirePermit()) {
+            Runnable job = waiting.poll();
+            if (job == null) {
+                inFlight.decrementAndGet();
+                continue;
+            }
+            queueDepth.decrementAndGet();
+            job.run();
+        }
+    }
+
+    private void update(long rtt, boolean dropped) {
+        if (sampleCount.incrementAndGet() % config.probeInterval == 0) {
+            minRtt.set(rtt);
+        }
+        long min = minRtt.get();
+        while (rtt < min && !minRtt.compareAndSet(min, rtt)) {
+            min = minRtt.get();
+        }
+        min = Math.min(min, rtt);
+
+        int current = limit.get();
+        int next;
+        if (dropped) {
+            next = current - Math.max(1, current / 10);
+        } else if (inFlight.get() * 2 < current) {
+            // 并发远低于limit时RTT不能说明容量，不调整
+            return;
+        } else {
+            double queued = current * (1 - (double) min / Math.max(rtt, 1));
+            if (queued < config.alpha) {
+                next = current + 1;
+            } else if (queued > config.beta) {
+                next = current - 1;
+            } else {
+                return;
+            }
+        }
+        next = Math.max(config.minLimit, Math.min(config.maxLimit, next));
+        // 失败说明其他样本已经调整过，本次样本放弃
+        limit.compareAndSet(current, next);
+    }
+
+    /**
+     * @return 当前的并发限制
+     */
+    public int limit() {
+        return limit.get();
+    }
+
+    /**
+     * @return 进行中的请求数
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return 等待名额的请求数，包括已经取消但还没有出队的请求
+     */
+    public int queueDepth() {
+        return queueDepth.get();
+    }
+
+    /**
+     * @return 因为队列已满被拒绝的请求数
+     */
+    public long rejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * @return 观测到的最小RTT，没有样本时为Long.MAX_VALUE
+     */
+    public long minRttNanos() {
+        return minRtt.get();
+    }
+
+    /**
+     * 按host懒加载限制器，修改配置时整体替换
+     */
+    static final class Registry {
+        private final Config config;
+        private final ConcurrentMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+        Registry(Config config) {
+            this.config = config;
+        }
+
+        ConcurrencyLimiter get(String host) {
+            ConcurrencyLimiter limiter = limiters.get(host);
+            if (limiter == null) {
+                ConcurrencyLimiter created = new ConcurrencyLimiter(config);
+                limiter = limiters.putIfAbsent(host, created);
+                if (limiter == null) {
+                    limiter = created;
+                }
+            }
+            return limiter;
+        }
+    }
+
+    public static final class Config {
+        final int initialLimit;
+        final int minLimit;
+        final int maxLimit;
+        final int maxQueue;
+        final int alpha;
+        final int beta;
+        final int probeInterval;
+
+        private Config(Builder builder) {
+            this.initialLimit = builder.initialLimit;
+            this.minLimit = builder.minLimit;
+            this.maxLimit = builder.maxLimit;
+            this.maxQueue = builder.maxQueue;
+            this.alpha = builder.alpha;
+            this.beta = builder.beta;
+            this.probeInterval = builder.probeInterval;
+        }
+
+        public static final class Builder {
+            private int initialLimit = 20;
+            private int minLimit = 1;
+            private int maxLimit = 200;
+            private int maxQueue = 100;
+            private int alpha = 3;
+            private int beta = 6;
+            private int probeInterval = 1000;
+
+            /**
+             * @param initial 初始limit，默认20
+             * @param min     limit下限，默认1
+             * @param max     limit上限，默认200
+             *
+             * @return
+             */
+            public Builder limit(int initial, int min, int max) {
+                if (min < 1 || min > initial || initial > max) {
+                    throw new IllegalArgumentException("require 1 <= min <= initial <= max: "
+                            + min + ", " + initial + ", " + max);
+                }
+                this.initialLimit = initial;
+                this.minLimit = min;
+                this.maxLimit = max;
+                return this;
+            }
+
+            /**
+             * @param maxQueue 每个host最多排队的请求数，默认100，为0时超出limit直接拒绝
+             *
+             * @return
+             */
+            public Builder maxQueue(int maxQueue) {
+                if (maxQueue < 0) {
+                    throw new IllegalArgumentException("maxQueue < 0: " + maxQueue);
+                }
+                this.maxQueue = maxQueue;
+                return this;
+            }
+
+            /**
+             * 估算排队数的目标区间，默认[3, 6]
+             *
+             * @param alpha 低于该值时增大limit
+             * @param beta  高于该值时减小limit
+             *
+             * @return
+             */
+            public Builder queueThreshold(int alpha, int beta) {
+                if (alpha < 0 || alpha > beta) {
+                    throw new IllegalArgumentException("require 0 <= alpha <= beta: " + alpha + ", " + beta);
+                }
+                this.alpha = alpha;
+                this.beta = beta;
+                return this;
+            }
+
+            /**
+             * @param samples 每隔多少个样本重新测量最小RTT，默认1000
+             *
+             * @return
+             */
+            public Builder probeInterval(int samples) {
+                if (samples < 1) {
+                    throw new IllegalArgumentException("probeInterval < 1: " + samples);
+                }
+                this.probeInterval = samples;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(this);
+            }
+        }
+    }
+}
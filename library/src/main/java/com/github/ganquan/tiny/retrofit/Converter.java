@@ -0,0 +1,73 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import okhttp3.ResponseBody;
+
+/**
+ * 把http响应体转换为api方法声明的返回类型
+ * <p>
+ * 通过{@link JtRetrofit#addConverterFactory(Factory)}注册，api方法的converter在解析方法时确定一次，之后每次调用复用
+ *
+ * @author GanQuan
+ */
+public interface Converter<T> {
+
+    /**
+     * 转换响应体，调用方负责关闭body
+     *
+     * @param body
+     *
+     * @return
+     *
+     * @throws IOException
+     */
+    T convert(ResponseBody body) throws IOException;
+
+    /**
+     * 逐个读取响应体中JSON数组的元素，用于返回Flowable的api方法；关闭时关闭响应体
+     */
+    interface ElementReader<T> extends Closeable {
+        boolean hasNext() throws IOException;
+
+        /**
+         * @return 下一个元素，JSON中的null返回null
+         */
+        T next() throws IOException;
+    }
+
+    /**
+     * 根据返回类型创建Converter
+     */
+    abstract class Factory {
+        /**
+         * 返回能够处理type的Converter，不能处理时返回null，交给下一个Factory
+         *
+         * @param type        Single的泛型参数，例如{@code Single<List<User>>}中的{@code List<User>}
+         * @param annotations api方法上的注解，编译期生成的实现类与动态代理相同；
+         *                    Request.Builder发起的请求为空数组
+         *
+         * @return
+         */
+        public abstract Converter<?> responseBodyConverter(Type type, Annotation[] annotations);
+
+        /**
+         * 返回把响应体定位到JSON数组、之后逐个读取元素的Converter，不能处理时返回null；
+         * Converter返回的ElementReader持有响应体，由调用方关闭
+         *
+         * @param elementType Flowable的泛型参数
+         * @param path        数组所在的字段，多层用.分隔，空字符串表示响应本身就是数组，
+         *                    见{@link com.github.ganquan.tiny.retrofit.annotate.ArrayPath}
+         * @param annotations api方法上的注解
+         *
+         * @return
+         */
+        public Converter<? extends ElementReader<?>> elementReaderConverter(Type elementType, String path,
+                                                                            Annotation[] annotations) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+import com.github.ganquan.tiny.retrofit.internal.Preconditions;
+import com.google.gson.Gson;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import okhttp3.ResponseBody;
+
+/**
+ * 默认的Converter.Factory，使用Gson解析任意类型，TypeAdapter在创建Converter时查找一次
+ *
+ * @author GanQuan
+ */
+public final class GsonConverterFactory extends Converter.Factory {
+    private final Gson gson;
+
+    private GsonConverterFactory(Gson gson) {
+        this.gson = gson;
+    }
+
+    public static GsonConverterFactory create() {
+        return create(new Gson());
+    }
+
+    public static GsonConverterFactory create(Gson gson) {
+        return new GsonConverterFactory(Preconditions.checkNotNull(gson, "gson == null"));
+    }
+
+    @Override
+    public Converter<?> responseBodyConverter(Type type, Annotation[] annotations) {
+        return new GsonResponseBodyConverter<>(gson, gson.getAdapter(TypeToken.get(type)));
+    }
+
+    @Override
+    public Converter<? extends Converter.ElementReader<?>> elementReaderConverter(Type elementType, String path,
+                                                                                  Annotation[] annotations) {
+        return new GsonElementReaderConverter<>(gson, gson.getAdapter(TypeToken.get(elementType)),
+                path.isEmpty() ? new String[0] : path.split("\\."));
+    }
+
+    static final class GsonResponseBodyConverter<T> implements Converter<T> {
+        private final Gson gson;
+        private final TypeAdapter<T> adapter;
+
+        GsonResponseBodyConverter(Gson gson, TypeAdapter<T> adapter) {
+            this.gson = gson;
+            this.adapter = adapter;
+        }
+
+        /**
+         * 直接从body的字节流边读边解析，避免先把整个响应转换成String
+         */
+        @Override
+        public T convert(ResponseBody body) throws IOException {
+            JsonReader jsonReader = gson.newJsonReader(body.charStream());
+            //与Gson#fromJson保持一致
+            jsonReader.setLenient(true);
+            T result = adapter.read(jsonReader);
+            if (jsonReader.peek() != JsonToken.END_DOCUMENT) {
+                throw new JsonIOException("JSON document was not fully consumed.");
+            }
+            return result;
+        }
+    }
+
+    static final class GsonElementReaderConverter<T> implements Converter<Converter.ElementReader<T>> {
+        private final Gson gson;
+        private final TypeAdapter<T> adapter;
+        private final String[] path;
+
+        GsonElementReaderConverter(Gson gson, TypeAdapter<T> adapter, String[] path) {
+            this.gson = gson;
+            this.adapter = adapter;
+            this.path = path;
+        }
+
+        /**
+         * 跳过path以外的字段，定位到数组内部，不读取数组元素
+         */
+        @Override
+        public Converter.ElementReader<T> convert(ResponseBody body) throws IOException {
+            JsonReader jsonReader = gson.newJsonReader(body.charStream());
+            jsonReader.setLenient(true);
+            for (String name : path) {
+                jsonReader.beginObject();
+                while (true) {
+                    if (!jsonReader.hasNext()) {
+                        throw new JsonIOException("field \"" + name + "\" not found in response");
+                    }
+                    if (name.equals(jsonReader.nextName())) {
+                        break;
+                    }
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.beginArray();
+            return new GsonElementReader<>(jsonReader, adapter);
+        }
+    }
+
+    /**
+     * 每次只解析一个元素，内存占用取决于JsonReader和okio的缓冲区，与数组长度无关
+     */
+    static final class GsonElementReader<T> implements Converter.ElementReader<T> {
+        private final JsonReader jsonReader;
+        private final TypeAdapter<T> adapter;
+
+        GsonElementReader(JsonReader jsonReader, TypeAdapter<T> adapter) {
+            this.jsonReader = jsonReader;
+            this.adapter = adapter;
+        }
+
+        @Override
+        public boolean hasNext() throws IOException {
+            return jsonReader.hasNext();
+        }
+
+        @Override
+        public T next() throws IOException {
+            return adapter.read(jsonReader);
+        }
+
+        @Override
+        public void close() throws IOException {
+            jsonReader.close();
+        }
+    }
+}
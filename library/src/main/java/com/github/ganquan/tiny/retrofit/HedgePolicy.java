@@ -0,0 +1,102 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.github.ganquan.tiny.retrofit.internal.HedgedSingle;
+
+import io.reactivex.Single;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * 对冲请求策略：第一次请求在delay内没有返回时再发出一次相同的请求，使用先成功的结果并取消另一个Call
+ * <p>
+ * 一次请求失败时如果另一次还没有发出则立即发出，两次都失败才通知错误。
+ * 开启adaptive后delay取该方法最近成功请求耗时的p95(样本不足时使用配置的delay)，
+ * 只为最慢的约5%请求多发一次，用少量额外请求换取尾部延迟。
+ * 只适用于幂等的接口；每个api方法持有一个实例，统计该方法自己的耗时
+ *
+ * @author GanQuan
+ * @see com.github.ganquan.tiny.retrofit.annotate.Hedge
+ */
+public final class HedgePolicy {
+    private static final int SAMPLES = 128;
+    private static final int MIN_SAMPLES = 20;
+
+    private final long delayNanos;
+    private final boolean adaptive;
+
+    /**
+     * 最近SAMPLES次成功请求的耗时(纳秒)，环形覆盖；guarded by this
+     */
+    private final long[] latencies = new long[SAMPLES];
+    private int sampleCount;
+    private int next;
+
+    /**
+     * @param delay    发出第二次请求前的等待时间
+     * @param unit
+     * @param adaptive 是否按观测到的p95调整等待时间
+     */
+    public HedgePolicy(long delay, TimeUnit unit, boolean adaptive) {
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay < 0: " + delay);
+        }
+        this.delayNanos = unit.toNanos(delay);
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * 当前的等待时间，向上取整到毫秒，p95不足1毫秒时为1
+     *
+     * @return
+     */
+    public long delayMillis() {
+        long nanos = delayNanos();
+        return nanos == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos - 1) + 1;
+    }
+
+    /**
+     * 当前的等待时间，单位纳秒；不截断到毫秒，亚毫秒级的接口不会每次都发出第二次请求
+     *
+     * @return
+     */
+    public long delayNanos() {
+        if (!adaptive) {
+            return delayNanos;
+        }
+        long[] sorted;
+        synchronized (this) {
+            if (sampleCount < MIN_SAMPLES) {
+                return delayNanos;
+            }
+            sorted = Arrays.copyOf(latencies, sampleCount);
+        }
+        Arrays.sort(sorted);
+        return sorted[(int) (sorted.length * 0.95)];
+    }
+
+    /**
+     * 记录一次成功请求的耗时
+     *
+     * @param nanos
+     */
+    public synchronized void record(long nanos) {
+        latencies[next] = nanos;
+        next = (next + 1) % SAMPLES;
+        if (sampleCount < SAMPLES) {
+            sampleCount++;
+        }
+    }
+
+    /**
+     * @param upstream 每次订阅发出一次请求
+     * @param async    请求是否异步执行；阻塞执行时第二次请求在io线程上发出
+     * @param <T>
+     *
+     * @return
+     */
+    public <T> Single<T> apply(Single<T> upstream, boolean async) {
+        return new HedgedSingle<>(upstream, this, async ? Schedulers.computation() : Schedulers.io());
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定内存的耗时直方图
+ * <p>
+ * 以微秒为单位按对数分桶，每个2的幂区间分为4个桶，相对误差不超过25%；
+ * 最大记录约9.5小时，更大的值计入最后一个桶。记录时只做原子加，不分配内存
+ *
+ * @author GanQuan
+ */
+public final class Histogram {
+    private static final int LINEAR_BUCKETS = 8;
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 35;
+    static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_EXPONENT - 2) * SUB_BUCKETS;
+    private static final long MAX_MICROS = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(nanos)));
+        sum.addAndGet(nanos);
+        long current = max.get();
+        while (nanos > current && !max.compareAndSet(current, nanos)) {
+            current = max.get();
+        }
+    }
+
+    static int bucket(long micros) {
+        if (micros < LINEAR_BUCKETS) {
+            return (int) micros;
+        }
+        micros = Math.min(micros, MAX_MICROS);
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int sub = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_BUCKETS + (exponent - 3) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * @return 桶的下界，单位微秒
+     */
+    static long lowerBound(int bucket) {
+        if (bucket < LINEAR_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_BUCKETS) / SUB_BUCKETS + 3;
+        int sub = (bucket - LINEAR_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * 复制当前的计数，复制过程中仍在记录的值可能只反映在部分统计中
+     *
+     * @return
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.get(), max.get());
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        /**
+         * @return 平均耗时，单位纳秒
+         */
+        public long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * @return 最大耗时，单位纳秒
+         */
+        public long max() {
+            return max;
+        }
+
+        /**
+         * @param quantile 0到1之间，例如0.99
+         *
+         * @return 对应分位所在桶的中值，单位纳秒，不超过max
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(quantile * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long lower = lowerBound(i);
+                    long upper = i + 1 < counts.length ? lowerBound(i + 1) : lower;
+                    return Math.min(max, TimeUnit.MICROSECONDS.toNanos((lower + upper) / 2));
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                    + ", mean=" + TimeUnit.NANOSECONDS.toMicros(mean()) + "us"
+                    + ", p50=" + TimeUnit.NANOSECONDS.toMicros(percentile(0.5)) + "us"
+                    + ", p99=" + TimeUnit.NANOSECONDS.toMicros(percentile(0.99)) + "us"
+                    + ", max=" + TimeUnit.NANOSECONDS.toMicros(max) + "us";
+        }
+    }
+}
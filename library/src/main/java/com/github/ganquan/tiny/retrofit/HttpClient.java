@@ -1,24 +1,43 @@
 package com.github.ganquan.tiny.retrofit;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 
+import com.github.ganquan.tiny.retrofit.internal.CallMetrics;
 import com.github.ganquan.tiny.retrofit.internal.Preconditions;
 import com.github.ganquan.tiny.retrofit.internal.Request;
 
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.EventListener;
 import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
 
 /**
  * 配置httpClient
+ * <p>
+ * 配置可以在任意时刻修改，修改后下一次请求使用重新派生的client，进行中的请求不受影响
  *
  * @author GanQuan
  * @since 2018/2/7.
  */
 public class HttpClient {
-    private static boolean isInit;
-    private static OkHttpClient sDefaultClient;
-    private static int connectTimeOut = 20;
-    private static int readTimeOut = 20;
-    private static int writeTimeOut = 20;
+    private static final Object LOCK = new Object();
+    private static volatile OkHttpClient sDefaultClient;
+    /**
+     * 使用者提供的client，为null时从新的OkHttpClient.Builder构建
+     */
+    private static OkHttpClient sBaseClient;
+    /**
+     * 为null表示未显式配置：有sBaseClient时只增加统计用的EventListener，否则使用{@link Config#DEFAULT}
+     */
+    private static Config sConfig;
+    /**
+     * 没有sBaseClient时所有派生client共用的dispatcher，修改配置时只更新并发上限，
+     * 进行中的请求仍然计入新的上限
+     */
+    private static Dispatcher sDispatcher;
 
     /**
      * set the time out for http client
@@ -28,10 +47,54 @@ public class HttpClient {
      * @param write
      */
     public static void setTimeOut(int connect, int read, int write) {
-        connectTimeOut = connect;
-        readTimeOut = read;
-        writeTimeOut = write;
+        synchronized (LOCK) {
+            Config config = sConfig != null ? sConfig : Config.DEFAULT;
+            setConfig(config.newBuilder()
+                    .connectTimeout(connect)
+                    .readTimeout(read)
+                    .writeTimeout(write)
+                    .build());
+        }
+    }
 
+    /**
+     * 设置连接池、dispatcher、协议和超时配置；dispatcher不会被替换，只更新并发上限，
+     * 使用{@link #setOkHttpClient(OkHttpClient)}时更新的是该client的dispatcher
+     *
+     * @param config
+     */
+    public static void setConfig(Config config) {
+        Preconditions.checkNotNull(config, "config == null");
+        synchronized (LOCK) {
+            sConfig = config;
+            sDefaultClient = null;
+        }
+    }
+
+    /**
+     * 当前配置，未显式配置时返回{@link Config#DEFAULT}
+     *
+     * @return
+     */
+    public static Config getConfig() {
+        synchronized (LOCK) {
+            return sConfig != null ? sConfig : Config.DEFAULT;
+        }
+    }
+
+    /**
+     * 使用预先构建好的client，之前设置的配置会被清除；
+     * 之后再调用{@link #setConfig(Config)}或{@link #setTimeOut(int, int, int)}时从该client派生
+     *
+     * @param client
+     */
+    public static void setOkHttpClient(OkHttpClient client) {
+        Preconditions.checkNotNull(client, "client == null");
+        synchronized (LOCK) {
+            sBaseClient = client;
+            sConfig = null;
+            sDefaultClient = null;
+        }
     }
 
     /**
@@ -44,20 +107,62 @@ public class HttpClient {
         return new Request.Builder();
     }
 
-    private static void init() {
-        if (!isInit) {
-            initOkHttpClient();
-            isInit = true;
+    /**
+     * create a one-shot JtRequest#Builder with room for fieldCount form params,
+     * 见{@link Request.Builder#Builder(int)}
+     *
+     * @param fieldCount
+     *
+     * @return
+     */
+    public static Request.Builder create(int fieldCount) {
+        init();
+        return new Request.Builder(fieldCount);
+    }
+
+    private static OkHttpClient init() {
+        OkHttpClient client = sDefaultClient;
+        if (client != null) {
+            return client;
+        }
+        synchronized (LOCK) {
+            if (sDefaultClient == null) {
+                sDefaultClient = initOkHttpClient();
+            }
+            return sDefaultClient;
         }
     }
 
-    private static void initOkHttpClient() {
-        sDefaultClient =
-                new OkHttpClient.Builder()
-                        .connectTimeout(connectTimeOut, TimeUnit.SECONDS)
-                        .readTimeout(readTimeOut, TimeUnit.SECONDS)
-                        .writeTimeout(writeTimeOut, TimeUnit.SECONDS).build();
+    private static OkHttpClient initOkHttpClient() {
+        if (sConfig == null && sBaseClient != null) {
+            // newBuilder()共用原client的连接池和dispatcher
+            return sBaseClient.newBuilder()
+                    .eventListenerFactory(CallMetrics.factory(sBaseClient.eventListenerFactory()))
+                    .build();
+        }
+        Config config = sConfig != null ? sConfig : Config.DEFAULT;
+        OkHttpClient.Builder builder =
+                sBaseClient != null ? sBaseClient.newBuilder() : new OkHttpClient.Builder();
 
+        // 有sBaseClient时使用它的dispatcher
+        Dispatcher dispatcher = sBaseClient != null ? sBaseClient.dispatcher() : sDispatcher;
+        if (dispatcher == null) {
+            dispatcher = sDispatcher = new Dispatcher();
+        }
+        dispatcher.setMaxRequests(config.maxRequests);
+        dispatcher.setMaxRequestsPerHost(config.maxRequestsPerHost);
+        EventListener.Factory eventListenerFactory =
+                sBaseClient != null ? sBaseClient.eventListenerFactory() : null;
+        builder.connectTimeout(config.connectTimeout, TimeUnit.SECONDS)
+                .readTimeout(config.readTimeout, TimeUnit.SECONDS)
+                .writeTimeout(config.writeTimeout, TimeUnit.SECONDS)
+                .connectionPool(config.connectionPool())
+                .dispatcher(dispatcher)
+                .protocols(config.http2
+                        ? Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1)
+                        : Collections.singletonList(Protocol.HTTP_1_1))
+                .eventListenerFactory(CallMetrics.factory(eventListenerFactory));
+        return builder.build();
     }
 
     /**
@@ -66,7 +171,204 @@ public class HttpClient {
      * @return
      */
     public static OkHttpClient getHttpClient() {
-        return Preconditions.checkNotNull(sDefaultClient, "sDefaultClient init fails");
+        return Preconditions.checkNotNull(init(), "sDefaultClient init fails");
     }
 
+    /**
+     * httpClient配置，通过{@link Builder}创建，不可变
+     * <p>
+     * 默认值：超时20秒，连接池5个空闲连接保持5分钟，最多64个并发请求、每个host5个，优先使用HTTP/2
+     */
+    public static final class Config {
+        public static final Config DEFAULT = new Builder().build();
+
+        final int connectTimeout;
+        final int readTimeout;
+        final int writeTimeout;
+        final int maxIdleConnections;
+        final long keepAliveDuration;
+        final int maxRequests;
+        final int maxRequestsPerHost;
+        final boolean http2;
+        /**
+         * 同一个Config派生的client共用一个连接池，只修改超时等配置时不会丢弃已建立的连接
+         */
+        private ConnectionPool connectionPool;
+
+        private Config(Builder builder) {
+            this.connectTimeout = builder.connectTimeout;
+            this.readTimeout = builder.readTimeout;
+            this.writeTimeout = builder.writeTimeout;
+            this.maxIdleConnections = builder.maxIdleConnections;
+            this.keepAliveDuration = builder.keepAliveDuration;
+            this.maxRequests = builder.maxRequests;
+            this.maxRequestsPerHost = builder.maxRequestsPerHost;
+            this.http2 = builder.http2;
+            this.connectionPool = builder.connectionPool;
+        }
+
+        synchronized ConnectionPool connectionPool() {
+            if (connectionPool == null) {
+                connectionPool =
+                        new ConnectionPool(maxIdleConnections, keepAliveDuration, TimeUnit.SECONDS);
+            }
+            return connectionPool;
+        }
+
+        public int connectTimeout() {
+            return connectTimeout;
+        }
+
+        public int readTimeout() {
+            return readTimeout;
+        }
+
+        public int writeTimeout() {
+            return writeTimeout;
+        }
+
+        public int maxIdleConnections() {
+            return maxIdleConnections;
+        }
+
+        public long keepAliveDuration() {
+            return keepAliveDuration;
+        }
+
+        public int maxRequests() {
+            return maxRequests;
+        }
+
+        public int maxRequestsPerHost() {
+            return maxRequestsPerHost;
+        }
+
+        public boolean http2() {
+            return http2;
+        }
+
+        public Builder newBuilder() {
+            return new Builder(this);
+        }
+
+        public static final class Builder {
+            private int connectTimeout = 20;
+            private int readTimeout = 20;
+            private int writeTimeout = 20;
+            private int maxIdleConnections = 5;
+            private long keepAliveDuration = 5 * 60;
+            private int maxRequests = 64;
+            private int maxRequestsPerHost = 5;
+            private boolean http2 = true;
+            private ConnectionPool connectionPool;
+
+            public Builder() {
+            }
+
+            Builder(Config config) {
+                this.connectTimeout = config.connectTimeout;
+                this.readTimeout = config.readTimeout;
+                this.writeTimeout = config.writeTimeout;
+                this.maxIdleConnections = config.maxIdleConnections;
+                this.keepAliveDuration = config.keepAliveDuration;
+                this.maxRequests = config.maxRequests;
+                this.maxRequestsPerHost = config.maxRequestsPerHost;
+                this.http2 = config.http2;
+                this.connectionPool = config.connectionPool();
+            }
+
+            /**
+             * @param seconds 连接超时，单位秒
+             *
+             * @return
+             */
+            public Builder connectTimeout(int seconds) {
+                this.connectTimeout = checkNotNegative(seconds, "connectTimeout");
+                return this;
+            }
+
+            /**
+             * @param seconds 读超时，单位秒
+             *
+             * @return
+             */
+            public Builder readTimeout(int seconds) {
+                this.readTimeout = checkNotNegative(seconds, "readTimeout");
+                return this;
+            }
+
+            /**
+             * @param seconds 写超时，单位秒
+             *
+             * @return
+             */
+            public Builder writeTimeout(int seconds) {
+                this.writeTimeout = checkNotNegative(seconds, "writeTimeout");
+                return this;
+            }
+
+            /**
+             * 连接池配置
+             *
+             * @param maxIdleConnections 最多保留的空闲连接数
+             * @param keepAliveSeconds   空闲连接保留时间，单位秒
+             *
+             * @return
+             */
+            public Builder connectionPool(int maxIdleConnections, long keepAliveSeconds) {
+                checkNotNegative(maxIdleConnections, "maxIdleConnections");
+                if (keepAliveSeconds <= 0) {
+                    throw new IllegalArgumentException("keepAliveSeconds <= 0: " + keepAliveSeconds);
+                }
+                if (maxIdleConnections != this.maxIdleConnections
+                        || keepAliveSeconds != this.keepAliveDuration) {
+                    this.connectionPool = null;
+                }
+                this.maxIdleConnections = maxIdleConnections;
+                this.keepAliveDuration = keepAliveSeconds;
+                return this;
+            }
+
+            /**
+             * dispatcher并发配置，只对异步执行({@link JtRetrofit#setAsyncExecution(boolean)})的请求生效
+             *
+             * @param maxRequests        最多同时执行的请求数
+             * @param maxRequestsPerHost 每个host最多同时执行的请求数
+             *
+             * @return
+             */
+            public Builder dispatcher(int maxRequests, int maxRequestsPerHost) {
+                if (maxRequests < 1) {
+                    throw new IllegalArgumentException("maxRequests < 1: " + maxRequests);
+                }
+                if (maxRequestsPerHost < 1) {
+                    throw new IllegalArgumentException("maxRequestsPerHost < 1: " + maxRequestsPerHost);
+                }
+                this.maxRequests = maxRequests;
+                this.maxRequestsPerHost = maxRequestsPerHost;
+                return this;
+            }
+
+            /**
+             * @param http2 true(默认)：https连接通过ALPN优先协商HTTP/2，同一host的请求复用一个连接；false：只使用HTTP/1.1
+             *
+             * @return
+             */
+            public Builder http2(boolean http2) {
+                this.http2 = http2;
+                return this;
+            }
+
+            public Config build() {
+                return new Config(this);
+            }
+
+            private static int checkNotNegative(int value, String name) {
+                if (value < 0) {
+                    throw new IllegalArgumentException(name + " < 0: " + value);
+                }
+                return value;
+            }
+        }
+    }
 }
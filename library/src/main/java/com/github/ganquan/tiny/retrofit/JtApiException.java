@@ -6,11 +6,23 @@ package com.github.ganquan.tiny.retrofit;
  * @author GanQuan
  */
 public class JtApiException extends Exception {
+    /**
+     * 熔断器处于打开状态，请求没有发出，见{@link CircuitBreaker}
+     */
+    public static final int CODE_CIRCUIT_OPEN = -2;
+    /**
+     * 超出并发限制且等待队列已满，请求没有发出，见{@link ConcurrencyLimiter}
+     */
+    public static final int CODE_LIMIT_EXCEEDED = -3;
 
     public int code;
 
     public String msg;
     public String jsonError;
+    /**
+     * 服务端返回非2xx响应时的http状态码，其他错误为0
+     */
+    public int httpCode;
 
     public JtApiException(int code, String msg) {
         this.code = code;
@@ -28,6 +40,7 @@ public class JtApiException extends Exception {
         return "JTApiException{" +
                 "code=" + code +
                 ", msg='" + msg + '\'' +
+                (httpCode != 0 ? ", httpCode=" + httpCode : "") +
                 '}';
     }
 }
@@ -1,5 +1,6 @@
 package com.github.ganquan.tiny.retrofit;
 
+import java.io.File;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
@@ -7,18 +8,44 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Proxy;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.github.ganquan.tiny.retrofit.annotate.ArrayPath;
+import com.github.ganquan.tiny.retrofit.annotate.Batch;
+import com.github.ganquan.tiny.retrofit.annotate.Cacheable;
+import com.github.ganquan.tiny.retrofit.annotate.Coalesce;
+import com.github.ganquan.tiny.retrofit.annotate.Compressed;
 import com.github.ganquan.tiny.retrofit.annotate.Field;
 import com.github.ganquan.tiny.retrofit.annotate.FieldMap;
+import com.github.ganquan.tiny.retrofit.annotate.GET;
+import com.github.ganquan.tiny.retrofit.annotate.Header;
+import com.github.ganquan.tiny.retrofit.annotate.Hedge;
 import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Query;
+import com.github.ganquan.tiny.retrofit.annotate.Retry;
+import com.github.ganquan.tiny.retrofit.annotate.SaveTo;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
 import com.github.ganquan.tiny.retrofit.annotate.Url;
+import com.github.ganquan.tiny.retrofit.internal.BatchAggregator;
+import com.github.ganquan.tiny.retrofit.internal.Preconditions;
 import com.github.ganquan.tiny.retrofit.internal.Request;
+import com.github.ganquan.tiny.retrofit.internal.UrlTemplate;
 
 import android.util.Log;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
+import io.reactivex.functions.Action;
+import io.reactivex.functions.Consumer;
+import io.reactivex.schedulers.Schedulers;
+import okhttp3.OkHttpClient;
 
 /**
  * a retrofit client for jt,which is a type-safe  and tiny HTTP client for java and Android
@@ -32,9 +59,26 @@ import io.reactivex.Single;
  */
 public class JtRetrofit {
 
-    private final static Map<Method, MethodHandler> methodHandlerCache = new LinkedHashMap<>();
-    private final static Map<Class, Object> apiServers = new LinkedHashMap<>();
-    public static List<IHttpInterceptor> httpInterceptors;
+    /**
+     * 注解处理器生成类名的后缀，例如FooService$Impl
+     */
+    private final static String GENERATED_SUFFIX = "$Impl";
+
+    private final static ConcurrentMap<Method, MethodHandler> methodHandlerCache =
+            new ConcurrentHashMap<>();
+    private final static ConcurrentMap<Class, Object> apiServers = new ConcurrentHashMap<>();
+    private final static List<Converter.Factory> converterFactories = new CopyOnWriteArrayList<>();
+    private final static Converter.Factory defaultConverterFactory = GsonConverterFactory.create();
+    private final static Annotation[] NO_ANNOTATIONS = new Annotation[0];
+    private static volatile boolean asyncExecution;
+    private static volatile ThreadingPolicy threadingPolicy = ThreadingPolicy.DEFAULT;
+    private static volatile ResponseCache responseCache = new ResponseCache.Builder().build();
+    private static volatile RevalidationCache revalidationCache;
+    private static volatile CircuitBreaker.Registry circuitBreakers;
+    private static volatile ConcurrencyLimiter.Registry concurrencyLimiters;
+    private static volatile MetricsListener metricsListener;
+    private static volatile RequestSigner requestSigner;
+    private static volatile long compressionThreshold = 1024;
 
     /**
      * create a JtRequest#Builder from JTHttpClient.create()
@@ -45,6 +89,17 @@ public class JtRetrofit {
         return HttpClient.create();
     }
 
+    /**
+     * 按表单参数个数预先分配的一次性builder，见{@link Request.Builder#Builder(int)}
+     *
+     * @param fieldCount
+     *
+     * @return
+     */
+    public static Request.Builder create(int fieldCount) {
+        return HttpClient.create(fieldCount);
+    }
+
     /**
      * set http client time out
      *
@@ -57,7 +112,186 @@ public class JtRetrofit {
     }
 
     /**
-     * 增加网络拦截器，用来增加builder的通用参数
+     * 设置连接池、dispatcher、协议和超时配置，对之后发起的请求生效
+     *
+     * @param config
+     */
+    public static void setHttpClientConfig(HttpClient.Config config) {
+        HttpClient.setConfig(config);
+    }
+
+    /**
+     * 使用预先构建好的OkHttpClient，例如与应用其他模块共用连接池和拦截器
+     *
+     * @param client
+     */
+    public static void setOkHttpClient(OkHttpClient client) {
+        HttpClient.setOkHttpClient(client);
+    }
+
+    /**
+     * 设置请求的执行方式，对之后创建的请求生效
+     * <p>
+     * false(默认)：在Schedulers.io()线程上阻塞执行call.execute()，每个进行中的请求占用一个io线程；
+     * true：通过Call.enqueue交给okhttp的dispatcher执行，线程数受dispatcher限制而不随并发请求数增长
+     *
+     * @param async
+     */
+    public static void setAsyncExecution(boolean async) {
+        asyncExecution = async;
+    }
+
+    /**
+     * 是否通过Call.enqueue异步执行请求
+     *
+     * @return
+     */
+    public static boolean isAsyncExecution() {
+        return asyncExecution;
+    }
+
+    /**
+     * 设置全局线程策略，默认{@link ThreadingPolicy#DEFAULT}(io线程订阅，主线程分发)；
+     * api方法上的{@link com.github.ganquan.tiny.retrofit.annotate.Threading}优先
+     *
+     * @param policy
+     */
+    public static void setThreadingPolicy(ThreadingPolicy policy) {
+        threadingPolicy = Preconditions.checkNotNull(policy, "policy == null");
+    }
+
+    /**
+     * 获取全局线程策略
+     *
+     * @return
+     */
+    public static ThreadingPolicy getThreadingPolicy() {
+        return threadingPolicy;
+    }
+
+    /**
+     * 设置{@link Cacheable}方法使用的响应缓存，默认是100条的内存缓存；为null时不缓存
+     *
+     * @param cache
+     */
+    public static void setResponseCache(ResponseCache cache) {
+        responseCache = cache;
+    }
+
+    /**
+     * 获取响应缓存
+     *
+     * @return 未设置缓存时返回null
+     */
+    public static ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
+    /**
+     * 设置{@link GET}请求使用的条件请求缓存，默认为null，不发送条件请求
+     *
+     * @param cache
+     */
+    public static void setRevalidationCache(RevalidationCache cache) {
+        revalidationCache = cache;
+    }
+
+    /**
+     * @return 未设置时返回null
+     */
+    public static RevalidationCache getRevalidationCache() {
+        return revalidationCache;
+    }
+
+    /**
+     * 开启熔断，默认不开启；重新设置时丢弃已有的熔断器状态
+     *
+     * @param config 为null时关闭熔断
+     */
+    public static void setCircuitBreakerConfig(CircuitBreaker.Config config) {
+        circuitBreakers = config != null ? new CircuitBreaker.Registry(config) : null;
+    }
+
+    /**
+     * 获取请求对应的熔断器
+     *
+     * @param host      请求的host
+     * @param methodKey api方法标识，{@link CircuitBreaker.Config.Builder#perMethod(boolean)}为false时忽略
+     *
+     * @return 未开启熔断时返回null
+     */
+    public static CircuitBreaker getCircuitBreaker(String host, String methodKey) {
+        CircuitBreaker.Registry registry = circuitBreakers;
+        return registry != null ? registry.get(host, methodKey) : null;
+    }
+
+    /**
+     * 开启按host的自适应并发限制，默认不开启；重新设置时丢弃已有的限制器状态
+     *
+     * @param config 为null时关闭并发限制
+     */
+    public static void setConcurrencyLimitConfig(ConcurrencyLimiter.Config config) {
+        concurrencyLimiters = config != null ? new ConcurrencyLimiter.Registry(config) : null;
+    }
+
+    /**
+     * 获取host对应的并发限制器，可以读取当前limit和排队数
+     *
+     * @param host
+     *
+     * @return 未开启并发限制时返回null
+     */
+    public static ConcurrencyLimiter getConcurrencyLimiter(String host) {
+        ConcurrencyLimiter.Registry registry = concurrencyLimiters;
+        return registry != null ? registry.get(host) : null;
+    }
+
+    /**
+     * 设置请求指标回调，例如{@link Metrics}；为null(默认)时不统计
+     *
+     * @param listener
+     */
+    public static void setMetricsListener(MetricsListener listener) {
+        metricsListener = listener;
+    }
+
+    public static MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * 设置请求签名，在公共参数之后对每个请求的表单参数签名；为null(默认)时不签名
+     *
+     * @param signer
+     */
+    public static void setRequestSigner(RequestSigner signer) {
+        requestSigner = signer;
+    }
+
+    public static RequestSigner getRequestSigner() {
+        return requestSigner;
+    }
+
+    /**
+     * {@link Compressed}方法的请求体小于threshold字节时不压缩，默认1024；长度未知的请求体总是压缩
+     *
+     * @param threshold
+     */
+    public static void setCompressionThreshold(long threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("threshold < 0: " + threshold);
+        }
+        compressionThreshold = threshold;
+    }
+
+    public static long getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    /**
+     * 增加网络拦截器，用来增加builder的通用参数，每个请求都会执行一次
+     * <p>
+     * 只依赖登录状态、设备信息等而与具体请求无关的参数，使用{@link #addStaticHttpInterceptor(IHttpInterceptor)}
      *
      * @param httpInterceptor
      */
@@ -65,15 +299,120 @@ public class JtRetrofit {
         if (httpInterceptor == null) {
             return;
         }
-        if (httpInterceptors == null) {
-            httpInterceptors = new ArrayList<>();
+        CommonParams.addInterceptor(httpInterceptor);
+    }
+
+    /**
+     * 增加静态拦截器：只在第一次需要时执行，结果作为不可变快照被之后的请求复用，
+     * 参数变化时调用{@link #invalidateCommonParams()}；拦截器收到的是空的Map，不能读取请求本身的参数
+     *
+     * @param httpInterceptor
+     */
+    public static void addStaticHttpInterceptor(IHttpInterceptor httpInterceptor) {
+        if (httpInterceptor == null) {
+            return;
+        }
+        CommonParams.addStaticInterceptor(httpInterceptor);
+    }
+
+    /**
+     * 移除普通或静态拦截器，对之后创建的请求生效
+     *
+     * @param httpInterceptor
+     *
+     * @return 是否移除
+     */
+    public static boolean removeHttpInterceptor(IHttpInterceptor httpInterceptor) {
+        return CommonParams.removeInterceptor(httpInterceptor);
+    }
+
+    /**
+     * 移除所有拦截器
+     */
+    public static void clearHttpInterceptors() {
+        CommonParams.clear();
+    }
+
+    /**
+     * 丢弃静态拦截器的结果，例如登录或切换账号之后；下一个请求会重新计算
+     */
+    public static void invalidateCommonParams() {
+        CommonParams.invalidate();
+    }
+
+    /**
+     * 当前静态公共参数的快照
+     *
+     * @return
+     */
+    public static CommonParams.Snapshot getCommonParams() {
+        return CommonParams.snapshot();
+    }
+
+    /**
+     * 增加响应体转换器，按添加顺序查找，都不能处理时使用默认的Gson转换器
+     * <p>
+     * 需要在创建api对象之前添加，已经解析过的方法不会重新查找
+     *
+     * @param factory
+     */
+    public static void addConverterFactory(Converter.Factory factory) {
+        converterFactories.add(Preconditions.checkNotNull(factory, "factory == null"));
+    }
+
+    /**
+     * 查找能够处理type的响应体转换器
+     *
+     * @param type
+     * @param annotations api方法上的注解
+     * @param <T>
+     *
+     * @return
+     */
+    //factory按type返回converter，T由调用方的type决定
+    @SuppressWarnings("unchecked")
+    public static <T> Converter<T> responseBodyConverter(Type type, Annotation[] annotations) {
+        if (annotations == null) {
+            annotations = NO_ANNOTATIONS;
+        }
+        for (Converter.Factory factory : converterFactories) {
+            Converter<?> converter = factory.responseBodyConverter(type, annotations);
+            if (converter != null) {
+                return (Converter<T>) converter;
+            }
         }
+        return (Converter<T>) defaultConverterFactory.responseBodyConverter(type, annotations);
+    }
 
-        httpInterceptors.add(httpInterceptor);
+    /**
+     * 查找能够逐个读取elementType数组元素的转换器，见{@link Converter.Factory#elementReaderConverter}
+     *
+     * @param elementType
+     * @param path        数组所在的字段，空字符串表示响应本身就是数组
+     * @param annotations api方法上的注解
+     * @param <T>
+     *
+     * @return
+     */
+    //factory按elementType返回reader，T由调用方的elementType决定
+    @SuppressWarnings("unchecked")
+    public static <T> Converter<Converter.ElementReader<T>> elementReaderConverter(Type elementType, String path,
+                                                                                   Annotation[] annotations) {
+        if (annotations == null) {
+            annotations = NO_ANNOTATIONS;
+        }
+        for (Converter.Factory factory : converterFactories) {
+            Converter<?> converter = factory.elementReaderConverter(elementType, path, annotations);
+            if (converter != null) {
+                return (Converter<Converter.ElementReader<T>>) converter;
+            }
+        }
+        return (Converter<Converter.ElementReader<T>>) defaultConverterFactory
+                .elementReaderConverter(elementType, path, annotations);
     }
 
     /**
-     * 实例化api对象，通过动态代理实现，具体方法的注解请参考对应的注释
+     * 实例化api对象，优先使用编译期生成的实现类，否则通过动态代理实现，具体方法的注解请参考对应的注释
      *
      * @param service
      * @param <T>
@@ -85,8 +424,53 @@ public class JtRetrofit {
         if (apiService != null) {
             return (T) apiService;
         }
+        validateServiceInterface(service);
+
+        apiService = loadGeneratedService(service);
+        if (apiService == null) {
+            apiService = newProxyService(service);
+        }
+        Object existing = apiServers.putIfAbsent(service, apiService);
+        return (T) (existing != null ? existing : apiService);
+    }
 
-        apiService = Proxy.newProxyInstance(service.getClassLoader(),
+    /**
+     * 启动时预加载api接口：在后台线程并行解析所有方法的注解并缓存MethodHandler，
+     * 避免首次调用时在调用线程上做反射解析
+     *
+     * @param services
+     *
+     * @return 所有方法解析完成时结束，解析失败时抛出对应异常；不订阅也会执行
+     */
+    public static Completable preload(Class<?>... services) {
+        List<Completable> tasks = new ArrayList<>();
+        for (Class<?> service : services) {
+            Object apiService = create(service);
+            if (!Proxy.isProxyClass(apiService.getClass())) {
+                // 编译期生成的实现类不需要MethodHandler
+                continue;
+            }
+            for (final Method method : service.getDeclaredMethods()) {
+                tasks.add(Completable.fromAction(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        loadMethodHandler(method);
+                    }
+                }).subscribeOn(Schedulers.computation()));
+            }
+        }
+        Completable preload = Completable.merge(tasks).cache();
+        preload.doOnError(new Consumer<Throwable>() {
+            @Override
+            public void accept(Throwable throwable) throws Exception {
+                Log.w("JtRetrofit", "preload fails", throwable);
+            }
+        }).onErrorComplete().subscribe();
+        return preload;
+    }
+
+    private static Object newProxyService(final Class<?> service) {
+        return Proxy.newProxyInstance(service.getClassLoader(),
                 new Class<?>[] {service},
                 new InvocationHandler() {
 
@@ -96,8 +480,6 @@ public class JtRetrofit {
                     @Override
                     public Object invoke(Object proxy, Method method, Object... args)
                             throws Throwable {
-                        validateServiceInterface(service);
-
                         // If the method is a method from Object then defer to normal invocation.
                         if (method.getDeclaringClass() == Object.class) {
                             return method.invoke(this, args);
@@ -106,22 +488,56 @@ public class JtRetrofit {
                         return loadMethodHandler(method).invoke(args);
                     }
                 });
-        apiServers.put(service, apiService);
-        return (T) apiService;
+    }
 
+    /**
+     * 查找编译期生成的实现类(见compiler模块)，不存在时返回null，回退到动态代理
+     *
+     * @param service
+     *
+     * @return
+     */
+    private static Object loadGeneratedService(Class<?> service) {
+        Class<?> implClass;
+        try {
+            implClass = Class.forName(service.getName() + GENERATED_SUFFIX, true,
+                    service.getClassLoader());
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        try {
+            return implClass.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("Unable to create " + implClass.getName(), e);
+        }
     }
 
-    private static MethodHandler loadMethodHandler(Method method) {
-        MethodHandler handler;
-        synchronized(methodHandlerCache) {
-            handler = methodHandlerCache.get(method);
-            if (handler == null) {
-                handler = MethodHandler.create(method);
-                methodHandlerCache.put(method, handler);
-            }
+    /**
+     * 命中缓存时不加锁；未命中时在锁外解析，并发解析同一方法时只保留第一个写入缓存的MethodHandler
+     *
+     * @param method
+     *
+     * @return
+     */
+    static MethodHandler loadMethodHandler(Method method) {
+        MethodHandler handler = methodHandlerCache.get(method);
+        if (handler != null) {
+            return handler;
         }
+        handler = MethodHandler.create(method);
+        MethodHandler existing = methodHandlerCache.putIfAbsent(method, handler);
+        return existing != null ? existing : handler;
+    }
 
-        return handler;
+    /**
+     * 已缓存的MethodHandler，没有时返回null，不会触发解析
+     *
+     * @param method
+     *
+     * @return
+     */
+    static MethodHandler cachedMethodHandler(Method method) {
+        return methodHandlerCache.get(method);
     }
 
     private static <T> void validateServiceInterface(Class<T> service) {
@@ -149,7 +565,7 @@ public class JtRetrofit {
 
         @Override
         public void perform(Request.Builder jtRequest, Object args) {
-            jtRequest.addFormParams(name, (String) args);
+            jtRequest.addField(name, args);
 
         }
     }
@@ -158,54 +574,160 @@ public class JtRetrofit {
 
         @Override
         public void perform(Request.Builder jtRequest, Object args) {
-            jtRequest.addFormParams((Map<String, String>) args);
+            jtRequest.addFieldMap((Map<String, ?>) args);
         }
     }
 
-    static class PathRequestAction implements RequestAction {
-        String name;
+    static class QueryRequestAction implements RequestAction {
+        private final String name;
+
+        QueryRequestAction(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void perform(Request.Builder jtRequest, Object args) {
+            jtRequest.addQuery(name, args);
+        }
+    }
+
+    static class HeaderRequestAction implements RequestAction {
+        private final String name;
 
-        public PathRequestAction(String name) {
+        HeaderRequestAction(String name) {
             this.name = name;
         }
 
         @Override
         public void perform(Request.Builder jtRequest, Object args) {
-            String url = jtRequest.getUrl();
-            url = url.replace(String.format("{%s}", name), args.toString());
-            jtRequest.url(url);
+            jtRequest.addHeader(name, args);
+        }
+    }
+
+    static class SaveToRequestAction implements RequestAction {
+
+        @Override
+        public void perform(Request.Builder jtRequest, Object args) {
+            jtRequest.downloadTo((File) args);
         }
     }
 
-    private static class MethodHandler {
+    static class MethodHandler {
         private String mUrl;
         private int security;
 
-        private List<RequestAction> requestActionList = new ArrayList<>();
+        /**
+         * 与方法参数一一对应，@Path参数对应的位置为null，由mUrlTemplate统一展开
+         */
+        private RequestAction[] mRequestActions;
         private Type mReturnType;
-
-        Object invoke(Object... objects) {
-            Request.Builder builder = HttpClient.create().url(mUrl);
-            if (objects != null && objects.length > 0) {
-                if (objects.length != requestActionList.size()) {
-                    throw new NullPointerException("url: " + mUrl + "\nrequestActionList length is "
-                            + "not equals objects length");
-                }
-                for (int i = 0; i < requestActionList.size(); i++) {
-                    requestActionList.get(i).perform(builder, objects[i]);
+        private Converter<?> mResponseConverter;
+        /**
+         * 方法上声明的线程策略，为null时使用全局策略
+         */
+        private ThreadingPolicy mThreadingPolicy;
+        private UrlTemplate mUrlTemplate;
+        /**
+         * mUrlTemplate中第i个占位符对应的参数下标
+         */
+        private int[] mPathIndexes;
+        /**
+         * {@link Cacheable}声明的有效期，为0时不缓存
+         */
+        private long mCacheTtlMillis;
+        private String[] mCacheExcludedParams;
+        private boolean mCoalesce;
+        private String[] mCoalesceExcludedParams;
+        /**
+         * {@link Batch}方法的聚合队列，其他方法为null
+         */
+        private BatchAggregator<?> mBatchAggregator;
+        private RetryPolicy mRetryPolicy;
+        /**
+         * 每个方法一个实例，统计该方法的请求耗时
+         */
+        private HedgePolicy mHedgePolicy;
+        /**
+         * 接口名#方法名，用于按方法熔断和统计
+         */
+        private String mMethodKey;
+        /**
+         * 是否有{@link SaveTo}参数，下载方法不使用mResponseConverter
+         */
+        private boolean mDownload;
+        /**
+         * 返回Flowable的方法逐个发出数组元素，mReturnType是元素类型
+         */
+        private boolean mStreaming;
+        private Converter<Converter.ElementReader<Object>> mElementConverter;
+        /**
+         * {@link GET}方法
+         */
+        private boolean mGet;
+        private boolean mCompressed;
+        /**
+         * 解析时统计的表单参数个数：每个@Field一个，每个@FieldMap预留4个
+         */
+        private int mFieldCount;
+
+        /**
+         * 把参数写入按mFieldCount预先分配的一次性builder，build()时不再复制表单参数
+         */
+        Request.Builder newBuilder(Object... objects) {
+            int argumentCount = objects != null ? objects.length : 0;
+            RequestAction[] actions = mRequestActions;
+            if (argumentCount != actions.length) {
+                throw new NullPointerException("url: " + mUrl + "\nrequestActions length is "
+                        + "not equals objects length");
+            }
+            Request.Builder builder = HttpClient.create(mFieldCount)
+                    .url(mUrlTemplate.expand(objects, mPathIndexes));
+            for (int i = 0; i < argumentCount; i++) {
+                RequestAction action = actions[i];
+                if (action != null) {
+                    action.perform(builder, objects[i]);
                 }
             }
+            return builder;
+        }
 
-            return builder.build().post(mReturnType);
+        Object invoke(Object... objects) {
+            Request.Builder builder = newBuilder(objects);
+            ThreadingPolicy threadingPolicy =
+                    mThreadingPolicy != null ? mThreadingPolicy : JtRetrofit.threadingPolicy;
+            if (mBatchAggregator != null) {
+                return mBatchAggregator.enqueue(builder, threadingPolicy);
+            }
+            if (mCacheTtlMillis > 0) {
+                builder.cacheable(mReturnType, mCacheTtlMillis, mCacheExcludedParams);
+            }
+            if (mCoalesce) {
+                builder.coalesce(mReturnType, mCoalesceExcludedParams);
+            }
+            if (mGet) {
+                builder.get();
+            }
+            if (mCompressed) {
+                builder.compressed();
+            }
+            builder.retry(mRetryPolicy).hedge(mHedgePolicy).methodKey(mMethodKey);
+            if (mDownload) {
+                return builder.build().download(threadingPolicy);
+            }
+            if (mStreaming) {
+                return builder.build().stream(mElementConverter, threadingPolicy);
+            }
+            return builder.build().post(mResponseConverter, threadingPolicy);
 
         }
 
         MethodHandler(Method method) {
             Log.d("MethodHandler", "MethodHandler-method " + method.getName());
             Type returnType = method.getGenericReturnType();
-            if (method.getReturnType() == Single.class) {
-            } else {
-                throw new IllegalArgumentException("you must return a type == Single.class");
+            if (method.getReturnType() == Flowable.class) {
+                mStreaming = true;
+            } else if (method.getReturnType() != Single.class) {
+                throw new IllegalArgumentException("you must return a type == Single.class or Flowable.class");
             }
             if (returnType instanceof ParameterizedType) {
                 Type[] actualTypeArguments = ((ParameterizedType) returnType)
@@ -216,34 +738,177 @@ public class JtRetrofit {
                     throw new IllegalArgumentException();
                 }
             }
+            mMethodKey = method.getDeclaringClass().getName() + '#' + method.getName();
             Annotation[] methodAnnotation = method.getAnnotations();
+            Batch batch = null;
+            String arrayPath = null;
             for (Annotation annotation : methodAnnotation) {
                 if (annotation instanceof Url) {
                     mUrl = ((Url) annotation).value();
+                } else if (annotation instanceof Threading) {
+                    Threading threading = (Threading) annotation;
+                    mThreadingPolicy = ThreadingPolicy.of(threading.subscribeOn(), threading.observeOn());
+                } else if (annotation instanceof Cacheable) {
+                    Cacheable cacheable = (Cacheable) annotation;
+                    mCacheTtlMillis = cacheable.unit().toMillis(cacheable.ttl());
+                    if (mCacheTtlMillis <= 0) {
+                        throw new IllegalArgumentException("url: " + mUrl + "\n@Cacheable ttl must be positive");
+                    }
+                    mCacheExcludedParams = cacheable.excludeParams();
+                } else if (annotation instanceof Coalesce) {
+                    mCoalesce = true;
+                    mCoalesceExcludedParams = ((Coalesce) annotation).excludeParams();
+                } else if (annotation instanceof Batch) {
+                    batch = (Batch) annotation;
+                } else if (annotation instanceof Retry) {
+                    Retry retry = (Retry) annotation;
+                    mRetryPolicy = new RetryPolicy.Builder()
+                            .maxAttempts(retry.maxAttempts())
+                            .backoff(retry.backoff(), retry.maxBackoff(), retry.unit())
+                            .jitter(retry.jitter())
+                            .statusClasses(retry.statusClasses())
+                            .statusCodes(retry.statusCodes())
+                            .retryOnIOException(retry.retryOnIOException())
+                            .build();
+                } else if (annotation instanceof Hedge) {
+                    Hedge hedge = (Hedge) annotation;
+                    mHedgePolicy = new HedgePolicy(hedge.delay(), hedge.unit(), hedge.adaptive());
+                } else if (annotation instanceof ArrayPath) {
+                    arrayPath = ((ArrayPath) annotation).value();
+                } else if (annotation instanceof GET) {
+                    mGet = true;
+                } else if (annotation instanceof Compressed) {
+                    mCompressed = true;
                 }
             }
-
+            Map<String, Integer> pathParameters = new HashMap<>();
             Annotation[][] parameterAnnotations = method.getParameterAnnotations();
-            if (parameterAnnotations == null || parameterAnnotations.length == 0) {
-                return;
-            }
-            for (Annotation[] annotations : parameterAnnotations) {
-                if (annotations != null && annotations.length != 0) {
-                    for (Annotation aMethodAnnotation : annotations) {
+            mRequestActions = new RequestAction[parameterAnnotations.length];
+            for (int p = 0; p < parameterAnnotations.length; p++) {
+                RequestAction action = null;
+                boolean annotated = false;
+                for (Annotation aMethodAnnotation : parameterAnnotations[p]) {
+                    if (aMethodAnnotation instanceof Field || aMethodAnnotation instanceof FieldMap) {
+                        if (mGet) {
+                            throw new IllegalArgumentException("url: " + mUrl
+                                    + "\n@GET methods can not use @Field or @FieldMap, use @Query instead");
+                        }
                         if (aMethodAnnotation instanceof Field) {
-                            Field field = (Field) aMethodAnnotation;
-                            requestActionList.add(new FieldRequestAction(field.value()));
-                            break;
-
-                        } else if (aMethodAnnotation instanceof FieldMap) {
-                            requestActionList.add(new FieldMapRequestAction());
-                        } else if (aMethodAnnotation instanceof Path) {
-                            Path path = (Path) aMethodAnnotation;
-                            requestActionList.add(new PathRequestAction(path.value()));
+                            action = new FieldRequestAction(((Field) aMethodAnnotation).value());
+                            mFieldCount++;
+                        } else {
+                            action = new FieldMapRequestAction();
+                            mFieldCount += 4;
+                        }
+                    } else if (aMethodAnnotation instanceof Query) {
+                        action = new QueryRequestAction(((Query) aMethodAnnotation).value());
+                    } else if (aMethodAnnotation instanceof Header) {
+                        action = new HeaderRequestAction(((Header) aMethodAnnotation).value());
+                    } else if (aMethodAnnotation instanceof SaveTo) {
+                        if (mDownload) {
+                            throw new IllegalArgumentException("url: " + mUrl + "\nduplicate @SaveTo");
                         }
+                        mDownload = true;
+                        action = new SaveToRequestAction();
+                    } else if (aMethodAnnotation instanceof Path) {
+                        String name = ((Path) aMethodAnnotation).value();
+                        if (pathParameters.put(name, p) != null) {
+                            throw new IllegalArgumentException(
+                                    "url: " + mUrl + "\nduplicate @Path(\"" + name + "\")");
+                        }
+                    } else {
+                        continue;
                     }
+                    annotated = true;
+                    break;
+                }
+                if (!annotated) {
+                    throw new IllegalArgumentException("url: " + mUrl
+                            + "\nno tiny-retrofit annotation found on parameter #" + (p + 1));
+                }
+                mRequestActions[p] = action;
+            }
+            parseUrlTemplate(pathParameters);
+            if (mGet && mCompressed) {
+                throw new IllegalArgumentException("url: " + mUrl + "\n@Compressed can not be combined with @GET");
+            }
+            if (mDownload) {
+                if (mReturnType != File.class) {
+                    throw new IllegalArgumentException(
+                            "url: " + mUrl + "\n@SaveTo methods must return Single<File>");
+                }
+                if (mCacheTtlMillis > 0 || mCoalesce || batch != null || mHedgePolicy != null) {
+                    throw new IllegalArgumentException("url: " + mUrl + "\n@SaveTo can not be combined with "
+                            + "@Cacheable, @Coalesce, @Batch or @Hedge");
                 }
             }
+            if (mStreaming) {
+                if (mDownload || mCacheTtlMillis > 0 || mCoalesce || batch != null || mHedgePolicy != null) {
+                    throw new IllegalArgumentException("url: " + mUrl + "\nFlowable methods can not be combined "
+                            + "with @SaveTo, @Cacheable, @Coalesce, @Batch or @Hedge");
+                }
+                mElementConverter = elementReaderConverter(mReturnType, arrayPath != null ? arrayPath : "",
+                        methodAnnotation);
+            } else if (arrayPath != null) {
+                throw new IllegalArgumentException("url: " + mUrl + "\n@ArrayPath requires a Flowable return type");
+            } else if (!mDownload) {
+                mResponseConverter = responseBodyConverter(mReturnType, methodAnnotation);
+            }
+            if (batch != null) {
+                parseBatch(batch, method.getParameterTypes());
+            }
+        }
+
+        private void parseBatch(Batch batch, Class<?>[] parameterTypes) {
+            if (mPathIndexes.length > 0 || mCacheTtlMillis > 0 || mCoalesce
+                    || mRetryPolicy != null || mHedgePolicy != null || mGet) {
+                throw new IllegalArgumentException("url: " + mUrl + "\n@Batch can not be combined with "
+                        + "@Path, @Cacheable, @Coalesce, @Retry, @Hedge or @GET");
+            }
+            for (RequestAction action : mRequestActions) {
+                if (action != null && !(action instanceof FieldRequestAction)
+                        && !(action instanceof FieldMapRequestAction)) {
+                    throw new IllegalArgumentException(
+                            "url: " + mUrl + "\n@Batch methods can only use @Field and @FieldMap parameters");
+                }
+            }
+            //批量参数是JSON对象，同名字段只能有一个值
+            for (int i = 0; i < parameterTypes.length; i++) {
+                Class<?> type = parameterTypes[i];
+                if (mRequestActions[i] instanceof FieldRequestAction
+                        && (type.isArray() || Iterable.class.isAssignableFrom(type))) {
+                    throw new IllegalArgumentException("url: " + mUrl
+                            + "\n@Batch methods can not use multi-valued @Field parameters");
+                }
+            }
+            mBatchAggregator = new BatchAggregator<>(batch.url().isEmpty() ? mUrl : batch.url(),
+                    batch.field(), batch.unit().toMillis(batch.window()), batch.maxSize(),
+                    mCompressed, mResponseConverter);
+        }
+
+        /**
+         * 解析一次url模板，并校验每个占位符都有对应的@Path参数，每个@Path参数都被使用
+         *
+         * @param pathParameters @Path名字到参数下标的映射
+         */
+        private void parseUrlTemplate(Map<String, Integer> pathParameters) {
+            mUrlTemplate = UrlTemplate.parse(mUrl);
+            mPathIndexes = new int[mUrlTemplate.placeholderCount()];
+            Set<String> unused = new HashSet<>(pathParameters.keySet());
+            for (int i = 0; i < mPathIndexes.length; i++) {
+                String name = mUrlTemplate.placeholderName(i);
+                Integer index = pathParameters.get(name);
+                if (index == null) {
+                    throw new IllegalArgumentException(
+                            "url: " + mUrl + "\nmissing @Path(\"" + name + "\") parameter");
+                }
+                mPathIndexes[i] = index;
+                unused.remove(name);
+            }
+            if (!unused.isEmpty()) {
+                throw new IllegalArgumentException(
+                        "url: " + mUrl + "\ndoes not contain {" + unused.iterator().next() + "}");
+            }
         }
 
         static MethodHandler create(Method method) {
@@ -0,0 +1,154 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按api方法汇总请求指标：每个阶段一个{@link Histogram}，以及请求数、字节数和各类错误数
+ * <p>
+ * 每个方法占用固定内存，记录时不分配内存；可以定期调用{@link #snapshot()}导出，统计值是累计的
+ * <pre>{@code
+ * Metrics metrics = new Metrics();
+ * JtRetrofit.setMetricsListener(metrics);
+ * ...
+ * for (Map.Entry<String, Metrics.Snapshot> entry : metrics.snapshot().entrySet()) {
+ *     report(entry.getKey(), entry.getValue().phase(MetricsListener.Phase.TOTAL).percentile(0.99));
+ * }
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+public final class Metrics implements MetricsListener {
+    private static final Phase[] PHASES = Phase.values();
+    private static final ErrorClass[] ERROR_CLASSES = ErrorClass.values();
+
+    private final ConcurrentMap<String, MethodMetrics> methods = new ConcurrentHashMap<>();
+
+    private static final class MethodMetrics {
+        final Histogram[] phases = new Histogram[PHASES.length];
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong requestBytes = new AtomicLong();
+        final AtomicLong responseBytes = new AtomicLong();
+        final AtomicLongArray errors = new AtomicLongArray(ERROR_CLASSES.length);
+
+        MethodMetrics() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new Histogram();
+            }
+        }
+    }
+
+    private MethodMetrics methodMetrics(String method) {
+        MethodMetrics metrics = methods.get(method);
+        if (metrics == null) {
+            MethodMetrics created = new MethodMetrics();
+            metrics = methods.putIfAbsent(method, created);
+            if (metrics == null) {
+                metrics = created;
+            }
+        }
+        return metrics;
+    }
+
+    @Override
+    public void onPhase(String method, Phase phase, long nanos) {
+        methodMetrics(method).phases[phase.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void onCompleted(String method, long requestBytes, long responseBytes, ErrorClass error) {
+        MethodMetrics metrics = methodMetrics(method);
+        metrics.count.incrementAndGet();
+        metrics.requestBytes.addAndGet(requestBytes);
+        metrics.responseBytes.addAndGet(responseBytes);
+        if (error != null) {
+            metrics.errors.incrementAndGet(error.ordinal());
+        }
+    }
+
+    /**
+     * @return 方法名到统计值，按方法名排序
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+        for (String method : new TreeSet<>(methods.keySet())) {
+            MethodMetrics metrics = methods.get(method);
+            Histogram.Snapshot[] phases = new Histogram.Snapshot[PHASES.length];
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = metrics.phases[i].snapshot();
+            }
+            long[] errors = new long[ERROR_CLASSES.length];
+            for (int i = 0; i < errors.length; i++) {
+                errors[i] = metrics.errors.get(i);
+            }
+            snapshots.put(method, new Snapshot(metrics.count.get(), metrics.requestBytes.get(),
+                    metrics.responseBytes.get(), phases, errors));
+        }
+        return Collections.unmodifiableMap(snapshots);
+    }
+
+    public static final class Snapshot {
+        private final long count;
+        private final long requestBytes;
+        private final long responseBytes;
+        private final Histogram.Snapshot[] phases;
+        private final long[] errors;
+
+        Snapshot(long count, long requestBytes, long responseBytes, Histogram.Snapshot[] phases,
+                 long[] errors) {
+            this.count = count;
+            this.requestBytes = requestBytes;
+            this.responseBytes = responseBytes;
+            this.phases = phases;
+            this.errors = errors;
+        }
+
+        /**
+         * @return 结束的请求数，包括失败的请求
+         */
+        public long count() {
+            return count;
+        }
+
+        public long requestBytes() {
+            return requestBytes;
+        }
+
+        public long responseBytes() {
+            return responseBytes;
+        }
+
+        public Histogram.Snapshot phase(Phase phase) {
+            return phases[phase.ordinal()];
+        }
+
+        public long errorCount(ErrorClass error) {
+            return errors[error.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder()
+                    .append("count=").append(count)
+                    .append(", requestBytes=").append(requestBytes)
+                    .append(", responseBytes=").append(responseBytes);
+            for (ErrorClass error : ERROR_CLASSES) {
+                if (errors[error.ordinal()] > 0) {
+                    builder.append(", ").append(error).append('=').append(errors[error.ordinal()]);
+                }
+            }
+            for (Phase phase : PHASES) {
+                if (phases[phase.ordinal()].count() > 0) {
+                    builder.append("\n  ").append(phase).append(": ").append(phases[phase.ordinal()]);
+                }
+            }
+            return builder.toString();
+        }
+    }
+}
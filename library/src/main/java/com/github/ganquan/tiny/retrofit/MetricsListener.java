@@ -0,0 +1,93 @@
+package com.github.ganquan.tiny.retrofit;
+
+/**
+ * 请求指标回调，通过{@link JtRetrofit#setMetricsListener(MetricsListener)}注册
+ * <p>
+ * 回调在请求所在的线程上同步执行，实现需要线程安全并且足够轻量；
+ * {@link Metrics}是按方法汇总到直方图的默认实现
+ *
+ * @author GanQuan
+ */
+public interface MetricsListener {
+    /**
+     * 请求的各个阶段，没有经过的阶段(例如复用连接时的DNS、CONNECT、TLS)不回调
+     */
+    enum Phase {
+        /**
+         * 等待并发限制名额和okhttp dispatcher调度的时间
+         */
+        QUEUE,
+        DNS,
+        /**
+         * 建立TCP连接，不包括TLS握手
+         */
+        CONNECT,
+        TLS,
+        /**
+         * 从开始发送请求到开始接收响应头
+         */
+        TTFB,
+        /**
+         * 读取响应体时等待网络的时间
+         */
+        BODY,
+        /**
+         * 解析响应体的时间，不包括其中等待网络的时间
+         */
+        DECODE,
+        /**
+         * 从发起请求到解析完成的总耗时
+         */
+        TOTAL
+    }
+
+    enum ErrorClass {
+        /**
+         * 连接、读、写超时
+         */
+        TIMEOUT,
+        /**
+         * 其他IOException，例如连接失败、连接被重置
+         */
+        IO,
+        /**
+         * 5xx响应
+         */
+        SERVER_ERROR,
+        /**
+         * 其他非2xx响应
+         */
+        CLIENT_ERROR,
+        /**
+         * 响应体为空或者解析失败
+         */
+        DECODE,
+        /**
+         * 熔断器打开，请求没有发出
+         */
+        CIRCUIT_OPEN,
+        /**
+         * 超出并发限制，请求没有发出
+         */
+        LIMIT_EXCEEDED
+    }
+
+    /**
+     * 一个阶段结束
+     *
+     * @param method 接口名#方法名，不是通过api接口发起的请求为host
+     * @param phase
+     * @param nanos  耗时
+     */
+    void onPhase(String method, Phase phase, long nanos);
+
+    /**
+     * 请求结束，被取消的请求不回调
+     *
+     * @param method
+     * @param requestBytes  请求体字节数
+     * @param responseBytes 读取的响应体字节数
+     * @param error         成功时为null
+     */
+    void onCompleted(String method, long requestBytes, long responseBytes, ErrorClass error);
+}
@@ -0,0 +1,288 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import com.github.ganquan.tiny.retrofit.internal.ParamOrder;
+import com.github.ganquan.tiny.retrofit.internal.Preconditions;
+
+/**
+ * 请求签名：对表单参数计算HMAC，结果以小写十六进制写入签名参数或header
+ * <p>
+ * 签名内容是按参数名排序(同名参数保持添加顺序)后的{@code name1=value1&name2=value2...}的UTF-8字节，
+ * 参数不做url编码；multipart请求只包括文本字段，文件和{@code addFormDataPart}添加的part不参与签名，
+ * 签名参数本身、{@link Builder#exclude(String...)}的参数和{@link com.github.ganquan.tiny.retrofit.annotate.Query}参数也不参与；
+ * GET请求的签名参数和其他表单参数一起放在url中。
+ * <p>
+ * 参数在公共参数之后、请求创建时签名一次，重试时复用。计算时逐个字符编码后直接送入每个线程复用的{@link Mac}，
+ * 不拼接字符串
+ * <p>
+ * 通过{@link JtRetrofit#setRequestSigner(RequestSigner)}设置
+ *
+ * @author GanQuan
+ */
+public final class RequestSigner {
+    private static final char[] HEX_DIGITS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final String algorithm;
+    private final SecretKeySpec key;
+    private final String paramName;
+    private final String headerName;
+    private final Set<String> excludedParams;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State(newMac());
+        }
+    };
+
+    private RequestSigner(Builder builder) {
+        this.algorithm = builder.algorithm;
+        this.key = new SecretKeySpec(builder.key, builder.algorithm);
+        this.paramName = builder.headerName == null ? builder.paramName : null;
+        this.headerName = builder.headerName;
+        Set<String> excluded = new HashSet<>(builder.excludedParams);
+        if (paramName != null) {
+            excluded.add(paramName);
+        }
+        this.excludedParams = Collections.unmodifiableSet(excluded);
+        //提前检查算法和key
+        newMac();
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(algorithm);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalArgumentException("unable to init " + algorithm, e);
+        }
+    }
+
+    /**
+     * 签名写入的参数名，写入header时为null
+     *
+     * @return
+     */
+    public String getParamName() {
+        return paramName;
+    }
+
+    /**
+     * 签名写入的header，写入参数时为null
+     *
+     * @return
+     */
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    /**
+     * 计算签名
+     *
+     * @param params
+     *
+     * @return 小写十六进制
+     */
+    public String sign(Params params) {
+        State state = this.state.get();
+        try {
+            int[] order = state.sort(params);
+            boolean first = true;
+            for (int i = 0, n = params.size(); i < n; i++) {
+                String name = params.name(order[i]);
+                if (excludedParams.contains(name)) {
+                    continue;
+                }
+                if (!first) {
+                    state.update('&');
+                }
+                first = false;
+                state.update(name);
+                state.update('=');
+                state.update(params.value(order[i]));
+            }
+            state.flush();
+            byte[] digest = state.mac.doFinal();
+            char[] hex = state.hex(digest.length * 2);
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX_DIGITS[digest[i] >> 4 & 0xf];
+                hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(hex, 0, digest.length * 2);
+        } finally {
+            //Params抛出异常时丢弃写了一半的数据，否则会混入这个线程的下一次签名
+            state.reset();
+        }
+    }
+
+    /**
+     * 按下标读取的参数，同名参数可以出现多次
+     */
+    public interface Params {
+        int size();
+
+        String name(int index);
+
+        String value(int index);
+    }
+
+    /**
+     * 每个线程的Mac和缓冲区
+     */
+    private static final class State {
+        final Mac mac;
+        final byte[] buffer = new byte[256];
+        int position;
+        int[] order = new int[16];
+        char[] hex = new char[64];
+
+        State(Mac mac) {
+            this.mac = mac;
+        }
+
+        /**
+         * 按参数名排序的下标，参数名相同时保持原来的顺序
+         */
+        int[] sort(Params params) {
+            int size = params.size();
+            if (order.length < size) {
+                order = new int[Math.max(size, order.length * 2)];
+            }
+            return ParamOrder.sort(params, order);
+        }
+
+        char[] hex(int length) {
+            if (hex.length < length) {
+                hex = new char[length];
+            }
+            return hex;
+        }
+
+        /**
+         * 按UTF-8编码写入，单独的surrogate与String.getBytes(UTF-8)一样替换为'?'
+         */
+        void update(String s) {
+            for (int i = 0, n = s.length(); i < n; i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) {
+                    update(c);
+                } else if (c < 0x800) {
+                    update(0xc0 | c >> 6);
+                    update(0x80 | c & 0x3f);
+                } else if (!Character.isSurrogate(c)) {
+                    update(0xe0 | c >> 12);
+                    update(0x80 | c >> 6 & 0x3f);
+                    update(0x80 | c & 0x3f);
+                } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    update(0xf0 | codePoint >> 18);
+                    update(0x80 | codePoint >> 12 & 0x3f);
+                    update(0x80 | codePoint >> 6 & 0x3f);
+                    update(0x80 | codePoint & 0x3f);
+                } else {
+                    update('?');
+                }
+            }
+        }
+
+        void update(int b) {
+            if (position == buffer.length) {
+                flush();
+            }
+            buffer[position++] = (byte) b;
+        }
+
+        void flush() {
+            mac.update(buffer, 0, position);
+            position = 0;
+        }
+
+        /**
+         * 恢复为init后的状态；doFinal之后Mac已经是这个状态，reset不再重新计算
+         */
+        void reset() {
+            position = 0;
+            mac.reset();
+        }
+    }
+
+    public static final class Builder {
+        private final byte[] key;
+        private String algorithm = "HmacSHA256";
+        private String paramName = "sign";
+        private String headerName;
+        private Set<String> excludedParams = Collections.emptySet();
+
+        /**
+         * @param key HMAC的密钥
+         */
+        public Builder(byte[] key) {
+            Preconditions.checkNotNull(key, "key == null");
+            if (key.length == 0) {
+                throw new IllegalArgumentException("key is empty");
+            }
+            this.key = key.clone();
+        }
+
+        /**
+         * @param algorithm {@link Mac}的算法名，默认HmacSHA256
+         *
+         * @return
+         */
+        public Builder algorithm(String algorithm) {
+            this.algorithm = Preconditions.checkNotNull(algorithm, "algorithm == null");
+            return this;
+        }
+
+        /**
+         * 签名写入的参数名，默认sign；同名的已有参数会被替换
+         *
+         * @param paramName
+         *
+         * @return
+         */
+        public Builder param(String paramName) {
+            this.paramName = Preconditions.checkNotNull(paramName, "paramName == null");
+            this.headerName = null;
+            return this;
+        }
+
+        /**
+         * 签名写入header而不是参数
+         *
+         * @param headerName
+         *
+         * @return
+         */
+        public Builder header(String headerName) {
+            this.headerName = Preconditions.checkNotNull(headerName, "headerName == null");
+            return this;
+        }
+
+        /**
+         * @param params 不参与签名的参数名
+         *
+         * @return
+         */
+        public Builder exclude(String... params) {
+            this.excludedParams = new HashSet<>(Arrays.asList(params));
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException 算法不可用或者key不能用于该算法
+         */
+        public RequestSigner build() {
+            return new RequestSigner(this);
+        }
+    }
+}
@@ -0,0 +1,431 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Type;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.ganquan.tiny.retrofit.internal.Preconditions;
+
+import android.util.Log;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link com.github.ganquan.tiny.retrofit.annotate.Cacheable}方法的响应缓存
+ * <p>
+ * 内存层按LRU保存解析后的对象，命中时直接返回同一个对象，调用方不应修改；
+ * 可选的磁盘层保存原始响应字节，内存未命中时读取并重新解析，进程重启后仍然有效
+ * <p>
+ * 通过{@link JtRetrofit#setResponseCache(ResponseCache)}设置，默认只有100条的内存层
+ *
+ * @author GanQuan
+ */
+public final class ResponseCache {
+    private static final String TAG = "ResponseCache";
+    private static final String SUFFIX = ".cache";
+    private static final char[] HEX_DIGITS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    private final int maxEntries;
+    private final File directory;
+    private final long maxDiskBytes;
+    private final Set<String> excludedParams;
+
+    /**
+     * guarded by this
+     */
+    private final LinkedHashMap<String, MemoryEntry> memory = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * 磁盘文件名到文件大小，按访问顺序排列，首次访问磁盘时从目录加载；guarded by diskLock
+     */
+    private LinkedHashMap<String, Long> diskIndex;
+    private long diskSize;
+    private final Object diskLock = new Object();
+
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private ResponseCache(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.directory = builder.directory;
+        this.maxDiskBytes = builder.maxDiskBytes;
+        this.excludedParams = Collections.unmodifiableSet(new HashSet<>(builder.excludedParams));
+    }
+
+    private static final class MemoryEntry {
+        final Object value;
+        final long expiresAt;
+
+        MemoryEntry(Object value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * 所有缓存方法都不参与key计算的表单参数名
+     *
+     * @return
+     */
+    public Set<String> excludedParams() {
+        return excludedParams;
+    }
+
+    /**
+     * 是否配置了磁盘层
+     *
+     * @return
+     */
+    public boolean hasDiskTier() {
+        return directory != null;
+    }
+
+    /**
+     * 查找未过期的缓存，先查内存层再查磁盘层，磁盘命中时解析后放入内存层
+     *
+     * @param key       请求的缓存key
+     * @param type      响应类型，内存层和磁盘层都按key和type区分
+     * @param converter 解析磁盘层的原始字节
+     * @param <T>
+     *
+     * @return 未命中时返回null
+     */
+    //内存层的key包括type，命中的值就是按type解析出来的T
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Type type, Converter<T> converter) {
+        String memoryKey = memoryKey(key, type);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            MemoryEntry entry = memory.get(memoryKey);
+            if (entry != null) {
+                if (entry.expiresAt > now) {
+                    memoryHitCount.incrementAndGet();
+                    return (T) entry.value;
+                }
+                memory.remove(memoryKey);
+            }
+        }
+
+        if (directory != null) {
+            T value = getFromDisk(memoryKey, converter, now);
+            if (value != null) {
+                diskHitCount.incrementAndGet();
+                return value;
+            }
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 保存响应
+     *
+     * @param key       请求的缓存key
+     * @param type      响应类型
+     * @param value     解析后的对象，保存在内存层
+     * @param raw       原始响应字节，保存在磁盘层，没有磁盘层时可以为null
+     * @param ttlMillis 有效期
+     */
+    public void put(String key, Type type, Object value, byte[] raw, long ttlMillis) {
+        long expiresAt = System.currentTimeMillis() + ttlMillis;
+        String memoryKey = memoryKey(key, type);
+        putInMemory(memoryKey, value, expiresAt);
+        if (directory != null && raw != null) {
+            putOnDisk(memoryKey, raw, expiresAt);
+        }
+    }
+
+    private void putInMemory(String memoryKey, Object value, long expiresAt) {
+        if (maxEntries == 0) {
+            return;
+        }
+        synchronized (this) {
+            memory.put(memoryKey, new MemoryEntry(value, expiresAt));
+            Iterator<MemoryEntry> iterator = memory.values().iterator();
+            while (memory.size() > maxEntries) {
+                iterator.next();
+                iterator.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    private <T> T getFromDisk(String memoryKey, Converter<T> converter, long now) {
+        String name = fileName(memoryKey);
+        File file = new File(directory, name);
+        byte[] raw;
+        long expiresAt;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            expiresAt = in.readLong();
+            if (expiresAt <= now) {
+                removeFromDisk(name);
+                return null;
+            }
+            raw = readFully(in, (int) file.length() - 8);
+        } catch (IOException e) {
+            // 文件不存在或者已经被淘汰
+            return null;
+        }
+        synchronized (diskLock) {
+            loadDiskIndex().get(name);
+        }
+
+        T value;
+        try {
+            value = converter.convert(ResponseBody.create(null, raw));
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "drop unreadable disk cache " + name, e);
+            removeFromDisk(name);
+            return null;
+        }
+        if (value != null) {
+            putInMemory(memoryKey, value, expiresAt);
+        }
+        return value;
+    }
+
+    private void putOnDisk(String memoryKey, byte[] raw, long expiresAt) {
+        String name = fileName(memoryKey);
+        File tmp = new File(directory, name + ".tmp");
+        File file = new File(directory, name);
+        synchronized (diskLock) {
+            LinkedHashMap<String, Long> index = loadDiskIndex();
+            try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmp))) {
+                out.writeLong(expiresAt);
+                out.write(raw);
+            } catch (IOException e) {
+                Log.w(TAG, "write disk cache fails", e);
+                tmp.delete();
+                return;
+            }
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                return;
+            }
+            Long previous = index.put(name, file.length());
+            diskSize += file.length() - (previous != null ? previous : 0);
+
+            Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+            while (diskSize > maxDiskBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> eldest = iterator.next();
+                if (eldest.getKey().equals(name)) {
+                    continue;
+                }
+                new File(directory, eldest.getKey()).delete();
+                diskSize -= eldest.getValue();
+                iterator.remove();
+                evictionCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void removeFromDisk(String name) {
+        synchronized (diskLock) {
+            new File(directory, name).delete();
+            Long size = loadDiskIndex().remove(name);
+            if (size != null) {
+                diskSize -= size;
+            }
+        }
+    }
+
+    /**
+     * 按修改时间从旧到新加载已有的缓存文件
+     */
+    private LinkedHashMap<String, Long> loadDiskIndex() {
+        if (diskIndex != null) {
+            return diskIndex;
+        }
+        diskIndex = new LinkedHashMap<>(16, 0.75f, true);
+        diskSize = 0;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.w(TAG, "can not create cache directory " + directory);
+            return diskIndex;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return diskIndex;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                long x = a.lastModified();
+                long y = b.lastModified();
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        for (File file : files) {
+            if (file.getName().endsWith(SUFFIX)) {
+                diskIndex.put(file.getName(), file.length());
+                diskSize += file.length();
+            } else if (file.getName().endsWith(SUFFIX + ".tmp")) {
+                file.delete();
+            }
+        }
+        return diskIndex;
+    }
+
+    /**
+     * 清空内存层和磁盘层
+     */
+    public void evictAll() {
+        synchronized (this) {
+            memory.clear();
+        }
+        if (directory != null) {
+            synchronized (diskLock) {
+                for (String name : loadDiskIndex().keySet()) {
+                    new File(directory, name).delete();
+                }
+                diskIndex.clear();
+                diskSize = 0;
+            }
+        }
+    }
+
+    /**
+     * @return 内存层的条目数
+     */
+    public synchronized int size() {
+        return memory.size();
+    }
+
+    /**
+     * @return 磁盘层占用的字节数
+     */
+    public long diskSize() {
+        if (directory == null) {
+            return 0;
+        }
+        synchronized (diskLock) {
+            loadDiskIndex();
+            return diskSize;
+        }
+    }
+
+    public long hitCount() {
+        return memoryHitCount.get() + diskHitCount.get();
+    }
+
+    public long memoryHitCount() {
+        return memoryHitCount.get();
+    }
+
+    public long diskHitCount() {
+        return diskHitCount.get();
+    }
+
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return 因为超出容量被淘汰的条目数，不包括过期的条目
+     */
+    public long evictionCount() {
+        return evictionCount.get();
+    }
+
+    private static String memoryKey(String key, Type type) {
+        return type.toString() + '\n' + key;
+    }
+
+    /**
+     * 与内存层一样按响应类型和key区分，不同响应类型的方法不会读到对方的文件
+     */
+    private static String fileName(String memoryKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(memoryKey.getBytes("UTF-8"));
+            char[] hex = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                hex[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0xf];
+                hex[i * 2 + 1] = HEX_DIGITS[digest[i] & 0xf];
+            }
+            return new String(hex) + SUFFIX;
+        } catch (NoSuchAlgorithmException | IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static byte[] readFully(InputStream in, int sizeHint) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(sizeHint, 32));
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    public static final class Builder {
+        private int maxEntries = 100;
+        private File directory;
+        private long maxDiskBytes;
+        private final Set<String> excludedParams = new HashSet<>();
+
+        /**
+         * @param maxEntries 内存层最多保存的对象数，为0时不使用内存层
+         *
+         * @return
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("maxEntries < 0: " + maxEntries);
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 开启磁盘层
+         *
+         * @param directory 缓存目录，需要由本缓存独占
+         * @param maxBytes  最多占用的字节数，超出时淘汰最久未使用的文件
+         *
+         * @return
+         */
+        public Builder diskCache(File directory, long maxBytes) {
+            Preconditions.checkNotNull(directory, "directory == null");
+            if (maxBytes <= 0) {
+                throw new IllegalArgumentException("maxBytes <= 0: " + maxBytes);
+            }
+            this.directory = directory;
+            this.maxDiskBytes = maxBytes;
+            return this;
+        }
+
+        /**
+         * 所有缓存方法都不参与key计算的表单参数，例如拦截器统一添加的时间戳和签名
+         *
+         * @param names
+         *
+         * @return
+         */
+        public Builder excludeParams(String... names) {
+            excludedParams.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        public ResponseCache build() {
+            return new ResponseCache(this);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
+
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.functions.Function;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * 失败重试策略：指数退避加随机抖动
+ * <p>
+ * 可重试的错误：IOException(连接失败、超时、连接被断开)，以及http状态码属于{@link Builder#statusClasses(int...)}
+ * 或{@link Builder#statusCodes(int...)}的响应；解析失败等其他错误不重试。
+ * 第n次重试前等待{@code min(initialBackoff * 2^(n-1), maxBackoff)}，再按jitter比例随机缩短，避免大量客户端同时重试
+ *
+ * @author GanQuan
+ * @see com.github.ganquan.tiny.retrofit.annotate.Retry
+ */
+public final class RetryPolicy {
+    private static final Random RANDOM = new Random();
+
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final double jitter;
+    /**
+     * 下标为状态码的百位，例如5表示5xx
+     */
+    private final boolean[] statusClasses = new boolean[10];
+    private final int[] statusCodes;
+    private final boolean retryOnIOException;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoffMillis = builder.initialBackoffMillis;
+        this.maxBackoffMillis = builder.maxBackoffMillis;
+        this.jitter = builder.jitter;
+        for (int statusClass : builder.statusClasses) {
+            this.statusClasses[statusClass] = true;
+        }
+        this.statusCodes = builder.statusCodes.clone();
+        this.retryOnIOException = builder.retryOnIOException;
+    }
+
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * 错误是否可以重试
+     *
+     * @param error
+     *
+     * @return
+     */
+    public boolean isRetryable(Throwable error) {
+        if (error instanceof IOException) {
+            return retryOnIOException;
+        }
+        if (error instanceof JtApiException) {
+            int httpCode = ((JtApiException) error).httpCode;
+            if (httpCode >= 100 && httpCode < 1000 && statusClasses[httpCode / 100]) {
+                return true;
+            }
+            for (int statusCode : statusCodes) {
+                if (statusCode == httpCode) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 第retry次重试前的等待时间
+     *
+     * @param retry 从1开始
+     *
+     * @return
+     */
+    public long backoffMillis(int retry) {
+        long backoff = initialBackoffMillis;
+        for (int i = 1; i < retry && backoff < maxBackoffMillis; i++) {
+            backoff <<= 1;
+        }
+        backoff = Math.min(backoff, maxBackoffMillis);
+        double random;
+        synchronized (RANDOM) {
+            random = RANDOM.nextDouble();
+        }
+        return (long) (backoff * (1 - jitter * random));
+    }
+
+    /**
+     * 失败时按策略重新订阅upstream，每次重新订阅都会创建新的Call
+     *
+     * @param upstream
+     * @param async    请求是否异步执行；阻塞执行时在io线程上重新订阅，避免在计时线程上阻塞
+     * @param <T>
+     *
+     * @return
+     */
+    public <T> Single<T> apply(Single<T> upstream, boolean async) {
+        final Scheduler scheduler = async ? Schedulers.computation() : Schedulers.io();
+        return upstream.retryWhen(new Function<Flowable<Throwable>, Publisher<Long>>() {
+            @Override
+            public Publisher<Long> apply(Flowable<Throwable> errors) throws Exception {
+                final int[] retries = {0};
+                return errors.flatMap(new Function<Throwable, Publisher<Long>>() {
+                    @Override
+                    public Publisher<Long> apply(Throwable error) throws Exception {
+                        if (++retries[0] >= maxAttempts || !isRetryable(error)) {
+                            return Flowable.error(error);
+                        }
+                        return Flowable.timer(backoffMillis(retries[0]), TimeUnit.MILLISECONDS, scheduler);
+                    }
+                });
+            }
+        });
+    }
+
+    public static final class Builder {
+        private int maxAttempts = 3;
+        private long initialBackoffMillis = 100;
+        private long maxBackoffMillis = 2000;
+        private double jitter = 0.5;
+        private int[] statusClasses = {5};
+        private int[] statusCodes = {408, 429};
+        private boolean retryOnIOException = true;
+
+        /**
+         * @param maxAttempts 最多请求次数，包括第一次，默认3
+         *
+         * @return
+         */
+        public Builder maxAttempts(int maxAttempts) {
+            if (maxAttempts < 1) {
+                throw new IllegalArgumentException("maxAttempts < 1: " + maxAttempts);
+            }
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * @param initial 第一次重试前的等待时间，默认100毫秒
+         * @param max     等待时间的上限，默认2秒
+         * @param unit
+         *
+         * @return
+         */
+        public Builder backoff(long initial, long max, TimeUnit unit) {
+            if (initial < 0 || max < initial) {
+                throw new IllegalArgumentException("invalid backoff: " + initial + ", " + max);
+            }
+            this.initialBackoffMillis = unit.toMillis(initial);
+            this.maxBackoffMillis = unit.toMillis(max);
+            return this;
+        }
+
+        /**
+         * @param jitter 0到1之间，等待时间随机缩短的最大比例，默认0.5
+         *
+         * @return
+         */
+        public Builder jitter(double jitter) {
+            if (!(jitter >= 0 && jitter <= 1)) {
+                throw new IllegalArgumentException("jitter must be in [0, 1]: " + jitter);
+            }
+            this.jitter = jitter;
+            return this;
+        }
+
+        /**
+         * @param statusClasses 可以重试的状态码类别，例如5表示5xx，默认{5}
+         *
+         * @return
+         */
+        public Builder statusClasses(int... statusClasses) {
+            for (int statusClass : statusClasses) {
+                if (statusClass < 1 || statusClass > 9) {
+                    throw new IllegalArgumentException("invalid status class: " + statusClass);
+                }
+            }
+            this.statusClasses = statusClasses.clone();
+            return this;
+        }
+
+        /**
+         * @param statusCodes 额外可以重试的状态码，默认{408, 429}
+         *
+         * @return
+         */
+        public Builder statusCodes(int... statusCodes) {
+            this.statusCodes = statusCodes.clone();
+            return this;
+        }
+
+        /**
+         * @param retry IOException是否重试，默认true；非幂等的接口可以关闭
+         *
+         * @return
+         */
+        public Builder retryOnIOException(boolean retry) {
+            this.retryOnIOException = retry;
+            return this;
+        }
+
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
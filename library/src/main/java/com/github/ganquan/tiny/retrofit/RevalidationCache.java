@@ -0,0 +1,190 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * GET请求的条件请求缓存：保存响应的ETag、Last-Modified和解析后的对象
+ * <p>
+ * 再次发出相同的请求时带上If-None-Match/If-Modified-Since，服务端返回304时直接返回保存的对象，
+ * 响应体既不传输也不解析；对象会被多次返回，调用方不应修改。
+ * key由url、查询参数、表单参数和{@link com.github.ganquan.tiny.retrofit.annotate.Header}请求头组成，
+ * 与{@link ResponseCache}相同，每次都会变化的参数需要通过
+ * {@link Builder#excludeParams(String...)}排除；只有同一个converter(例如同一个api方法)的请求才会复用。
+ * 不支持Vary
+ * <p>
+ * 默认不开启，通过{@link JtRetrofit#setRevalidationCache(RevalidationCache)}设置后生效，每个cache默认保存100条。
+ * 只对api方法生效，{@link com.github.ganquan.tiny.retrofit.internal.Request#post(Class)}等每次查找converter的请求不使用
+ *
+ * @author GanQuan
+ */
+public final class RevalidationCache {
+    private final int maxEntries;
+    private final Set<String> excludedParams;
+    /**
+     * guarded by this
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong revalidatedCount = new AtomicLong();
+    private final AtomicLong changedCount = new AtomicLong();
+
+    private RevalidationCache(Builder builder) {
+        this.maxEntries = builder.maxEntries;
+        this.excludedParams = Collections.unmodifiableSet(new HashSet<>(builder.excludedParams));
+    }
+
+    /**
+     * 一个响应的验证信息和解析结果
+     */
+    public static final class Entry {
+        final Converter<?> converter;
+        final String etag;
+        final String lastModified;
+        final Object value;
+
+        Entry(Converter<?> converter, String etag, String lastModified, Object value) {
+            this.converter = converter;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.value = value;
+        }
+
+        /**
+         * @return 没有时为null
+         */
+        public String getEtag() {
+            return etag;
+        }
+
+        /**
+         * @return 没有时为null
+         */
+        public String getLastModified() {
+            return lastModified;
+        }
+
+        public Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * 不参与key计算的参数名
+     *
+     * @return
+     */
+    public Set<String> excludedParams() {
+        return excludedParams;
+    }
+
+    /**
+     * @param key       请求的key
+     * @param converter 解析响应的converter，不同时不复用
+     *
+     * @return 没有时返回null
+     */
+    public synchronized Entry get(String key, Converter<?> converter) {
+        Entry entry = entries.get(key);
+        return entry != null && entry.converter == converter ? entry : null;
+    }
+
+    /**
+     * 保存200响应的验证信息，都为null时删除已有的条目
+     *
+     * @param key
+     * @param converter
+     * @param etag
+     * @param lastModified
+     * @param value        解析后的对象
+     */
+    public void put(String key, Converter<?> converter, String etag, String lastModified, Object value) {
+        if (maxEntries == 0) {
+            return;
+        }
+        synchronized (this) {
+            Entry previous;
+            if (value == null || (etag == null && lastModified == null)) {
+                previous = entries.remove(key);
+            } else {
+                previous = entries.put(key, new Entry(converter, etag, lastModified, value));
+                Iterator<Entry> iterator = entries.values().iterator();
+                while (entries.size() > maxEntries) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            if (previous != null) {
+                changedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 记录一次304
+     */
+    public void onRevalidated() {
+        revalidatedCount.incrementAndGet();
+    }
+
+    public synchronized void evictAll() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return 服务端返回304、直接使用保存对象的次数
+     */
+    public long revalidatedCount() {
+        return revalidatedCount.get();
+    }
+
+    /**
+     * @return 已有条目被新的响应替换或删除的次数
+     */
+    public long changedCount() {
+        return changedCount.get();
+    }
+
+    public static final class Builder {
+        private int maxEntries = 100;
+        private final Set<String> excludedParams = new HashSet<>();
+
+        /**
+         * @param maxEntries 最多保存的条目数，超出时淘汰最久未使用的
+         *
+         * @return
+         */
+        public Builder maxEntries(int maxEntries) {
+            if (maxEntries < 0) {
+                throw new IllegalArgumentException("maxEntries < 0: " + maxEntries);
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 不参与key计算的参数，例如拦截器统一添加的时间戳和签名
+         *
+         * @param names
+         *
+         * @return
+         */
+        public Builder excludeParams(String... names) {
+            excludedParams.addAll(Arrays.asList(names));
+            return this;
+        }
+
+        public RevalidationCache build() {
+            return new RevalidationCache(this);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.ganquan.tiny.retrofit;
+
+/**
+ * 请求订阅和结果分发所在的线程
+ *
+ * @author GanQuan
+ * @see ThreadingPolicy
+ */
+public enum ThreadMode {
+    /**
+     * 不切换线程：订阅时在调用线程执行，结果在产生结果的线程(io线程或okhttp的dispatcher线程)上分发
+     */
+    IMMEDIATE,
+    /**
+     * Schedulers.io()
+     */
+    IO,
+    /**
+     * Schedulers.computation()
+     */
+    COMPUTATION,
+    /**
+     * Android主线程
+     */
+    MAIN,
+    /**
+     * 仅用于结果分发：切回订阅时所在线程的Looper，订阅线程没有Looper时等同于IMMEDIATE；
+     * 用于subscribeOn时等同于IMMEDIATE
+     */
+    CALLER
+}
@@ -0,0 +1,159 @@
+package com.github.ganquan.tiny.retrofit;
+
+import java.util.concurrent.Callable;
+
+import org.reactivestreams.Publisher;
+
+import android.os.Looper;
+import io.reactivex.Flowable;
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.SingleSource;
+import io.reactivex.android.schedulers.AndroidSchedulers;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * 请求的线程策略：在哪个线程订阅(发起请求)，在哪个线程分发结果
+ * <p>
+ * 默认在io线程订阅、主线程分发；结果交给后台逻辑或者继续发起网络请求时，可以去掉主线程切换，
+ * 在非Android环境中使用时需要设置不依赖主线程的策略。
+ * 全局策略通过{@link JtRetrofit#setThreadingPolicy(ThreadingPolicy)}设置，
+ * 单个api方法可以通过{@link com.github.ganquan.tiny.retrofit.annotate.Threading}覆盖。
+ *
+ * @author GanQuan
+ */
+public final class ThreadingPolicy {
+    /**
+     * io线程订阅，主线程分发
+     */
+    public static final ThreadingPolicy DEFAULT = of(ThreadMode.IO, ThreadMode.MAIN);
+    /**
+     * io线程订阅，结果不切回主线程，直接在io线程或okhttp的dispatcher线程上分发
+     */
+    public static final ThreadingPolicy BACKGROUND = of(ThreadMode.IO, ThreadMode.IMMEDIATE);
+
+    private final ThreadMode subscribeMode;
+    private final Scheduler subscribeScheduler;
+    private final ThreadMode observeMode;
+    private final Scheduler observeScheduler;
+
+    private ThreadingPolicy(ThreadMode subscribeMode, Scheduler subscribeScheduler,
+                            ThreadMode observeMode, Scheduler observeScheduler) {
+        this.subscribeMode = subscribeMode;
+        this.subscribeScheduler = subscribeScheduler;
+        this.observeMode = observeMode;
+        this.observeScheduler = observeScheduler;
+    }
+
+    /**
+     * @param subscribeOn 发起请求的线程
+     * @param observeOn   分发结果的线程
+     *
+     * @return
+     */
+    public static ThreadingPolicy of(ThreadMode subscribeOn, ThreadMode observeOn) {
+        return new ThreadingPolicy(checkMode(subscribeOn), null, checkMode(observeOn), null);
+    }
+
+    /**
+     * 使用自定义的Scheduler
+     *
+     * @param subscribeOn 发起请求的Scheduler，为null时在订阅线程发起
+     * @param observeOn   分发结果的Scheduler，为null时不切换线程
+     *
+     * @return
+     */
+    public static ThreadingPolicy of(Scheduler subscribeOn, Scheduler observeOn) {
+        return new ThreadingPolicy(ThreadMode.IMMEDIATE, subscribeOn, ThreadMode.IMMEDIATE, observeOn);
+    }
+
+    private static ThreadMode checkMode(ThreadMode mode) {
+        if (mode == null) {
+            throw new NullPointerException("ThreadMode == null");
+        }
+        return mode;
+    }
+
+    /**
+     * 按策略切换线程
+     *
+     * @param upstream
+     * @param async    请求是否通过Call.enqueue异步执行，异步执行时不会阻塞订阅线程，忽略subscribeOn
+     * @param <T>
+     *
+     * @return
+     */
+    public <T> Single<T> apply(Single<T> upstream, boolean async) {
+        Single<T> single = upstream;
+        Scheduler subscribeOn = async ? null : scheduler(subscribeMode, subscribeScheduler);
+        if (subscribeOn != null) {
+            single = single.subscribeOn(subscribeOn);
+        }
+        if (observeMode == ThreadMode.CALLER) {
+            return observeOnCaller(single);
+        }
+        Scheduler observeOn = scheduler(observeMode, observeScheduler);
+        return observeOn != null ? single.observeOn(observeOn) : single;
+    }
+
+    /**
+     * 按策略切换线程，流式响应在subscribeOn的线程上阻塞执行；下游每次request都会切回该线程解析，
+     * observeOn的线程只负责分发
+     *
+     * @param upstream
+     * @param <T>
+     *
+     * @return
+     */
+    public <T> Flowable<T> apply(Flowable<T> upstream) {
+        Flowable<T> flowable = upstream;
+        Scheduler subscribeOn = scheduler(subscribeMode, subscribeScheduler);
+        if (subscribeOn != null) {
+            flowable = flowable.subscribeOn(subscribeOn);
+        }
+        if (observeMode == ThreadMode.CALLER) {
+            return observeOnCaller(flowable);
+        }
+        Scheduler observeOn = scheduler(observeMode, observeScheduler);
+        return observeOn != null ? flowable.observeOn(observeOn) : flowable;
+    }
+
+    private static Scheduler scheduler(ThreadMode mode, Scheduler custom) {
+        if (custom != null) {
+            return custom;
+        }
+        switch (mode) {
+            case IO:
+                return Schedulers.io();
+            case COMPUTATION:
+                return Schedulers.computation();
+            case MAIN:
+                return AndroidSchedulers.mainThread();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 订阅时记录调用线程的Looper，结果切回该Looper
+     */
+    private static <T> Single<T> observeOnCaller(final Single<T> single) {
+        return Single.defer(new Callable<SingleSource<T>>() {
+            @Override
+            public SingleSource<T> call() throws Exception {
+                Looper looper = Looper.myLooper();
+                return looper != null ? single.observeOn(AndroidSchedulers.from(looper)) : single;
+            }
+        });
+    }
+
+    private static <T> Flowable<T> observeOnCaller(final Flowable<T> flowable) {
+        return Flowable.defer(new Callable<Publisher<T>>() {
+            @Override
+            public Publisher<T> call() throws Exception {
+                Looper looper = Looper.myLooper();
+                return looper != null ? flowable.observeOn(AndroidSchedulers.from(looper)) : flowable;
+            }
+        });
+    }
+}
@@ -0,0 +1,31 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 返回Flowable的方法中，要逐个发出的JSON数组在响应中的位置，多层字段用.分隔；不声明时响应本身就是数组
+ * <p>
+ * Flowable方法从响应流中边读边解析数组元素，每个元素解析完就发出，下游处理不过来时暂停读取，
+ * 数组之前的其他字段会被跳过，数组之后的内容不会读取。
+ * 响应在subscribeOn的线程上阻塞执行并解析，不能和{@link Cacheable}、{@link Coalesce}、{@link Batch}、
+ * {@link Hedge}、{@link SaveTo}一起使用
+ * <pre>{@code
+ * // {"code":0,"data":{"total":20000,"items":[...]}}
+ * &#64;ArrayPath("data.items")
+ * &#64;Url("items/all")
+ * Flowable<Item> items();
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface ArrayPath {
+    String value();
+}
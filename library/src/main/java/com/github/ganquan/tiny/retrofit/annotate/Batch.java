@@ -0,0 +1,58 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把短时间内的多次调用合并为一个批量请求
+ * <p>
+ * 每次调用的表单参数先进入该方法的聚合队列，时间窗口结束或者达到maxSize时发出一个POST请求，
+ * 表单字段{@link #field()}的值为所有调用参数组成的JSON数组，拦截器添加的公共参数只加一次：
+ * <pre>{@code
+ * batch=[{"id":"1"},{"id":"2"}]
+ * }</pre>
+ * 服务端按相同顺序返回JSON数组，每个元素是{@code {"data": ...}}或{@code {"error": {"code": 1, "msg": "..."}}}，
+ * data按方法的返回类型解析后分发给对应的调用者，error以{@link com.github.ganquan.tiny.retrofit.JtApiException}
+ * 只通知对应的调用者；整个批量请求失败时所有调用者都会收到错误
+ * <pre>{@code
+ * &#64;Batch(window = 50, maxSize = 20)
+ * &#64;Url("item/detail")
+ * Single<Item> item(@Field("id") String id);
+ * }</pre>
+ * 每个字段只能有一个值，不能使用List或数组类型的{@link Field}，{@link FieldMap}的值也不能是List或数组。
+ * 调用在订阅时才进入队列，发出前dispose的调用会被移除；不能与{@link Path}、{@link Cacheable}、{@link Coalesce}、
+ * {@link Retry}、{@link Hedge}同时使用
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface Batch {
+    /**
+     * 时间窗口，从队列中第一个调用开始计时
+     */
+    long window() default 20;
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+    /**
+     * 一个批量请求最多包含的调用数
+     */
+    int maxSize() default 20;
+
+    /**
+     * 保存JSON数组的表单字段名
+     */
+    String field() default "batch";
+
+    /**
+     * 批量请求的url，为空时使用{@link Url}
+     */
+    String url() default "";
+}
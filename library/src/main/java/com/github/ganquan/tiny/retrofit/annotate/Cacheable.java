@@ -0,0 +1,41 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存api方法的响应，有效期内相同的请求直接返回缓存结果，不再访问服务器
+ * <p>
+ * 缓存key由url、最终的表单参数(经过{@link com.github.ganquan.tiny.retrofit.IHttpInterceptor}处理后)和{@link Header}请求头组成，
+ * 时间戳、签名等每次都会变化的参数需要通过{@link #excludeParams()}或
+ * {@link com.github.ganquan.tiny.retrofit.ResponseCache.Builder#excludeParams(String...)}排除
+ * <pre>{@code
+ * &#64;Cacheable(ttl = 10, unit = TimeUnit.MINUTES, excludeParams = {"timestamp", "sign"})
+ * &#64;Url("config/list")
+ * Single<Config> config();
+ * }</pre>
+ *
+ * @author GanQuan
+ * @see com.github.ganquan.tiny.retrofit.ResponseCache
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface Cacheable {
+    /**
+     * 缓存有效期
+     */
+    long ttl();
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * 不参与缓存key计算的表单参数名
+     */
+    String[] excludeParams() default {};
+}
@@ -0,0 +1,35 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 合并相同的进行中请求：url、表单参数和请求头都相同的并发调用共用一个Call和同一个解析结果
+ * <p>
+ * 所有订阅者都取消时才会取消Call，单个订阅者dispose(例如{@link com.github.ganquan.tiny.retrofit.JtSingObserver}
+ * 随页面销毁)不影响其他订阅者；请求结束后再次调用会重新发起请求。
+ * 和{@link Hedge}、{@link Retry}一起使用时，合并的是对冲和重试之后的结果。
+ * 时间戳等每次都会变化的参数需要通过{@link #excludeParams()}排除，
+ * {@link com.github.ganquan.tiny.retrofit.ResponseCache}、{@link com.github.ganquan.tiny.retrofit.RevalidationCache}
+ * 全局排除的参数和{@link com.github.ganquan.tiny.retrofit.RequestSigner}的签名参数不参与比较
+ * <pre>{@code
+ * &#64;Coalesce
+ * &#64;Url("user/profile")
+ * Single<Profile> profile();
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface Coalesce {
+    /**
+     * 不参与比较的表单参数名
+     */
+    String[] excludeParams() default {};
+}
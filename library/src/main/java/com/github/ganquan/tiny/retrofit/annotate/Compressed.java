@@ -0,0 +1,28 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 用gzip压缩请求体并带上Content-Encoding: gzip，适合日志、批量事件等较大的表单和multipart上传
+ * <p>
+ * 写入时逐段压缩，不会在内存中保存整个压缩结果；请求体小于
+ * {@link com.github.ganquan.tiny.retrofit.JtRetrofit#setCompressionThreshold(long)}(默认1024字节)时不压缩。
+ * 服务端需要支持解压请求体，不能和{@link GET}一起使用
+ * <pre>{@code
+ * &#64;Compressed
+ * &#64;Url("log/upload")
+ * Single<Result> upload(@Field("logs") String logs);
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface Compressed {
+}
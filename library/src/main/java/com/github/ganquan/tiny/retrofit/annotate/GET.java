@@ -0,0 +1,27 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 使用GET发送请求，默认是POST；公共参数和签名放在url的查询参数中，不能使用{@link Field}、{@link FieldMap}
+ * <p>
+ * 响应带有ETag或Last-Modified时，解析结果保存在{@link com.github.ganquan.tiny.retrofit.RevalidationCache}中，
+ * 再次请求时发送If-None-Match/If-Modified-Since，服务端返回304时直接返回保存的对象，不传输也不解析响应体
+ * <pre>{@code
+ * &#64;GET
+ * &#64;Url("config/list")
+ * Single<Config> config(@Query("version") int version, @Header("Accept-Language") String language);
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface GET {
+}
@@ -0,0 +1,20 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 请求头，值通过{@link String#valueOf(Object)}转换，null时不发送
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+@Retention(RUNTIME)
+public @interface Header {
+    String value();
+}
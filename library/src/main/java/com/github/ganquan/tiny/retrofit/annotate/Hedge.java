@@ -0,0 +1,38 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求超过delay还没有返回时再发出一次相同的请求，使用先成功的结果，规则见{@link com.github.ganquan.tiny.retrofit.HedgePolicy}
+ * <p>
+ * 只适用于幂等的接口；与{@link Retry}同时使用时，每次重试都会对冲
+ * <pre>{@code
+ * &#64;Hedge(delay = 300, adaptive = true)
+ * &#64;Url("feed/list")
+ * Single<Feed> feed();
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface Hedge {
+    /**
+     * 发出第二次请求前的等待时间，adaptive时作为样本不足时的初始值
+     */
+    long delay();
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+    /**
+     * 是否使用该方法最近成功请求耗时的p95作为等待时间
+     */
+    boolean adaptive() default false;
+}
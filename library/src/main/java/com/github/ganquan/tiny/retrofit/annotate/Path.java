@@ -10,6 +10,9 @@ import java.lang.annotation.Target;
 /**
  * 替换url中指定参数
  * "users/{username}"
+ * <p>
+ * 参数值通过{@link String#valueOf(Object)}转换后按path segment编码，不能为null；
+ * url中的每个占位符都必须有对应的@Path参数，否则在解析方法时抛出IllegalArgumentException
  *
  * @author GanQuan
  * @since 2018/3/26.
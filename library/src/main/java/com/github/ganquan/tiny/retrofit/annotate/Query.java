@@ -0,0 +1,23 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 追加到url的查询参数，GET和POST都可以使用
+ * <p>
+ * 值的转换规则与{@link Field}相同：通过{@link String#valueOf(Object)}转换，null忽略，
+ * List和数组的每个非null元素各生成一个参数
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+@Retention(RUNTIME)
+public @interface Query {
+    String value();
+}
@@ -0,0 +1,61 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 失败时按指数退避加随机抖动重试，规则见{@link com.github.ganquan.tiny.retrofit.RetryPolicy}
+ * <pre>{@code
+ * &#64;Retry(maxAttempts = 4, backoff = 200)
+ * &#64;Url("user/profile")
+ * Single<Profile> profile();
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface Retry {
+    /**
+     * 最多请求次数，包括第一次
+     */
+    int maxAttempts() default 3;
+
+    /**
+     * 第一次重试前的等待时间
+     */
+    long backoff() default 100;
+
+    /**
+     * 等待时间的上限
+     */
+    long maxBackoff() default 2000;
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+    /**
+     * 0到1之间，等待时间随机缩短的最大比例
+     */
+    double jitter() default 0.5;
+
+    /**
+     * 可以重试的状态码类别，例如5表示5xx
+     */
+    int[] statusClasses() default {5};
+
+    /**
+     * 额外可以重试的状态码
+     */
+    int[] statusCodes() default {408, 429};
+
+    /**
+     * 连接失败、超时等IOException是否重试
+     */
+    boolean retryOnIOException() default true;
+}
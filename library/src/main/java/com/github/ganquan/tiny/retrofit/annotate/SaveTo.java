@@ -0,0 +1,30 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+/**
+ * 把响应体直接写入参数指定的文件，方法必须返回Single&lt;File&gt;，成功时返回该文件
+ * <p>
+ * 响应体经固定大小的缓冲区写入"文件名.part"，不会整个读入内存；校验长度后再重命名为目标文件。
+ * .part文件已存在时通过Range请求续传，并用首次响应的ETag/Last-Modified作为If-Range，
+ * 服务端不支持Range或者文件已经变化(返回200)时从头下载，没有返回ETag或Last-Modified时不续传；
+ * 可以和{@link Retry}一起使用，每次重试都从已下载的位置继续。
+ * 不能和{@link Cacheable}、{@link Coalesce}、{@link Batch}、{@link Hedge}一起使用，
+ * 同一个文件同时只能有一个下载
+ * <pre>{@code
+ * &#64;Url("files/{name}")
+ * Single<File> download(@Path("name") String name, @SaveTo File target);
+ * }</pre>
+ *
+ * @author GanQuan
+ */
+@Documented
+@Target(ElementType.PARAMETER)
+@Retention(RUNTIME)
+public @interface SaveTo {
+}
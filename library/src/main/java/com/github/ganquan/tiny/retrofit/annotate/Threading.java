@@ -0,0 +1,30 @@
+package com.github.ganquan.tiny.retrofit.annotate;
+
+import static java.lang.annotation.RetentionPolicy.RUNTIME;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import com.github.ganquan.tiny.retrofit.ThreadMode;
+
+/**
+ * 指定单个api方法的线程策略，覆盖JtRetrofit的全局策略
+ * <pre>{@code
+ * &#64;Threading(observeOn = ThreadMode.IMMEDIATE)
+ * &#64;Url("config/list")
+ * Single<Config> config();
+ * }</pre>
+ *
+ * @author GanQuan
+ * @see com.github.ganquan.tiny.retrofit.ThreadingPolicy
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RUNTIME)
+public @interface Threading {
+    ThreadMode subscribeOn() default ThreadMode.IO;
+
+    ThreadMode observeOn() default ThreadMode.MAIN;
+}
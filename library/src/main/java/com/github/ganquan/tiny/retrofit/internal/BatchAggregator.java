@@ -0,0 +1,250 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.github.ganquan.tiny.retrofit.Converter;
+import com.github.ganquan.tiny.retrofit.HttpClient;
+import com.github.ganquan.tiny.retrofit.JtApiException;
+import com.github.ganquan.tiny.retrofit.ThreadingPolicy;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import io.reactivex.Single;
+import io.reactivex.SingleObserver;
+import io.reactivex.SingleSource;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Action;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.SingleSubject;
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+
+/**
+ * {@link com.github.ganquan.tiny.retrofit.annotate.Batch}方法的聚合队列，每个api方法一个实例
+ *
+ * @author GanQuan
+ */
+public final class BatchAggregator<T> {
+    private static final Gson GSON = new Gson();
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+    private static final ThreadingPolicy FLUSH_POLICY = ThreadingPolicy.of(Schedulers.io(), null);
+
+    private final String url;
+    private final String field;
+    private final long windowMillis;
+    private final int maxSize;
+    /**
+     * 批量请求的请求体是否gzip压缩，见{@link com.github.ganquan.tiny.retrofit.annotate.Compressed}
+     */
+    private final boolean compressed;
+    private final Converter<T> converter;
+
+    /**
+     * guarded by this
+     */
+    private List<Entry<T>> pending = new ArrayList<>();
+    /**
+     * 每次取出pending时加一，过期的定时任务据此忽略
+     */
+    private long generation;
+
+    public BatchAggregator(String url, String field, long windowMillis, int maxSize, boolean compressed,
+                           Converter<T> converter) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize < 1: " + maxSize);
+        }
+        this.url = Preconditions.checkNotNull(url, "url is null");
+        this.field = Preconditions.checkNotNull(field, "field is null");
+        this.windowMillis = windowMillis;
+        this.maxSize = maxSize;
+        this.compressed = compressed;
+        this.converter = Preconditions.checkNotNull(converter, "converter is null");
+    }
+
+    private static final class Entry<T> {
+        final Map<String, String> params;
+        final SingleSubject<T> subject = SingleSubject.create();
+        volatile boolean disposed;
+
+        Entry(Map<String, String> params) {
+            this.params = params;
+        }
+    }
+
+    /**
+     * 订阅时把builder中的表单参数加入队列
+     * <p>
+     * 每次调用的参数序列化为一个JSON对象，同名参数(例如{@link com.github.ganquan.tiny.retrofit.annotate.FieldMap}
+     * 中的List)会抛出IllegalArgumentException
+     *
+     * @param builder         单次调用的参数
+     * @param threadingPolicy 结果分发的线程策略，批量请求本身总在io线程执行
+     *
+     * @return
+     */
+    public Single<T> enqueue(Request.Builder builder, ThreadingPolicy threadingPolicy) {
+        final Map<String, String> params = builder.getFormParams();
+        if (params.size() > 1) {
+            Set<String> names = new HashSet<>(params.size() * 2);
+            for (Map.Entry<String, String> param : params.entrySet()) {
+                if (!names.add(param.getKey())) {
+                    throw new IllegalArgumentException(url + "\n@Batch can not send multi-valued field "
+                            + param.getKey());
+                }
+            }
+        }
+        Single<T> single = Single.defer(new Callable<SingleSource<T>>() {
+            @Override
+            public SingleSource<T> call() throws Exception {
+                final Entry<T> entry = new Entry<>(params);
+                add(entry);
+                return entry.subject.doOnDispose(new Action() {
+                    @Override
+                    public void run() throws Exception {
+                        entry.disposed = true;
+                    }
+                });
+            }
+        });
+        return threadingPolicy.apply(single, true);
+    }
+
+    private void add(Entry<T> entry) {
+        List<Entry<T>> batch = null;
+        long scheduleGeneration = -1;
+        synchronized (this) {
+            pending.add(entry);
+            if (pending.size() >= maxSize) {
+                batch = pending;
+                pending = new ArrayList<>();
+                generation++;
+            } else if (pending.size() == 1) {
+                scheduleGeneration = generation;
+            }
+        }
+        if (batch != null) {
+            flush(batch);
+        } else if (scheduleGeneration >= 0) {
+            final long expected = scheduleGeneration;
+            Schedulers.computation().scheduleDirect(new Runnable() {
+                @Override
+                public void run() {
+                    flushPending(expected);
+                }
+            }, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushPending(long expected) {
+        List<Entry<T>> batch;
+        synchronized (this) {
+            if (expected != generation || pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+            generation++;
+        }
+        flush(batch);
+    }
+
+    private void flush(List<Entry<T>> batch) {
+        final List<Entry<T>> entries = new ArrayList<>(batch.size());
+        List<Map<String, String>> payload = new ArrayList<>(batch.size());
+        for (Entry<T> entry : batch) {
+            if (!entry.disposed) {
+                entries.add(entry);
+                payload.add(entry.params);
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        Request.Builder builder = HttpClient.create()
+                .url(url)
+                .addFormParams(field, GSON.toJson(payload));
+        if (compressed) {
+            builder.compressed();
+        }
+        Request request = builder.build();
+        request.post(new Converter<JsonArray>() {
+            @Override
+            public JsonArray convert(ResponseBody body) throws IOException {
+                return new JsonParser().parse(body.charStream()).getAsJsonArray();
+            }
+        }, FLUSH_POLICY).subscribe(new SingleObserver<JsonArray>() {
+            @Override
+            public void onSubscribe(Disposable d) {
+            }
+
+            @Override
+            public void onSuccess(JsonArray results) {
+                for (int i = 0; i < entries.size(); i++) {
+                    deliver(entries.get(i), i < results.size() ? results.get(i) : null);
+                }
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                for (Entry<T> entry : entries) {
+                    entry.subject.onError(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 把批量响应中的一个元素分发给对应的调用者
+     */
+    private void deliver(Entry<T> entry, JsonElement result) {
+        if (result == null || !result.isJsonObject()) {
+            entry.subject.onError(new JtApiException(-1, "missing batch response"));
+            return;
+        }
+        JsonObject object = result.getAsJsonObject();
+        JsonElement error = object.get("error");
+        if (error != null && !error.isJsonNull()) {
+            entry.subject.onError(toException(error));
+            return;
+        }
+        JsonElement data = object.get("data");
+        if (data == null) {
+            entry.subject.onError(new JtApiException(-1, "missing batch response data"));
+            return;
+        }
+        try {
+            T value = converter.convert(ResponseBody.create(JSON, data.toString()));
+            if (value == null) {
+                entry.subject.onError(new JtApiException(-1, "batch response data is null"));
+            } else {
+                entry.subject.onSuccess(value);
+            }
+        } catch (Exception e) {
+            entry.subject.onError(new JtApiException(-1, e.toString()));
+        }
+    }
+
+    private static JtApiException toException(JsonElement error) {
+        if (!error.isJsonObject()) {
+            return new JtApiException(-1, error.toString(), error.toString());
+        }
+        JsonObject object = error.getAsJsonObject();
+        JsonElement code = object.get("code");
+        JsonElement msg = object.get("msg");
+        return new JtApiException(
+                code != null && code.isJsonPrimitive() ? code.getAsInt() : -1,
+                msg != null && msg.isJsonPrimitive() ? msg.getAsString() : null,
+                error.toString());
+    }
+}
@@ -0,0 +1,258 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+
+import com.github.ganquan.tiny.retrofit.MetricsListener;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * 一次请求的阶段计时，作为okhttp Request的tag传给{@link #factory(EventListener.Factory)}创建的factory，
+ * 其他事件转发给client原有的EventListener
+ * <p>
+ * 同一个请求的事件按顺序发生，不需要同步
+ *
+ * @author GanQuan
+ */
+public final class CallMetrics extends EventListener {
+    private final MetricsListener listener;
+    private final String method;
+    private EventListener delegate = EventListener.NONE;
+
+    private final long created = System.nanoTime();
+    private long queue;
+    private long callStart;
+    private boolean dispatched;
+    private long dnsStart;
+    private long connectStart;
+    private long secureStart;
+    private long tls;
+    private long requestStart;
+    private long requestBytes;
+    private long bodyReadNanos;
+    private long responseBytes;
+    private long decodeStart;
+
+    CallMetrics(MetricsListener listener, String method) {
+        this.listener = listener;
+        this.method = method;
+    }
+
+    /**
+     * tag为CallMetrics的请求使用该实例，其他请求使用delegate
+     *
+     * @param delegate client原有的factory，为null时不转发
+     *
+     * @return
+     */
+    public static EventListener.Factory factory(final EventListener.Factory delegate) {
+        return new EventListener.Factory() {
+            @Override
+            public EventListener create(Call call) {
+                EventListener listener = delegate != null ? delegate.create(call) : EventListener.NONE;
+                Object tag = call.request().tag();
+                if (tag instanceof CallMetrics) {
+                    CallMetrics metrics = (CallMetrics) tag;
+                    metrics.delegate = listener;
+                    return metrics;
+                }
+                return listener;
+            }
+        };
+    }
+
+    /**
+     * 获得并发限制名额，开始创建Call
+     */
+    void sent() {
+        queue = System.nanoTime() - created;
+    }
+
+    /**
+     * 统计读取响应体时等待网络的时间和读取的字节数
+     *
+     * @param body
+     *
+     * @return
+     */
+    ResponseBody timed(ResponseBody body) {
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public long read(Buffer sink, long byteCount) throws IOException {
+                long start = System.nanoTime();
+                long read = super.read(sink, byteCount);
+                bodyReadNanos += System.nanoTime() - start;
+                if (read > 0) {
+                    responseBytes += read;
+                }
+                return read;
+            }
+        };
+        return ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source));
+    }
+
+    void decodeStart() {
+        decodeStart = System.nanoTime();
+    }
+
+    /**
+     * 回调耗时和结果
+     *
+     * @param error 成功时为null
+     */
+    void report(MetricsListener.ErrorClass error) {
+        long now = System.nanoTime();
+        listener.onPhase(method, MetricsListener.Phase.QUEUE, queue);
+        if (bodyReadNanos > 0) {
+            listener.onPhase(method, MetricsListener.Phase.BODY, bodyReadNanos);
+        }
+        if (decodeStart > 0) {
+            listener.onPhase(method, MetricsListener.Phase.DECODE,
+                    Math.max(0, now - decodeStart - bodyReadNanos));
+        }
+        listener.onPhase(method, MetricsListener.Phase.TOTAL, now - created);
+        listener.onCompleted(method, requestBytes, responseBytes, error);
+    }
+
+    /**
+     * 开始获取连接前的最后一个事件，callStart之后的时间是dispatcher排队的时间
+     */
+    private void dispatched() {
+        if (!dispatched && callStart > 0) {
+            dispatched = true;
+            queue += System.nanoTime() - callStart;
+        }
+    }
+
+    @Override
+    public void callStart(Call call) {
+        callStart = System.nanoTime();
+        delegate.callStart(call);
+    }
+
+    @Override
+    public void dnsStart(Call call, String domainName) {
+        dispatched();
+        dnsStart = System.nanoTime();
+        delegate.dnsStart(call, domainName);
+    }
+
+    @Override
+    public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+        listener.onPhase(method, MetricsListener.Phase.DNS, System.nanoTime() - dnsStart);
+        delegate.dnsEnd(call, domainName, inetAddressList);
+    }
+
+    @Override
+    public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+        dispatched();
+        connectStart = System.nanoTime();
+        tls = 0;
+        delegate.connectStart(call, inetSocketAddress, proxy);
+    }
+
+    @Override
+    public void secureConnectStart(Call call) {
+        secureStart = System.nanoTime();
+        delegate.secureConnectStart(call);
+    }
+
+    @Override
+    public void secureConnectEnd(Call call, Handshake handshake) {
+        tls = System.nanoTime() - secureStart;
+        listener.onPhase(method, MetricsListener.Phase.TLS, tls);
+        delegate.secureConnectEnd(call, handshake);
+    }
+
+    @Override
+    public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                           Protocol protocol) {
+        listener.onPhase(method, MetricsListener.Phase.CONNECT, System.nanoTime() - connectStart - tls);
+        delegate.connectEnd(call, inetSocketAddress, proxy, protocol);
+    }
+
+    @Override
+    public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                              Protocol protocol, IOException ioe) {
+        listener.onPhase(method, MetricsListener.Phase.CONNECT, System.nanoTime() - connectStart - tls);
+        delegate.connectFailed(call, inetSocketAddress, proxy, protocol, ioe);
+    }
+
+    @Override
+    public void connectionAcquired(Call call, Connection connection) {
+        dispatched();
+        delegate.connectionAcquired(call, connection);
+    }
+
+    @Override
+    public void connectionReleased(Call call, Connection connection) {
+        delegate.connectionReleased(call, connection);
+    }
+
+    @Override
+    public void requestHeadersStart(Call call) {
+        requestStart = System.nanoTime();
+        delegate.requestHeadersStart(call);
+    }
+
+    @Override
+    public void requestHeadersEnd(Call call, Request request) {
+        delegate.requestHeadersEnd(call, request);
+    }
+
+    @Override
+    public void requestBodyStart(Call call) {
+        delegate.requestBodyStart(call);
+    }
+
+    @Override
+    public void requestBodyEnd(Call call, long byteCount) {
+        requestBytes += byteCount;
+        delegate.requestBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void responseHeadersStart(Call call) {
+        listener.onPhase(method, MetricsListener.Phase.TTFB, System.nanoTime() - requestStart);
+        delegate.responseHeadersStart(call);
+    }
+
+    @Override
+    public void responseHeadersEnd(Call call, Response response) {
+        delegate.responseHeadersEnd(call, response);
+    }
+
+    @Override
+    public void responseBodyStart(Call call) {
+        delegate.responseBodyStart(call);
+    }
+
+    @Override
+    public void responseBodyEnd(Call call, long byteCount) {
+        delegate.responseBodyEnd(call, byteCount);
+    }
+
+    @Override
+    public void callEnd(Call call) {
+        delegate.callEnd(call);
+    }
+
+    @Override
+    public void callFailed(Call call, IOException ioe) {
+        delegate.callFailed(call, ioe);
+    }
+}
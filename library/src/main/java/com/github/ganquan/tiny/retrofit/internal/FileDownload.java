@@ -0,0 +1,193 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.BufferedSource;
+import okio.Okio;
+import okio.Sink;
+
+/**
+ * 把响应体写入文件，见{@link com.github.ganquan.tiny.retrofit.annotate.SaveTo}
+ * <p>
+ * 数据先写入"目标文件.part"，长度校验通过后重命名；.part文件保留已下载的数据，下次请求时用Range续传。
+ * 首次响应的ETag(或Last-Modified)保存在"目标文件.part.meta"，续传时作为If-Range发送，
+ * 服务端的文件已经变化时返回200，从头下载；没有可用的validator时不续传
+ *
+ * @author GanQuan
+ */
+final class FileDownload {
+    static final int HTTP_PARTIAL_CONTENT = 206;
+    static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+    /**
+     * 每次最多读写一个okio segment，内存占用与文件大小无关
+     */
+    private static final long BUFFER_SIZE = 8192;
+
+    private FileDownload() {
+    }
+
+    static File partFile(File target) {
+        return new File(target.getPath() + ".part");
+    }
+
+    static File metaFile(File target) {
+        return new File(target.getPath() + ".part.meta");
+    }
+
+    /**
+     * 续传时的Range请求头
+     *
+     * @return 没有已下载的数据时为null
+     */
+    static String rangeHeader(File target) {
+        long downloaded = partFile(target).length();
+        return downloaded > 0 ? "bytes=" + downloaded + "-" : null;
+    }
+
+    /**
+     * 续传时的If-Range请求头，即.part文件对应的ETag或者Last-Modified
+     *
+     * @return 没有保存validator时为null
+     */
+    static String validator(File target) {
+        File meta = metaFile(target);
+        if (!meta.isFile()) {
+            return null;
+        }
+        try (BufferedSource source = Okio.buffer(Okio.source(meta))) {
+            String validator = source.readUtf8().trim();
+            return validator.isEmpty() ? null : validator;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * If-Range只能使用强validator，弱ETag时使用Last-Modified
+     *
+     * @return 都没有时为null
+     */
+    private static String validator(Response response) {
+        String etag = response.header("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return response.header("Last-Modified");
+    }
+
+    /**
+     * 写入响应体，校验长度后重命名为目标文件
+     *
+     * @param response 2xx或者416响应
+     * @param body     响应体，开启统计时是计时包装后的body
+     * @param target   目标文件
+     *
+     * @return target
+     *
+     * @throws IOException 读写失败或者长度不符，.part中已写入的数据会保留用于续传
+     */
+    static File save(Response response, ResponseBody body, File target) throws IOException {
+        File part = partFile(target);
+        long downloaded = part.length();
+        long expected;
+        if (response.code() == HTTP_RANGE_NOT_SATISFIABLE) {
+            //续传的起始位置等于文件长度，说明上次已经下载完，只是没有完成重命名
+            long total = contentRange(response.header("Content-Range"))[1];
+            if (downloaded == 0 || total != downloaded) {
+                delete(part);
+                delete(metaFile(target));
+                throw new IOException("range not satisfiable, downloaded " + downloaded
+                        + " of " + total + " bytes");
+            }
+            expected = total;
+        } else if (response.code() == HTTP_PARTIAL_CONTENT) {
+            long[] range = contentRange(response.header("Content-Range"));
+            if (range[0] != downloaded) {
+                throw new IOException("unexpected Content-Range: " + response.header("Content-Range")
+                        + ", downloaded " + downloaded + " bytes");
+            }
+            long length = body.contentLength();
+            expected = range[1] >= 0 ? range[1] : length >= 0 ? downloaded + length : -1;
+            write(body.source(), Okio.appendingSink(part));
+        } else {
+            //服务端忽略了Range或者文件已经变化，从头写入，先保存新的validator
+            expected = body.contentLength();
+            saveValidator(response, target);
+            write(body.source(), Okio.sink(part));
+        }
+
+        long length = part.length();
+        if (expected >= 0 && length != expected) {
+            if (length > expected) {
+                //多出来的数据无法续传，下次从头下载
+                delete(part);
+                delete(metaFile(target));
+            }
+            throw new IOException("length mismatch, expected " + expected + " but was " + length);
+        }
+        if (target.exists()) {
+            delete(target);
+        }
+        if (!part.renameTo(target)) {
+            throw new IOException("failed to rename " + part + " to " + target);
+        }
+        delete(metaFile(target));
+        return target;
+    }
+
+    private static void saveValidator(Response response, File target) throws IOException {
+        String validator = validator(response);
+        File meta = metaFile(target);
+        if (validator == null) {
+            delete(meta);
+            return;
+        }
+        try (BufferedSink sink = Okio.buffer(Okio.sink(meta))) {
+            sink.writeUtf8(validator);
+        }
+    }
+
+    private static void write(BufferedSource source, Sink sink) throws IOException {
+        Buffer buffer = new Buffer();
+        try {
+            long read;
+            while ((read = source.read(buffer, BUFFER_SIZE)) != -1) {
+                sink.write(buffer, read);
+            }
+        } finally {
+            sink.close();
+        }
+    }
+
+    private static void delete(File file) throws IOException {
+        if (!file.delete() && file.exists()) {
+            throw new IOException("failed to delete " + file);
+        }
+    }
+
+    /**
+     * 解析"bytes start-end/total"或者"bytes *&#47;total"
+     *
+     * @return {start, total}，未知的值为-1
+     */
+    static long[] contentRange(String value) throws IOException {
+        if (value == null || !value.startsWith("bytes ")) {
+            throw new IOException("invalid Content-Range: " + value);
+        }
+        try {
+            int slash = value.indexOf('/');
+            String range = value.substring("bytes ".length(), slash).trim();
+            String total = value.substring(slash + 1).trim();
+            return new long[]{
+                    "*".equals(range) ? -1 : Long.parseLong(range.substring(0, range.indexOf('-'))),
+                    "*".equals(total) ? -1 : Long.parseLong(total)};
+        } catch (RuntimeException e) {
+            throw new IOException("invalid Content-Range: " + value);
+        }
+    }
+}
@@ -0,0 +1,359 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.github.ganquan.tiny.retrofit.RequestSigner;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+
+/**
+ * 按添加顺序保存的表单参数，同一个key可以出现多次
+ * <p>
+ * 编码时直接把percent-encoded的字节写入请求的sink，不生成中间的编码字符串；编码规则与okhttp的FormBody一致
+ *
+ * @author GanQuan
+ */
+final class FormParams implements RequestSigner.Params {
+    private static final MediaType CONTENT_TYPE = MediaType.parse("application/x-www-form-urlencoded");
+    /**
+     * 与okhttp HttpUrl.FORM_ENCODE_SET相同，另外'%'、'+'、控制字符和非ASCII字符也需要编码
+     */
+    private static final String FORM_ENCODE_SET = " \"':;<=>@[]^`{}|/\\?#&!$(),~";
+    private static final byte[] HEX_DIGITS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    private String[] names;
+    private String[] values;
+    private int size;
+    private Map<String, String> mapView;
+
+    FormParams() {
+        this(8);
+    }
+
+    FormParams(int capacity) {
+        names = new String[capacity];
+        values = new String[capacity];
+    }
+
+    FormParams(FormParams other) {
+        this(other, 4);
+    }
+
+    /**
+     * @param extra 预留的容量，例如之后要添加的公共参数个数
+     */
+    FormParams(FormParams other, int extra) {
+        names = Arrays.copyOf(other.names, Math.max(other.size + extra, 8));
+        values = Arrays.copyOf(other.values, names.length);
+        size = other.size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public String name(int index) {
+        return names[index];
+    }
+
+    @Override
+    public String value(int index) {
+        return values[index];
+    }
+
+    /**
+     * 追加一对参数，value为null时忽略
+     */
+    void add(String name, String value) {
+        Preconditions.checkNotNull(name, "name == null");
+        if (value == null) {
+            return;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        names[size] = name;
+        values[size] = value;
+        size++;
+    }
+
+    /**
+     * 替换name对应的参数，已有多个时只保留第一个的位置；value为null时删除
+     *
+     * @return 原来的第一个值
+     */
+    String set(String name, String value) {
+        int index = indexOf(name);
+        if (index < 0) {
+            add(name, value);
+            return null;
+        }
+        String old = values[index];
+        if (value == null) {
+            remove(name);
+            return old;
+        }
+        values[index] = value;
+        for (int i = size - 1; i > index; i--) {
+            if (names[i].equals(name)) {
+                removeAt(i);
+            }
+        }
+        return old;
+    }
+
+    /**
+     * @return name对应的第一个值，没有时为null
+     */
+    String get(String name) {
+        int index = indexOf(name);
+        return index >= 0 ? values[index] : null;
+    }
+
+    /**
+     * 删除name对应的所有参数
+     */
+    void remove(String name) {
+        for (int i = size - 1; i >= 0; i--) {
+            if (names[i].equals(name)) {
+                removeAt(i);
+            }
+        }
+    }
+
+    private int indexOf(Object name) {
+        for (int i = 0; i < size; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int index) {
+        int moved = size - index - 1;
+        System.arraycopy(names, index + 1, names, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        size--;
+        names[size] = null;
+        values[size] = null;
+    }
+
+    /**
+     * 按name排序后的下标，name相同时保持添加顺序
+     */
+    int[] sortedIndexes() {
+        return ParamOrder.sort(this, new int[size]);
+    }
+
+    /**
+     * Map视图，供{@link com.github.ganquan.tiny.retrofit.IHttpInterceptor}读写；
+     * put替换同名参数，重复的key在entrySet中出现多次
+     */
+    Map<String, String> asMap() {
+        Map<String, String> view = mapView;
+        if (view == null) {
+            view = mapView = new MapView();
+        }
+        return view;
+    }
+
+    /**
+     * application/x-www-form-urlencoded请求体，写入时才编码
+     */
+    RequestBody toRequestBody() {
+        return new RequestBody() {
+            private long contentLength = -1;
+
+            @Override
+            public MediaType contentType() {
+                return CONTENT_TYPE;
+            }
+
+            @Override
+            public long contentLength() throws IOException {
+                if (contentLength < 0) {
+                    contentLength = writeOrCount(null);
+                }
+                return contentLength;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                writeOrCount(sink);
+            }
+        };
+    }
+
+    /**
+     * @param sink 为null时只计算长度
+     *
+     * @return 编码后的字节数
+     */
+    long writeOrCount(BufferedSink sink) throws IOException {
+        long length = 0;
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                length++;
+                if (sink != null) {
+                    sink.writeByte('&');
+                }
+            }
+            length += encode(names[i], sink);
+            length++;
+            if (sink != null) {
+                sink.writeByte('=');
+            }
+            length += encode(values[i], sink);
+        }
+        return length;
+    }
+
+    private static long encode(String s, BufferedSink sink) throws IOException {
+        long length = 0;
+        for (int i = 0, n = s.length(); i < n; ) {
+            int c = s.codePointAt(i);
+            int charCount = Character.charCount(c);
+            if (c >= 0x20 && c < 0x7f && c != '%' && c != '+' && FORM_ENCODE_SET.indexOf(c) < 0) {
+                length++;
+                if (sink != null) {
+                    sink.writeByte(c);
+                }
+            } else {
+                if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+                    //单独的surrogate与String.getBytes(UTF-8)一样替换为'?'
+                    c = '?';
+                }
+                length += percentEncode(c, sink);
+            }
+            i += charCount;
+        }
+        return length;
+    }
+
+    private static int percentEncode(int codePoint, BufferedSink sink) throws IOException {
+        if (codePoint < 0x80) {
+            writeHex(codePoint, sink);
+            return 3;
+        } else if (codePoint < 0x800) {
+            writeHex(0xc0 | codePoint >> 6, sink);
+            writeHex(0x80 | codePoint & 0x3f, sink);
+            return 6;
+        } else if (codePoint < 0x10000) {
+            writeHex(0xe0 | codePoint >> 12, sink);
+            writeHex(0x80 | codePoint >> 6 & 0x3f, sink);
+            writeHex(0x80 | codePoint & 0x3f, sink);
+            return 9;
+        }
+        writeHex(0xf0 | codePoint >> 18, sink);
+        writeHex(0x80 | codePoint >> 12 & 0x3f, sink);
+        writeHex(0x80 | codePoint >> 6 & 0x3f, sink);
+        writeHex(0x80 | codePoint & 0x3f, sink);
+        return 12;
+    }
+
+    private static void writeHex(int b, BufferedSink sink) throws IOException {
+        if (sink != null) {
+            sink.writeByte('%')
+                    .writeByte(HEX_DIGITS[b >> 4 & 0xf])
+                    .writeByte(HEX_DIGITS[b & 0xf]);
+        }
+    }
+
+    private final class MapView extends AbstractMap<String, String> {
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        public String get(Object key) {
+            int index = indexOf(key);
+            return index >= 0 ? values[index] : null;
+        }
+
+        @Override
+        public String put(String key, String value) {
+            return set(key, value);
+        }
+
+        @Override
+        public String remove(Object key) {
+            int index = indexOf(key);
+            if (index < 0) {
+                return null;
+            }
+            String old = values[index];
+            FormParams.this.remove(names[index]);
+            return old;
+        }
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return new AbstractSet<Entry<String, String>>() {
+                @Override
+                public int size() {
+                    return size;
+                }
+
+                @Override
+                public Iterator<Entry<String, String>> iterator() {
+                    return new Iterator<Entry<String, String>>() {
+                        int next;
+                        int last = -1;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size;
+                        }
+
+                        @Override
+                        public Entry<String, String> next() {
+                            if (next >= size) {
+                                throw new NoSuchElementException();
+                            }
+                            last = next++;
+                            final int index = last;
+                            return new SimpleEntry<String, String>(names[index], values[index]) {
+                                @Override
+                                public String setValue(String value) {
+                                    Preconditions.checkNotNull(value, "value == null");
+                                    values[index] = value;
+                                    return super.setValue(value);
+                                }
+                            };
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last < 0) {
+                                throw new IllegalStateException();
+                            }
+                            removeAt(last);
+                            next = last;
+                            last = -1;
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
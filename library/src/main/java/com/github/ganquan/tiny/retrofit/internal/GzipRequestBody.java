@@ -0,0 +1,41 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.io.IOException;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+/**
+ * 写入时逐段gzip压缩的请求体，只缓冲一个segment，不会把压缩后的数据整个保存在内存中；
+ * 压缩后的长度事先未知，使用chunked传输
+ *
+ * @author GanQuan
+ */
+final class GzipRequestBody extends RequestBody {
+    private final RequestBody delegate;
+
+    GzipRequestBody(RequestBody delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public MediaType contentType() {
+        return delegate.contentType();
+    }
+
+    @Override
+    public long contentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(BufferedSink sink) throws IOException {
+        BufferedSink gzipSink = Okio.buffer(new GzipSink(sink));
+        delegate.writeTo(gzipSink);
+        //写入gzip的trailer，同时关闭sink，okhttp写完请求体后也会关闭
+        gzipSink.close();
+    }
+}
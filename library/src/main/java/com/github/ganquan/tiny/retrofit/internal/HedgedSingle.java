@@ -0,0 +1,130 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.github.ganquan.tiny.retrofit.HedgePolicy;
+
+import io.reactivex.Scheduler;
+import io.reactivex.Single;
+import io.reactivex.SingleObserver;
+import io.reactivex.SingleSource;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+
+/**
+ * 对冲请求：先订阅一次source，延迟后再订阅一次，先成功的结果胜出并dispose另一次(取消其Call)
+ *
+ * @author GanQuan
+ * @see HedgePolicy
+ */
+public final class HedgedSingle<T> extends Single<T> {
+    private final SingleSource<T> source;
+    private final HedgePolicy policy;
+    private final Scheduler scheduler;
+
+    public HedgedSingle(SingleSource<T> source, HedgePolicy policy, Scheduler scheduler) {
+        this.source = source;
+        this.policy = policy;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    protected void subscribeActual(SingleObserver<? super T> observer) {
+        final Coordinator<T> coordinator = new Coordinator<>(observer, source, policy);
+        observer.onSubscribe(coordinator);
+        // 阻塞执行时第一次订阅会阻塞到请求结束，需要先安排第二次请求
+        coordinator.set.add(scheduler.scheduleDirect(new Runnable() {
+            @Override
+            public void run() {
+                coordinator.hedge();
+            }
+        }, policy.delayNanos(), TimeUnit.NANOSECONDS));
+        coordinator.attempt();
+    }
+
+    static final class Coordinator<T> extends AtomicBoolean implements Disposable {
+        private static final long serialVersionUID = 4207236519838357519L;
+        final SingleObserver<? super T> downstream;
+        final SingleSource<T> source;
+        final HedgePolicy policy;
+        final CompositeDisposable set = new CompositeDisposable();
+        /**
+         * 已发出和已失败的请求数，guarded by this
+         */
+        int started = 1;
+        int failed;
+
+        Coordinator(SingleObserver<? super T> downstream, SingleSource<T> source, HedgePolicy policy) {
+            this.downstream = downstream;
+            this.source = source;
+            this.policy = policy;
+        }
+
+        /**
+         * 发出第二次请求，已经发出过或者已经结束时忽略
+         */
+        void hedge() {
+            synchronized (this) {
+                if (get() || started > 1) {
+                    return;
+                }
+                started++;
+            }
+            attempt();
+        }
+
+        void attempt() {
+            final long start = System.nanoTime();
+            source.subscribe(new SingleObserver<T>() {
+                @Override
+                public void onSubscribe(Disposable d) {
+                    set.add(d);
+                }
+
+                @Override
+                public void onSuccess(T value) {
+                    if (compareAndSet(false, true)) {
+                        policy.record(System.nanoTime() - start);
+                        set.dispose();
+                        downstream.onSuccess(value);
+                    }
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    onAttemptError(e);
+                }
+            });
+        }
+
+        void onAttemptError(Throwable e) {
+            boolean hedgeNow;
+            synchronized (this) {
+                failed++;
+                hedgeNow = started == 1;
+                if (!hedgeNow && failed < started) {
+                    return;
+                }
+            }
+            if (hedgeNow) {
+                hedge();
+            } else if (compareAndSet(false, true)) {
+                set.dispose();
+                downstream.onError(e);
+            }
+        }
+
+        @Override
+        public void dispose() {
+            if (compareAndSet(false, true)) {
+                set.dispose();
+            }
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return get();
+        }
+    }
+}
@@ -1,21 +1,28 @@
 package com.github.ganquan.tiny.retrofit.internal;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.lang.reflect.Type;
-import java.util.List;
 
+import com.github.ganquan.tiny.retrofit.CircuitBreaker;
+import com.github.ganquan.tiny.retrofit.ConcurrencyLimiter;
+import com.github.ganquan.tiny.retrofit.Converter;
 import com.github.ganquan.tiny.retrofit.HttpClient;
 import com.github.ganquan.tiny.retrofit.JtApiException;
-import com.google.gson.Gson;
-import com.google.gson.internal.$Gson$Types;
+import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.MetricsListener;
+import com.github.ganquan.tiny.retrofit.ResponseCache;
+import com.github.ganquan.tiny.retrofit.RevalidationCache;
 import com.google.gson.reflect.TypeToken;
 
-import android.text.TextUtils;
 import android.util.Log;
 import io.reactivex.Observable;
 import io.reactivex.Observer;
 import io.reactivex.disposables.Disposable;
+import io.reactivex.schedulers.Schedulers;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
@@ -25,27 +32,55 @@ import okhttp3.ResponseBody;
  */
 
 public class NetWorkObservable<T> extends Observable<T> {
-    private static Gson gson = new Gson();
-    private Request jtRequest;
-    private Type mType;
+    private static final int HTTP_NOT_MODIFIED = 304;
 
-    private NetWorkObservable(TypeToken<T> typeToken, Request request) {
-        mType = typeToken.getType();
-        this.jtRequest = request;
-    }
+    private Request jtRequest;
+    private Converter<T> converter;
+    /**
+     * 创建时确定执行方式，见{@link JtRetrofit#setAsyncExecution(boolean)}
+     */
+    private final boolean async;
+    /**
+     * 请求不需要缓存或者未设置缓存时为null
+     */
+    private final ResponseCache cache;
+    private final String cacheKey;
+    /**
+     * 下载请求的目标文件，响应体直接写入文件，不经过converter
+     */
+    private final File downloadTarget;
+    /**
+     * converter的结果持有响应体(见{@link Converter.ElementReader})，成功时不关闭response
+     */
+    private final boolean streaming;
+    /**
+     * GET请求的条件请求缓存，其他请求或者未设置时为null
+     */
+    private final RevalidationCache revalidation;
+    private final String revalidationKey;
 
-    private NetWorkObservable(Class<?> typeToken, Request request, boolean array) {
-        if (array) {
-            mType = $Gson$Types.newParameterizedTypeWithOwner(null, List.class, typeToken);
-        } else {
-            mType = typeToken;
-        }
-        this.jtRequest = request;
+    private NetWorkObservable(Converter<T> converter, Request request) {
+        this(converter, request, false, true);
     }
 
-    private NetWorkObservable(Type typeToken, Request request) {
-        mType = typeToken;
+    /**
+     * @param sharedConverter converter是否在多次请求间复用(例如api方法的converter)；
+     *                        {@link RevalidationCache}按converter区分条目，每次重新查找的converter无法命中，不使用条件请求
+     */
+    private NetWorkObservable(Converter<T> converter, Request request, boolean streaming, boolean sharedConverter) {
+        this.downloadTarget = request.getDownloadTarget();
+        this.converter = downloadTarget != null
+                ? converter : Preconditions.checkNotNull(converter, "converter is null");
         this.jtRequest = request;
+        this.streaming = streaming;
+        //流式响应在订阅线程上读取，不使用dispatcher的线程
+        this.async = !streaming && JtRetrofit.isAsyncExecution();
+        this.cache = request.isCacheable() && downloadTarget == null && !streaming
+                ? JtRetrofit.getResponseCache() : null;
+        this.cacheKey = cache != null ? request.cacheKey(cache.excludedParams()) : null;
+        this.revalidation = request.isGet() && sharedConverter && downloadTarget == null && !streaming
+                ? JtRetrofit.getRevalidationCache() : null;
+        this.revalidationKey = revalidation != null ? request.cacheKey(revalidation.excludedParams()) : null;
     }
 
     /**
@@ -58,70 +93,347 @@ public class NetWorkObservable<T> extends Observable<T> {
      * @return
      */
     public static <T> NetWorkObservable<T> create(TypeToken<T> typeToken, Request jtRequest) {
-        return new NetWorkObservable<>(typeToken, jtRequest);
+        return new NetWorkObservable<>(JtRetrofit.<T>responseBodyConverter(typeToken.getType(), null),
+                jtRequest, false, false);
 
     }
 
     public static <T> NetWorkObservable<T> create(Class<T> typeToken, Request jtRequest) {
-        return new NetWorkObservable<>(typeToken, jtRequest, false);
+        return new NetWorkObservable<>(JtRetrofit.<T>responseBodyConverter(typeToken, null), jtRequest,
+                false, false);
 
     }
 
     public static NetWorkObservable<?> create(Type typeToken, Request jtRequest) {
-        return new NetWorkObservable<>(typeToken, jtRequest);
+        return new NetWorkObservable<>(JtRetrofit.responseBodyConverter(typeToken, null), jtRequest,
+                false, false);
+
+    }
+
+    /**
+     * 使用预先确定的converter创建，避免每次请求重新查找
+     *
+     * @param converter
+     * @param jtRequest
+     * @param <T>
+     *
+     * @return
+     */
+    public static <T> NetWorkObservable<T> create(Converter<T> converter, Request jtRequest) {
+        return new NetWorkObservable<>(converter, jtRequest);
+
+    }
+
+    /**
+     * 创建下载请求，见{@link Request.Builder#downloadTo(File)}
+     *
+     * @param jtRequest
+     *
+     * @return
+     */
+    static NetWorkObservable<File> download(Request jtRequest) {
+        return new NetWorkObservable<>(null, jtRequest);
 
     }
 
+    /**
+     * 创建流式请求，converter返回的{@link Converter.ElementReader}持有响应体，由调用方关闭
+     *
+     * @param converter
+     * @param jtRequest
+     * @param <T>
+     *
+     * @return
+     */
+    static <T> NetWorkObservable<Converter.ElementReader<T>> streaming(
+            Converter<Converter.ElementReader<T>> converter, Request jtRequest) {
+        return new NetWorkObservable<>(converter, jtRequest, true, true);
+
+    }
+
+    Request getRequest() {
+        return jtRequest;
+    }
+
+    /**
+     * 是否通过Call.enqueue异步执行，异步执行时不需要再subscribeOn到io线程
+     *
+     * @return
+     */
+    public boolean isAsync() {
+        return async;
+    }
+
     @Override
-    protected void subscribeActual(Observer<? super T> observer) {
-        final Call call = HttpClient.getHttpClient().newCall(jtRequest.buildRequest());
-        observer.onSubscribe(new InnerDisposable(call));
+    protected void subscribeActual(final Observer<? super T> observer) {
+        final InnerDisposable disposable = new InnerDisposable();
+        observer.onSubscribe(disposable);
+        if (cache != null && async && cache.hasDiskTier()) {
+            //异步执行时没有切换到io线程，读磁盘缓存交给dispatcher的线程池
+            HttpClient.getHttpClient().dispatcher().executorService().execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (!disposable.isDisposed() && !deliverCached(observer)) {
+                        execute(observer, disposable);
+                    }
+                }
+            });
+            return;
+        }
+        if (cache != null && deliverCached(observer)) {
+            return;
+        }
+        execute(observer, disposable);
+    }
+
+    /**
+     * 有未过期的缓存时直接分发，不再发起请求
+     *
+     * @return 是否命中
+     */
+    private boolean deliverCached(Observer<? super T> observer) {
+        T cached = cache.get(cacheKey, jtRequest.getCacheResponseType(), converter);
+        if (cached == null) {
+            return false;
+        }
+        observer.onNext(cached);
+        observer.onComplete();
+        return true;
+    }
+
+    private void execute(final Observer<? super T> observer, final InnerDisposable disposable) {
+        okhttp3.Request okRequest = jtRequest.buildRequest();
+        String host = okRequest.url().host();
+        MetricsListener listener = JtRetrofit.getMetricsListener();
+        String method = jtRequest.getMethodKey() != null ? jtRequest.getMethodKey() : host;
+        final CallMetrics metrics = listener != null ? new CallMetrics(listener, method) : null;
+        if (metrics != null) {
+            okRequest = okRequest.newBuilder().tag(metrics).build();
+        }
+        final RevalidationCache.Entry stale =
+                revalidation != null ? revalidation.get(revalidationKey, converter) : null;
+        if (stale != null) {
+            okRequest = conditional(okRequest, stale);
+        }
+        final okhttp3.Request request = okRequest;
+
+        final CircuitBreaker breaker = JtRetrofit.getCircuitBreaker(host, jtRequest.getMethodKey());
+        if (breaker != null && !breaker.tryAcquire()) {
+            if (listener != null) {
+                listener.onCompleted(method, 0, 0, MetricsListener.ErrorClass.CIRCUIT_OPEN);
+            }
+            observer.onError(new JtApiException(JtApiException.CODE_CIRCUIT_OPEN,
+                    "circuit breaker is open: " + host));
+            return;
+        }
+        final ConcurrencyLimiter limiter = JtRetrofit.getConcurrencyLimiter(host);
+        if (limiter == null || limiter.tryAcquire()) {
+            send(request, observer, disposable, new Attempt(breaker, limiter, metrics), stale);
+            return;
+        }
+        boolean queued = limiter.enqueue(new Runnable() {
+            @Override
+            public void run() {
+                final Attempt attempt = new Attempt(breaker, limiter, metrics);
+                if (disposable.isDisposed()) {
+                    attempt.ignore();
+                } else if (async) {
+                    send(request, observer, disposable, attempt, stale);
+                } else {
+                    //在归还名额的线程上执行，不能阻塞
+                    Schedulers.io().scheduleDirect(new Runnable() {
+                        @Override
+                        public void run() {
+                            send(request, observer, disposable, attempt, stale);
+                        }
+                    });
+                }
+            }
+        });
+        if (!queued) {
+            new Attempt(breaker, null, null).ignore();
+            if (listener != null) {
+                listener.onCompleted(method, 0, 0, MetricsListener.ErrorClass.LIMIT_EXCEEDED);
+            }
+            observer.onError(new JtApiException(JtApiException.CODE_LIMIT_EXCEEDED,
+                    "concurrency limit exceeded: " + host));
+        }
+    }
+
+    /**
+     * 带上保存的验证信息，服务端没有变化时返回304
+     */
+    private static okhttp3.Request conditional(okhttp3.Request request, RevalidationCache.Entry stale) {
+        okhttp3.Request.Builder builder = request.newBuilder();
+        if (stale.getEtag() != null) {
+            builder.header("If-None-Match", stale.getEtag());
+        }
+        if (stale.getLastModified() != null) {
+            builder.header("If-Modified-Since", stale.getLastModified());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @param stale 发送了条件请求时对应的保存条目，否则为null
+     */
+    private void send(okhttp3.Request request, final Observer<? super T> observer,
+                      InnerDisposable disposable, final Attempt attempt,
+                      final RevalidationCache.Entry stale) {
+        attempt.sent();
+        final Call call = HttpClient.getHttpClient().newCall(request);
+        disposable.setCall(call);
+        if (async) {
+            call.enqueue(new Callback() {
+                @Override
+                public void onFailure(Call call, IOException e) {
+                    //取消时下游已经dispose，不再回调
+                    if (!call.isCanceled()) {
+                        attempt.record(e);
+                        attempt.finish(errorClass(e));
+                        observer.onError(e);
+                    } else {
+                        attempt.ignore();
+                    }
+                }
+
+                @Override
+                public void onResponse(Call call, Response response) {
+                    handleResponse(response, observer, call, attempt, stale);
+                }
+            });
+            return;
+        }
+        Response response;
         try {
-            if (!call.isCanceled()) {
-                handleResponse(call.execute(), observer, call);
+            if (call.isCanceled()) {
+                attempt.ignore();
+                return;
             }
+            response = call.execute();
         } catch (IOException e) {
+            if (call.isCanceled()) {
+                attempt.ignore();
+            } else {
+                attempt.record(e);
+                attempt.finish(errorClass(e));
+            }
             observer.onError(e);
+            return;
         } catch (Exception e) {
+            attempt.ignore();
             observer.onError(e);
+            return;
+        }
+        handleResponse(response, observer, call, attempt, stale);
+
+    }
+
+    private static MetricsListener.ErrorClass errorClass(IOException e) {
+        return e instanceof InterruptedIOException
+                ? MetricsListener.ErrorClass.TIMEOUT : MetricsListener.ErrorClass.IO;
+    }
+
+    /**
+     * 一次请求占用的熔断器和并发限制名额，请求结束时归还一次；开启统计时还负责回调指标
+     */
+    private static final class Attempt {
+        final CircuitBreaker breaker;
+        final ConcurrencyLimiter limiter;
+        CallMetrics metrics;
+        long start;
+
+        Attempt(CircuitBreaker breaker, ConcurrencyLimiter limiter, CallMetrics metrics) {
+            this.breaker = breaker;
+            this.limiter = limiter;
+            this.metrics = metrics;
+        }
+
+        void sent() {
+            start = System.nanoTime();
+            if (metrics != null) {
+                metrics.sent();
+            }
+        }
+
+        /**
+         * 回调指标，只有第一次调用生效
+         *
+         * @param error 成功时为null
+         */
+        void finish(MetricsListener.ErrorClass error) {
+            CallMetrics metrics = this.metrics;
+            if (metrics != null) {
+                this.metrics = null;
+                metrics.report(error);
+            }
+        }
+
+        /**
+         * @param error 成功时为null
+         */
+        void record(Throwable error) {
+            long rtt = System.nanoTime() - start;
+            if (breaker != null) {
+                breaker.onResult(rtt, error);
+            }
+            if (limiter != null) {
+                limiter.onSample(rtt, error instanceof IOException);
+            }
         }
 
+        void ignore() {
+            if (breaker != null) {
+                breaker.onIgnored();
+            }
+            if (limiter != null) {
+                limiter.release();
+            }
+        }
     }
 
     /**
-     * 用于处理取消的事件
+     * 用于处理取消的事件，订阅时call可能还没有创建(先查缓存)，创建后再绑定
      */
     private static class InnerDisposable implements Disposable {
-        Call call;
+        volatile Call call;
+        volatile boolean disposed;
 
-        InnerDisposable(Call call) {
+        void setCall(Call call) {
             this.call = call;
+            if (disposed) {
+                call.cancel();
+            }
         }
 
         @Override
         public void dispose() {
             Log.d("NetWorkObservable", "InnerDisposable#dispose()");
-
+            disposed = true;
+            Call call = this.call;
             if (call != null) {//rxlife回调时清理
                 call.cancel();
-                call = null;
                 Log.d("NetWorkObservable", "call#cancel()");
             }
         }
 
         @Override
         public boolean isDisposed() {
-            return call == null || call.isCanceled();
+            Call call = this.call;
+            return disposed || (call != null && call.isCanceled());
         }
     }
 
-    private void handleResponse(Response response, Observer<? super T> observer, Call call) {
+    private void handleResponse(Response response, Observer<? super T> observer, Call call,
+                                Attempt attempt, RevalidationCache.Entry stale) {
         try {
             if (response == null) {
+                attempt.ignore();
                 observer.onError(new JtApiException(-1, "HTTP Response is null"));
                 return;
             }
             if (call.isCanceled()) {
+                attempt.ignore();
                 observer.onError(new JtApiException(-1, "Request is canceled"));
                 if (response.body() != null) {
                     response.close();
@@ -129,30 +441,67 @@ public class NetWorkObservable<T> extends Observable<T> {
                 return;
             }
 
-            if (!response.isSuccessful()) {
-                observer.onError(new JtApiException(-1, response.message()));
+            if (stale != null && response.code() == HTTP_NOT_MODIFIED) {
+                attempt.record(null);
+                attempt.finish(null);
+                revalidate(stale, observer);
+                return;
+            }
+            if (!response.isSuccessful() && !(downloadTarget != null
+                    && response.code() == FileDownload.HTTP_RANGE_NOT_SATISFIABLE)) {
+                JtApiException error = new JtApiException(-1, response.message());
+                error.httpCode = response.code();
+                attempt.record(error);
+                attempt.finish(response.code() >= 500
+                        ? MetricsListener.ErrorClass.SERVER_ERROR : MetricsListener.ErrorClass.CLIENT_ERROR);
+                observer.onError(error);
                 if (response.body() != null) {
                     response.close();
                 }
                 return;
             }
+            //只统计到收到响应头为止，解析错误不算后端故障
+            attempt.record(null);
 
             ResponseBody responseBody = response.body();
+            if (downloadTarget != null) {
+                download(response, responseBody, observer, attempt);
+                return;
+            }
 
             if (responseBody != null) {
-                String data = responseBody.string();
-                if (TextUtils.isEmpty(data)) {
+                if (attempt.metrics != null) {
+                    responseBody = attempt.metrics.timed(responseBody);
+                }
+                //exhausted()最多只预读一个segment，不会把整个body读入内存
+                if (responseBody.source().exhausted()) {
+                    attempt.finish(MetricsListener.ErrorClass.DECODE);
                     observer.onError(new JtApiException(-1, response.message()));
                     if (response.body() != null) {
                         response.close();
                     }
                     return;
                 }
-                T result = gson.fromJson(data, mType);
+                if (attempt.metrics != null) {
+                    attempt.metrics.decodeStart();
+                }
+                T result = convert(responseBody);
+                if (revalidation != null) {
+                    revalidation.put(revalidationKey, converter, response.header("ETag"),
+                            response.header("Last-Modified"), result);
+                }
+                if (streaming) {
+                    //交给ElementReader，读完或者取消时关闭；统计只到定位到数组为止
+                    response = null;
+                }
+                attempt.finish(null);
                 observer.onNext(result);
+                observer.onComplete();
 
             }
         } catch (Exception e) {
+            attempt.finish(e instanceof IOException
+                    ? errorClass((IOException) e) : MetricsListener.ErrorClass.DECODE);
             observer.onError(new JtApiException(-1, e.toString()));
         } finally {
             if (response != null) {
@@ -162,4 +511,62 @@ public class NetWorkObservable<T> extends Observable<T> {
 
     }
 
+    /**
+     * 304：直接返回保存的对象，有{@link com.github.ganquan.tiny.retrofit.annotate.Cacheable}时同时刷新内存缓存
+     */
+    @SuppressWarnings("unchecked")
+    private void revalidate(RevalidationCache.Entry stale, Observer<? super T> observer) {
+        T value = (T) stale.getValue();
+        revalidation.onRevalidated();
+        if (cache != null) {
+            cache.put(cacheKey, jtRequest.getCacheResponseType(), value, null, jtRequest.getCacheTtlMillis());
+        }
+        observer.onNext(value);
+        observer.onComplete();
+    }
+
+    /**
+     * 流式写入文件；IOException原样抛给下游，{@link com.github.ganquan.tiny.retrofit.RetryPolicy}重试时从已下载的位置续传
+     */
+    @SuppressWarnings("unchecked")
+    private void download(Response response, ResponseBody responseBody, Observer<? super T> observer,
+                          Attempt attempt) {
+        File file;
+        try {
+            if (attempt.metrics != null) {
+                responseBody = attempt.metrics.timed(responseBody);
+            }
+            file = FileDownload.save(response, responseBody, downloadTarget);
+        } catch (IOException e) {
+            attempt.finish(errorClass(e));
+            observer.onError(e);
+            return;
+        }
+        attempt.finish(null);
+        observer.onNext((T) file);
+        observer.onComplete();
+    }
+
+    /**
+     * 需要缓存时保存解析结果，有磁盘层时还需要保留原始字节
+     */
+    private T convert(ResponseBody responseBody) throws IOException {
+        if (cache == null) {
+            return converter.convert(responseBody);
+        }
+        byte[] raw = null;
+        T result;
+        if (cache.hasDiskTier()) {
+            raw = responseBody.bytes();
+            result = converter.convert(ResponseBody.create(responseBody.contentType(), raw));
+        } else {
+            result = converter.convert(responseBody);
+        }
+        if (result != null) {
+            cache.put(cacheKey, jtRequest.getCacheResponseType(), result, raw,
+                    jtRequest.getCacheTtlMillis());
+        }
+        return result;
+    }
+
 }
@@ -0,0 +1,37 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import com.github.ganquan.tiny.retrofit.RequestSigner;
+
+/**
+ * 参数按名字排序，用于签名和缓存key
+ *
+ * @author GanQuan
+ */
+public final class ParamOrder {
+
+    /**
+     * 按参数名排序的下标写入order，参数名相同时保持原来的顺序
+     *
+     * @param params
+     * @param order  长度不小于params.size()
+     *
+     * @return order
+     */
+    public static int[] sort(RequestSigner.Params params, int[] order) {
+        for (int i = 0, size = params.size(); i < size; i++) {
+            String name = params.name(i);
+            int j = i;
+            //参数个数很少，插入排序即可，并且是稳定的
+            while (j > 0 && params.name(order[j - 1]).compareTo(name) > 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = i;
+        }
+        return order;
+    }
+
+    private ParamOrder() {
+        throw new AssertionError("No instances.");
+    }
+}
@@ -1,20 +1,42 @@
 package com.github.ganquan.tiny.retrofit.internal;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
-import com.github.ganquan.tiny.retrofit.IHttpInterceptor;
+import com.github.ganquan.tiny.retrofit.CommonParams;
+import com.github.ganquan.tiny.retrofit.Converter;
+import com.github.ganquan.tiny.retrofit.HedgePolicy;
+import com.github.ganquan.tiny.retrofit.JtApiException;
 import com.github.ganquan.tiny.retrofit.JtRetrofit;
+import com.github.ganquan.tiny.retrofit.RequestSigner;
+import com.github.ganquan.tiny.retrofit.ResponseCache;
+import com.github.ganquan.tiny.retrofit.RetryPolicy;
+import com.github.ganquan.tiny.retrofit.RevalidationCache;
+import com.github.ganquan.tiny.retrofit.ThreadingPolicy;
 import com.google.gson.reflect.TypeToken;
 
+import org.reactivestreams.Publisher;
+
+import io.reactivex.Emitter;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
-import io.reactivex.SingleSource;
-import io.reactivex.SingleTransformer;
-import io.reactivex.android.schedulers.AndroidSchedulers;
-import io.reactivex.schedulers.Schedulers;
-import okhttp3.FormBody;
+import io.reactivex.functions.BiConsumer;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
 import okhttp3.RequestBody;
@@ -29,10 +51,69 @@ public class Request {
      */
     public static class Builder {
 
-        private Map<String, String> formEncodeParams = new HashMap<>();
-        private Map<String, File> formDataPartParams = new HashMap<>();
+        private FormParams formParams;
+        /**
+         * 没有multipart数据时为null
+         */
+        private Map<String, File> formDataPartParams;
+        private List<MultipartBody.Part> parts;
+        /**
+         * 为true时build()直接把formParams交给Request，不再复制
+         */
+        private final boolean oneShot;
+        private boolean built;
 
         private String url;
+        private String method = "POST";
+        /**
+         * 没有查询参数和请求头时为null
+         */
+        private FormParams queryParams;
+        private Headers.Builder headers;
+        private Type cacheResponseType;
+        private long cacheTtlMillis;
+        private Set<String> cacheExcludedParams = Collections.emptySet();
+        private Type coalesceResponseType;
+        private Set<String> coalesceExcludedParams = Collections.emptySet();
+        private RetryPolicy retryPolicy;
+        private HedgePolicy hedgePolicy;
+        private String methodKey;
+        private File downloadTarget;
+        private boolean compressed;
+
+        public Builder() {
+            this.formParams = new FormParams();
+            this.oneShot = false;
+        }
+
+        /**
+         * 按参数个数预先分配的一次性builder：build()时Request直接使用已添加的表单参数，不再复制，
+         * 之后不能再修改或者build
+         *
+         * @param fieldCount 预计添加的表单参数个数，例如api方法的@Field参数个数
+         */
+        public Builder(int fieldCount) {
+            if (fieldCount < 0) {
+                throw new IllegalArgumentException("fieldCount < 0: " + fieldCount);
+            }
+            //预留公共参数和签名的位置
+            this.formParams = new FormParams(fieldCount + CommonParams.snapshot().getParams().size() + 4);
+            this.oneShot = true;
+        }
+
+        /**
+         * {@link #Builder(int)}创建的builder在build()之后不能再使用，Request已经共用了它的表单参数
+         */
+        private void checkNotBuilt() {
+            if (built) {
+                throw new IllegalStateException("Builder(int) can not be used after build()");
+            }
+        }
+
+        private FormParams formParams() {
+            checkNotBuilt();
+            return formParams;
+        }
 
         /**
          * set url for Builder
@@ -42,6 +123,7 @@ public class Request {
          * @return
          */
         public Builder url(String url) {
+            checkNotBuilt();
             this.url = url;
             return this;
         }
@@ -56,7 +138,7 @@ public class Request {
         }
 
         /**
-         * add form-params for Builder
+         * add form-params for Builder，替换已有的同名参数，value为null时删除
          *
          * @param key
          * @param value
@@ -64,12 +146,21 @@ public class Request {
          * @return
          */
         public Builder addFormParams(String key, String value) {
-            this.formEncodeParams.put(key, value);
+            formParams().set(key, value);
             return this;
         }
 
         /**
-         * add form-params for Builder
+         * 已添加的表单参数
+         *
+         * @return
+         */
+        Map<String, String> getFormParams() {
+            return formParams().asMap();
+        }
+
+        /**
+         * add form-params for Builder，替换已有的同名参数
          *
          * @param map
          *
@@ -77,7 +168,111 @@ public class Request {
          */
         public Builder addFormParams(Map<String, String> map) {
             if (map != null) {
-                this.formEncodeParams.putAll(map);
+                FormParams params = formParams();
+                for (Map.Entry<String, String> entry : map.entrySet()) {
+                    params.set(entry.getKey(), entry.getValue());
+                }
+            }
+            return this;
+        }
+
+        /**
+         * 按{@link com.github.ganquan.tiny.retrofit.annotate.Field}的规则追加参数：值通过{@link String#valueOf(Object)}转换，
+         * null忽略，List和数组的每个非null元素各生成一对参数；同名参数不会被替换，按添加顺序发送
+         *
+         * @param name
+         * @param value
+         *
+         * @return
+         */
+        public Builder addField(String name, Object value) {
+            addValues(formParams(), name, value);
+            return this;
+        }
+
+        private static void addValues(FormParams params, String name, Object value) {
+            if (value == null) {
+                return;
+            }
+            if (value instanceof Iterable) {
+                for (Object item : (Iterable<?>) value) {
+                    if (item != null) {
+                        params.add(name, String.valueOf(item));
+                    }
+                }
+            } else if (value.getClass().isArray()) {
+                for (int i = 0, length = Array.getLength(value); i < length; i++) {
+                    Object item = Array.get(value, i);
+                    if (item != null) {
+                        params.add(name, String.valueOf(item));
+                    }
+                }
+            } else {
+                params.add(name, String.valueOf(value));
+            }
+        }
+
+        /**
+         * 使用GET发送请求，见{@link com.github.ganquan.tiny.retrofit.annotate.GET}；
+         * 表单参数(包括公共参数和签名)追加到url的查询参数中，不能有multipart的part
+         *
+         * @return
+         */
+        public Builder get() {
+            checkNotBuilt();
+            this.method = "GET";
+            return this;
+        }
+
+        /**
+         * 按{@link com.github.ganquan.tiny.retrofit.annotate.Query}的规则追加url的查询参数
+         *
+         * @param name
+         * @param value
+         *
+         * @return
+         */
+        public Builder addQuery(String name, Object value) {
+            checkNotBuilt();
+            if (queryParams == null) {
+                queryParams = new FormParams(4);
+            }
+            addValues(queryParams, name, value);
+            return this;
+        }
+
+        /**
+         * 添加请求头，value为null时忽略，见{@link com.github.ganquan.tiny.retrofit.annotate.Header}
+         *
+         * @param name
+         * @param value
+         *
+         * @return
+         */
+        public Builder addHeader(String name, Object value) {
+            checkNotBuilt();
+            if (value != null) {
+                if (headers == null) {
+                    headers = new Headers.Builder();
+                }
+                headers.add(name, String.valueOf(value));
+            }
+            return this;
+        }
+
+        /**
+         * 按{@link com.github.ganquan.tiny.retrofit.annotate.FieldMap}的规则追加参数，每个entry按{@link #addField}处理
+         *
+         * @param map
+         *
+         * @return
+         */
+        public Builder addFieldMap(Map<String, ?> map) {
+            checkNotBuilt();
+            if (map != null) {
+                for (Map.Entry<String, ?> entry : map.entrySet()) {
+                    addField(entry.getKey(), entry.getValue());
+                }
             }
             return this;
         }
@@ -91,43 +286,173 @@ public class Request {
          * @return
          */
         public Builder addFormDataPart(String fileName, File file) {
+            checkNotBuilt();
+            if (formDataPartParams == null) {
+                formDataPartParams = new HashMap<>();
+            }
             this.formDataPartParams.put(fileName, file);
             return this;
         }
 
+        /**
+         * add form-data-part params for Builder，内容由body提供，例如文件的一部分
+         *
+         * @param name
+         * @param fileName
+         * @param body
+         *
+         * @return
+         */
+        public Builder addFormDataPart(String name, String fileName, RequestBody body) {
+            checkNotBuilt();
+            if (parts == null) {
+                parts = new ArrayList<>();
+            }
+            this.parts.add(MultipartBody.Part.createFormData(name, fileName, body));
+            return this;
+        }
+
+        /**
+         * 缓存响应，见{@link com.github.ganquan.tiny.retrofit.annotate.Cacheable}
+         *
+         * @param responseType   响应类型
+         * @param ttlMillis      有效期，单位毫秒
+         * @param excludedParams 不参与缓存key计算的表单参数名
+         *
+         * @return
+         */
+        public Builder cacheable(Type responseType, long ttlMillis, String... excludedParams) {
+            checkNotBuilt();
+            if (ttlMillis <= 0) {
+                throw new IllegalArgumentException("ttlMillis <= 0: " + ttlMillis);
+            }
+            this.cacheResponseType = Preconditions.checkNotNull(responseType, "responseType == null");
+            this.cacheTtlMillis = ttlMillis;
+            this.cacheExcludedParams = excludedParams.length == 0
+                    ? Collections.<String>emptySet()
+                    : new HashSet<>(Arrays.asList(excludedParams));
+            return this;
+        }
+
+        /**
+         * 合并相同的进行中请求，见{@link com.github.ganquan.tiny.retrofit.annotate.Coalesce}
+         *
+         * @param responseType   响应类型，只有响应类型也相同的请求才会合并
+         * @param excludedParams 不参与比较的表单参数名
+         *
+         * @return
+         */
+        public Builder coalesce(Type responseType, String... excludedParams) {
+            checkNotBuilt();
+            this.coalesceResponseType = Preconditions.checkNotNull(responseType, "responseType == null");
+            this.coalesceExcludedParams = excludedParams.length == 0
+                    ? Collections.<String>emptySet()
+                    : new HashSet<>(Arrays.asList(excludedParams));
+            return this;
+        }
+
+        /**
+         * 失败时按策略重试
+         *
+         * @param retryPolicy
+         *
+         * @return
+         */
+        public Builder retry(RetryPolicy retryPolicy) {
+            checkNotBuilt();
+            this.retryPolicy = retryPolicy;
+            return this;
+        }
+
+        /**
+         * 慢请求时发出对冲请求，见{@link HedgePolicy}
+         *
+         * @param hedgePolicy
+         *
+         * @return
+         */
+        public Builder hedge(HedgePolicy hedgePolicy) {
+            checkNotBuilt();
+            this.hedgePolicy = hedgePolicy;
+            return this;
+        }
+
+        /**
+         * api方法标识，用于按方法熔断和统计，见{@link com.github.ganquan.tiny.retrofit.CircuitBreaker}
+         * 和{@link com.github.ganquan.tiny.retrofit.MetricsListener}
+         *
+         * @param methodKey 接口名#方法名
+         *
+         * @return
+         */
+        public Builder methodKey(String methodKey) {
+            checkNotBuilt();
+            this.methodKey = methodKey;
+            return this;
+        }
+
+        /**
+         * 把响应体写入文件，需要通过{@link Request#download(ThreadingPolicy)}发起请求，
+         * 见{@link com.github.ganquan.tiny.retrofit.annotate.SaveTo}
+         *
+         * @param target 目标文件
+         *
+         * @return
+         */
+        public Builder downloadTo(File target) {
+            checkNotBuilt();
+            this.downloadTarget = Preconditions.checkNotNull(target, "target == null");
+            return this;
+        }
+
+        /**
+         * gzip压缩请求体，见{@link com.github.ganquan.tiny.retrofit.annotate.Compressed}
+         *
+         * @return
+         */
+        public Builder compressed() {
+            checkNotBuilt();
+            this.compressed = true;
+            return this;
+        }
+
         /**
          * 根据builder来构建本地Request
          *
          * @return 自定义Request
          */
         public Request build() {
+            checkNotBuilt();
             Preconditions.checkNotNull(url, "url is null");
-            return new Request(this);
+            Request request = new Request(this);
+            built = oneShot;
+            return request;
 
         }
     }
 
-    private final MediaType MEDIA_PNG = MediaType.parse("image/png");
-    private final MediaType MEDIA_JPEG = MediaType.parse("image/jpeg");
-    private final MediaType MEDIA_OCTET = MediaType.parse("application/octet-stream");
+    private static final MediaType MEDIA_PNG = MediaType.parse("image/png");
+    private static final MediaType MEDIA_JPEG = MediaType.parse("image/jpeg");
+    private static final MediaType MEDIA_OCTET = MediaType.parse("application/octet-stream");
 
     /**
-     * 获取xml-url-encode表单数据
+     * 获取xml-url-encode表单数据，重复的参数名在entrySet中出现多次
      *
      * @return
      */
     public Map<String, String> getFormEncodeParams() {
-        return formEncodeParams;
+        return formParams.asMap();
     }
 
     /**
-     * 用于提交xml-url-encode表单数据
+     * 用于提交xml-url-encode表单数据，按添加顺序编码
      */
-    private Map<String, String> formEncodeParams = new HashMap<>();
+    private final FormParams formParams;
     /**
-     * 用于提交multipart数据
+     * 用于提交multipart数据，没有时为null
      */
-    private Map<String, File> formDataPartParams = new HashMap<>();
+    private final Map<String, File> formDataPartParams;
+    private final List<MultipartBody.Part> parts;
 
     /**
      * 获取url
@@ -140,13 +465,52 @@ public class Request {
 
     private String url;
 
+    private final Type cacheResponseType;
+    private final long cacheTtlMillis;
+    private final Set<String> cacheExcludedParams;
+    private final Type coalesceResponseType;
+    private final Set<String> coalesceExcludedParams;
+    private final RetryPolicy retryPolicy;
+    private final HedgePolicy hedgePolicy;
+    private final String methodKey;
+    private final File downloadTarget;
+    private final boolean get;
+    private final boolean compressed;
+    private final FormParams queryParams;
+    private final Headers headers;
+    /**
+     * 签名写入header时的header名和签名
+     */
+    private String signatureHeader;
+    private String signature;
+
     private Request(Builder builder) {
         this.url = builder.url;
+        this.cacheResponseType = builder.cacheResponseType;
+        this.cacheTtlMillis = builder.cacheTtlMillis;
+        this.cacheExcludedParams = builder.cacheExcludedParams;
+        this.coalesceResponseType = builder.coalesceResponseType;
+        this.coalesceExcludedParams = builder.coalesceExcludedParams;
+        this.retryPolicy = builder.retryPolicy;
+        this.hedgePolicy = builder.hedgePolicy;
+        this.methodKey = builder.methodKey;
+        this.downloadTarget = builder.downloadTarget;
+        this.get = "GET".equals(builder.method);
+        this.compressed = builder.compressed;
+        if (get && compressed) {
+            throw new IllegalStateException("GET request has no body to compress: " + builder.url);
+        }
+        this.queryParams = builder.queryParams != null ? new FormParams(builder.queryParams) : null;
+        this.headers = builder.headers != null ? builder.headers.build() : null;
         this.formDataPartParams = builder.formDataPartParams;
-        if (builder.formEncodeParams != null) {
-            this.formEncodeParams.putAll(builder.formEncodeParams);
+        this.parts = builder.parts;
+        if (get && (formDataPartParams != null || parts != null)) {
+            throw new IllegalStateException("GET request can not have multipart parts: " + url);
         }
+        this.formParams = builder.oneShot ? builder.formParams
+                : new FormParams(builder.formParams, CommonParams.snapshot().getParams().size() + 4);
         generateCommonParams();
+        sign();
     }
 
     /**
@@ -159,16 +523,7 @@ public class Request {
      */
     @Deprecated
     public <T> Single<T> post(TypeToken<T> typeToken) {
-        return NetWorkObservable.create(typeToken, this)
-                .singleOrError()
-                .compose(new SingleTransformer<T, T>() {//线程转换
-                    @Override
-                    public SingleSource<T> apply(Single<T> upstream) {
-                        return upstream
-                                .subscribeOn(Schedulers.io())
-                                .observeOn(AndroidSchedulers.mainThread());
-                    }
-                });
+        return schedule(NetWorkObservable.create(typeToken, this), JtRetrofit.getThreadingPolicy());
 
     }
 
@@ -182,16 +537,7 @@ public class Request {
      */
 
     public <T> Single<T> post(Class<T> clazz) {
-        return NetWorkObservable.create(clazz, this)
-                .singleOrError()
-                .compose(new SingleTransformer<T, T>() {//线程转换
-                    @Override
-                    public SingleSource<T> apply(Single<T> upstream) {
-                        return upstream
-                                .subscribeOn(Schedulers.io())
-                                .observeOn(AndroidSchedulers.mainThread());
-                    }
-                });
+        return schedule(NetWorkObservable.create(clazz, this), JtRetrofit.getThreadingPolicy());
 
     }
 
@@ -204,29 +550,252 @@ public class Request {
      */
 
     public Single post(Type type) {
-        return NetWorkObservable.create(type, this)
-                .singleOrError()
-                .compose(new SingleTransformer<Object, Object>() {//线程转换
+        return schedule(NetWorkObservable.create(type, this), JtRetrofit.getThreadingPolicy());
+
+    }
+
+    /**
+     * post 数据并指定线程
+     *
+     * @param converter 响应体转换器
+     * @param <T>
+     *
+     * @return
+     */
+    public <T> Single<T> post(Converter<T> converter) {
+        return post(converter, JtRetrofit.getThreadingPolicy());
+
+    }
+
+    /**
+     * post 数据并按指定的线程策略切换线程
+     *
+     * @param converter       响应体转换器
+     * @param threadingPolicy 线程策略
+     * @param <T>
+     *
+     * @return
+     */
+    public <T> Single<T> post(Converter<T> converter, ThreadingPolicy threadingPolicy) {
+        return schedule(NetWorkObservable.create(converter, this), threadingPolicy);
+
+    }
+
+    /**
+     * 下载到{@link Builder#downloadTo(File)}指定的文件并按指定的线程策略切换线程
+     *
+     * @param threadingPolicy 线程策略
+     *
+     * @return 下载完成的文件
+     */
+    public Single<File> download(ThreadingPolicy threadingPolicy) {
+        Preconditions.checkNotNull(downloadTarget, "downloadTo(File) is not set");
+        return schedule(NetWorkObservable.download(this), threadingPolicy);
+
+    }
+
+    /**
+     * post 数据，从响应中的JSON数组边读边解析元素，按下游的请求量解析，
+     * 见{@link com.github.ganquan.tiny.retrofit.annotate.ArrayPath}
+     *
+     * @param converter       定位到数组的converter，见{@link JtRetrofit#elementReaderConverter}
+     * @param threadingPolicy 线程策略
+     * @param <T>
+     *
+     * @return 数组中的非null元素
+     */
+    public <T> Flowable<T> stream(Converter<Converter.ElementReader<T>> converter,
+                                  ThreadingPolicy threadingPolicy) {
+        NetWorkObservable<Converter.ElementReader<T>> observable =
+                NetWorkObservable.streaming(converter, this);
+        Single<Converter.ElementReader<T>> single = observable.singleOrError();
+        //只重试到收到响应为止，开始发出元素之后不再重试
+        if (retryPolicy != null) {
+            single = retryPolicy.apply(single, observable.isAsync());
+        }
+        //concatMap把下游的请求量原样交给elements，flatMapPublisher会预取128个
+        return threadingPolicy.apply(single.toFlowable().concatMap(
+                new Function<Converter.ElementReader<T>, Publisher<T>>() {
                     @Override
-                    public SingleSource<Object> apply(Single<Object> upstream) {
-                        return upstream
-                                .subscribeOn(Schedulers.io())
-                                .observeOn(AndroidSchedulers.mainThread());
+                    public Publisher<T> apply(Converter.ElementReader<T> reader) {
+                        return elements(reader);
                     }
-                });
+                }));
+    }
 
+    /**
+     * 每次request只解析需要的元素个数，读完、出错或者取消时关闭reader
+     */
+    private static <T> Flowable<T> elements(final Converter.ElementReader<T> reader) {
+        return Flowable.generate(new Callable<Converter.ElementReader<T>>() {
+            @Override
+            public Converter.ElementReader<T> call() {
+                return reader;
+            }
+        }, new BiConsumer<Converter.ElementReader<T>, Emitter<T>>() {
+            @Override
+            public void accept(Converter.ElementReader<T> reader, Emitter<T> emitter) {
+                try {
+                    while (reader.hasNext()) {
+                        T element = reader.next();
+                        if (element != null) {
+                            emitter.onNext(element);
+                            return;
+                        }
+                    }
+                    emitter.onComplete();
+                } catch (Exception e) {
+                    emitter.onError(new JtApiException(-1, e.toString()));
+                }
+            }
+        }, new Consumer<Converter.ElementReader<T>>() {
+            @Override
+            public void accept(Converter.ElementReader<T> reader) throws Exception {
+                reader.close();
+            }
+        });
     }
 
     /**
-     * 透参
+     * 线程转换：阻塞执行时在订阅线程(默认io线程)调用call.execute()，异步执行时由okhttp的dispatcher线程回调，
+     * 不再占用订阅线程；先按策略对冲和重试，需要合并的请求再共用同一个对冲、重试后的Single，
+     * 否则对冲时重新订阅会加入自己正在进行的请求，不会发出第二个请求
+     *
+     * @param observable
+     * @param threadingPolicy
+     * @param <T>
+     *
+     * @return
+     */
+    private static <T> Single<T> schedule(NetWorkObservable<T> observable,
+                                          ThreadingPolicy threadingPolicy) {
+        Request request = observable.getRequest();
+        Single<T> single = observable.singleOrError();
+        // 每次对冲或重试都会重新订阅，创建新的Call
+        if (request.hedgePolicy != null) {
+            single = request.hedgePolicy.apply(single, observable.isAsync());
+        }
+        if (request.retryPolicy != null) {
+            single = request.retryPolicy.apply(single, observable.isAsync());
+        }
+        if (request.coalesceResponseType != null) {
+            single = SingleFlight.share(request.coalesceKey(), single.toObservable(), observable.isAsync())
+                    .singleOrError();
+        }
+        return threadingPolicy.apply(single, observable.isAsync());
+    }
+
+    /**
+     * 透参：静态公共参数的快照加上普通拦截器添加的参数
      */
     private void generateCommonParams() {
-        if (JtRetrofit.httpInterceptors != null && !JtRetrofit.httpInterceptors.isEmpty()) {
-            for (IHttpInterceptor httpInterceptor : JtRetrofit.httpInterceptors) {
-                httpInterceptor.onHandleDataParams(formEncodeParams);
+        CommonParams.applyTo(formParams.asMap());
+    }
+
+    /**
+     * 对最终的表单参数签名，文件和multipart part不参与
+     */
+    private void sign() {
+        RequestSigner signer = JtRetrofit.getRequestSigner();
+        if (signer == null) {
+            return;
+        }
+        String signature = signer.sign(formParams);
+        if (signer.getHeaderName() != null) {
+            this.signatureHeader = signer.getHeaderName();
+            this.signature = signature;
+        } else {
+            formParams.set(signer.getParamName(), signature);
+        }
+    }
+
+    /**
+     * 是否需要缓存响应
+     *
+     * @return
+     */
+    boolean isCacheable() {
+        return cacheTtlMillis > 0;
+    }
+
+    Type getCacheResponseType() {
+        return cacheResponseType;
+    }
+
+    long getCacheTtlMillis() {
+        return cacheTtlMillis;
+    }
+
+    String getMethodKey() {
+        return methodKey;
+    }
+
+    File getDownloadTarget() {
+        return downloadTarget;
+    }
+
+    boolean isGet() {
+        return get;
+    }
+
+    /**
+     * 缓存key：url加上按参数名排序的表单参数，包括拦截器添加的公共参数，以及查询参数和请求头；GET请求以"GET "开头
+     *
+     * @param excludedParams 全局排除的参数名
+     *
+     * @return
+     */
+    String cacheKey(Set<String> excludedParams) {
+        StringBuilder key = new StringBuilder(get ? "GET " : "").append(url);
+        appendParams(key, formParams, excludedParams);
+        if (queryParams != null) {
+            key.append("\n?");
+            appendParams(key, queryParams, excludedParams);
+        }
+        if (headers != null) {
+            //names()按不区分大小写的顺序排列
+            key.append("\n@");
+            for (String name : headers.names()) {
+                String lowerCase = name.toLowerCase(Locale.US);
+                for (String value : headers.values(name)) {
+                    key.append('\n').append(lowerCase).append(": ").append(value);
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private void appendParams(StringBuilder key, FormParams params, Set<String> excludedParams) {
+        for (int i : params.sortedIndexes()) {
+            String name = params.name(i);
+            if (excludedParams.contains(name) || cacheExcludedParams.contains(name)) {
+                continue;
             }
+            key.append('\n').append(name).append('=').append(params.value(i));
         }
+    }
 
+    /**
+     * 合并请求的key：响应类型加上缓存key(包括{@link Builder#cacheable}排除的参数规则)，
+     * 另外排除{@link Builder#coalesce}声明的参数、缓存全局排除的参数和签名参数
+     *
+     * @return
+     */
+    String coalesceKey() {
+        Set<String> excluded = new HashSet<>(coalesceExcludedParams);
+        ResponseCache cache = JtRetrofit.getResponseCache();
+        if (cache != null) {
+            excluded.addAll(cache.excludedParams());
+        }
+        RevalidationCache revalidation = JtRetrofit.getRevalidationCache();
+        if (revalidation != null) {
+            excluded.addAll(revalidation.excludedParams());
+        }
+        RequestSigner signer = JtRetrofit.getRequestSigner();
+        if (signer != null && signer.getParamName() != null) {
+            excluded.add(signer.getParamName());
+        }
+        return coalesceResponseType.toString() + '\n' + cacheKey(excluded);
     }
 
     /**
@@ -235,25 +804,94 @@ public class Request {
      * @return
      */
     okhttp3.Request buildRequest() {
-        return new okhttp3.Request.Builder()
-                .url(url)
-                .post(generateRequestBody())
-                .build();
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder();
+        if (headers != null) {
+            builder.headers(headers);
+        }
+        if (get) {
+            builder.url(httpUrl()).get();
+        } else {
+            RequestBody body = generateRequestBody();
+            if (compressed && shouldCompress(body)) {
+                body = new GzipRequestBody(body);
+                builder.header("Content-Encoding", "gzip");
+            }
+            builder.url(httpUrl()).post(body);
+        }
+        if (signatureHeader != null) {
+            builder.header(signatureHeader, signature);
+        }
+        if (downloadTarget != null) {
+            //每次发出请求(包括重试)时按已下载的长度续传，If-Range保证续传的是同一个文件
+            String validator = FileDownload.validator(downloadTarget);
+            String range = validator != null ? FileDownload.rangeHeader(downloadTarget) : null;
+            if (range != null) {
+                builder.header("Range", range).header("If-Range", validator);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * 长度未知或者不小于{@link JtRetrofit#getCompressionThreshold()}时压缩
+     */
+    private static boolean shouldCompress(RequestBody body) {
+        long length;
+        try {
+            length = body.contentLength();
+        } catch (IOException e) {
+            length = -1;
+        }
+        return length < 0 || length >= JtRetrofit.getCompressionThreshold();
+    }
+
+    /**
+     * url加上查询参数，GET请求还包括表单参数
+     */
+    private HttpUrl httpUrl() {
+        HttpUrl parsed = HttpUrl.parse(url);
+        if (parsed == null) {
+            throw new IllegalArgumentException("unexpected url: " + url);
+        }
+        if (queryParams == null && (!get || formParams.size() == 0)) {
+            return parsed;
+        }
+        HttpUrl.Builder builder = parsed.newBuilder();
+        if (queryParams != null) {
+            for (int i = 0; i < queryParams.size(); i++) {
+                builder.addQueryParameter(queryParams.name(i), queryParams.value(i));
+            }
+        }
+        if (get) {
+            for (int i = 0; i < formParams.size(); i++) {
+                builder.addQueryParameter(formParams.name(i), formParams.value(i));
+            }
+        }
+        return builder.build();
     }
 
     private RequestBody generateRequestBody() {
-        //以下参数不会参与签名
-        if (formDataPartParams == null || formDataPartParams.size() <= 0) {
-            FormBody.Builder textBuilder = new FormBody.Builder();
-            return textBuilder.build();
+        //文件和part不参与签名
+        if (formDataPartParams == null && parts == null) {
+            return formParams.toRequestBody();
         } else {
             MultipartBody.Builder multipartBuilder = new MultipartBody.Builder();
             multipartBuilder.setType(MultipartBody.FORM);
-            for (String key : formDataPartParams.keySet()) {
-                File file = formDataPartParams.get(key);
-                MediaType type = getFileMediaType(file);
-                RequestBody fileBody = RequestBody.create(type, file);
-                multipartBuilder.addFormDataPart(key, file.getAbsolutePath(), fileBody);
+            for (int i = 0; i < formParams.size(); i++) {
+                multipartBuilder.addFormDataPart(formParams.name(i), formParams.value(i));
+            }
+            if (formDataPartParams != null) {
+                for (String key : formDataPartParams.keySet()) {
+                    File file = formDataPartParams.get(key);
+                    MediaType type = getFileMediaType(file);
+                    RequestBody fileBody = RequestBody.create(type, file);
+                    multipartBuilder.addFormDataPart(key, file.getAbsolutePath(), fileBody);
+                }
+            }
+            if (parts != null) {
+                for (MultipartBody.Part part : parts) {
+                    multipartBuilder.addPart(part);
+                }
             }
             return multipartBuilder.build();
         }
@@ -0,0 +1,74 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.Observable;
+import io.reactivex.ObservableSource;
+import io.reactivex.functions.Action;
+import io.reactivex.schedulers.Schedulers;
+
+/**
+ * 进行中请求的注册表，相同key的订阅共用一个上游
+ *
+ * @author GanQuan
+ */
+final class SingleFlight {
+    private static final ConcurrentMap<String, Observable<?>> flights = new ConcurrentHashMap<>();
+
+    private SingleFlight() {
+        throw new AssertionError("No instances.");
+    }
+
+    /**
+     * 订阅时如果已有相同key的请求在进行中则加入该请求，否则以source发起新请求
+     * <p>
+     * 上游通过replay(1).refCount()共享：引用计数归零时才dispose上游(取消Call)，
+     * 结束或取消时从注册表移除。阻塞执行的上游在独立的io线程上运行，
+     * 否则发起请求的订阅者dispose时会中断它所在的线程，导致其他订阅者也收到错误
+     *
+     * @param key
+     * @param source
+     * @param async  上游是否通过Call.enqueue异步执行
+     * @param <T>
+     *
+     * @return
+     */
+    static <T> Observable<T> share(final String key, final Observable<T> source, final boolean async) {
+        return Observable.defer(new Callable<ObservableSource<T>>() {
+            //key包括响应类型，同一个key注册的上游都是Observable<T>
+            @SuppressWarnings("unchecked")
+            @Override
+            public ObservableSource<T> call() throws Exception {
+                Observable<T> flight = (Observable<T>) flights.get(key);
+                if (flight != null) {
+                    return flight;
+                }
+                final AtomicReference<Observable<T>> self = new AtomicReference<>();
+                Observable<T> created = (async ? source : source.subscribeOn(Schedulers.io()))
+                        .doFinally(new Action() {
+                            @Override
+                            public void run() throws Exception {
+                                flights.remove(key, self.get());
+                            }
+                        })
+                        .replay(1)
+                        .refCount();
+                self.set(created);
+                Observable<T> existing = (Observable<T>) flights.putIfAbsent(key, created);
+                return existing != null ? existing : created;
+            }
+        });
+    }
+
+    /**
+     * 进行中的请求数
+     *
+     * @return
+     */
+    static int size() {
+        return flights.size();
+    }
+}
@@ -0,0 +1,223 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 预编译的{@code @Url}模板，解析一次后拆分为常量片段和{@code {name}}占位符，
+ * 每次请求时在一个预分配大小的StringBuilder中一次性展开所有{@code @Path}参数，并做path-segment编码
+ *
+ * @author GanQuan
+ */
+public final class UrlTemplate {
+    private static final char[] HEX_DIGITS =
+            {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'};
+
+    /**
+     * literals.length == names.length + 1，展开结果为literals[0] + names[0] + literals[1] ...
+     */
+    private final String[] literals;
+    private final String[] names;
+    private final int literalLength;
+
+    private UrlTemplate(String[] literals, String[] names) {
+        this.literals = literals;
+        this.names = names;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 解析url中的{@code {name}}占位符，name需符合{@code [a-zA-Z][a-zA-Z0-9_-]*}，其余花括号按普通字符处理
+     *
+     * @param url
+     *
+     * @return
+     */
+    public static UrlTemplate parse(String url) {
+        Preconditions.checkNotNull(url, "url is null");
+        List<String> literals = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int literalStart = 0;
+        int i = 0;
+        while (i < url.length()) {
+            int end = url.charAt(i) == '{' ? placeholderEnd(url, i) : -1;
+            if (end < 0) {
+                i++;
+                continue;
+            }
+            literals.add(url.substring(literalStart, i));
+            names.add(url.substring(i + 1, end));
+            i = end + 1;
+            literalStart = i;
+        }
+        literals.add(url.substring(literalStart));
+        return new UrlTemplate(literals.toArray(new String[literals.size()]),
+                names.toArray(new String[names.size()]));
+    }
+
+    /**
+     * @return 合法占位符的结束位置('}')，不是占位符时返回-1
+     */
+    private static int placeholderEnd(String url, int start) {
+        int i = start + 1;
+        if (i >= url.length() || !isLetter(url.charAt(i))) {
+            return -1;
+        }
+        for (i++; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '}') {
+                return i;
+            }
+            if (!isLetter(c) && !(c >= '0' && c <= '9') && c != '_' && c != '-') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * 占位符数量，同名占位符出现多次时分别计数
+     *
+     * @return
+     */
+    public int placeholderCount() {
+        return names.length;
+    }
+
+    /**
+     * 第index个占位符的名字
+     *
+     * @param index
+     *
+     * @return
+     */
+    public String placeholderName(int index) {
+        return names[index];
+    }
+
+    /**
+     * 展开url
+     *
+     * @param values  参数值，编码前会使用{@link String#valueOf(Object)}转换
+     * @param indexes 第i个占位符对应values中的下标，为null时按占位符顺序一一对应
+     *
+     * @return
+     */
+    public String expand(Object[] values, int[] indexes) {
+        if (names.length == 0) {
+            return literals[0];
+        }
+        String[] strings = new String[names.length];
+        int length = literalLength;
+        for (int i = 0; i < names.length; i++) {
+            Object value = values[indexes == null ? i : indexes[i]];
+            if (value == null) {
+                throw new IllegalArgumentException(
+                        "Path parameter \"" + names[i] + "\" value must not be null.");
+            }
+            String string = value.toString();
+            if (".".equals(string) || "..".equals(string)) {
+                throw new IllegalArgumentException(
+                        "@Path parameters shouldn't perform path traversal ('.' or '..'): "
+                                + names[i] + " is " + string);
+            }
+            strings[i] = string;
+            length += encodedLength(string);
+        }
+
+        StringBuilder url = new StringBuilder(length);
+        for (int i = 0; i < names.length; i++) {
+            url.append(literals[i]);
+            appendEncoded(url, strings[i]);
+        }
+        return url.append(literals[names.length]).toString();
+    }
+
+    /**
+     * 不需要编码的字符：unreserved和sub-delims以及':'、'@'，与okhttp的path segment编码规则一致
+     */
+    private static boolean isPathSegmentChar(int c) {
+        if (c < 0x21 || c >= 0x7f) {
+            return false;
+        }
+        switch (c) {
+            case '"':
+            case '<':
+            case '>':
+            case '^':
+            case '`':
+            case '{':
+            case '}':
+            case '|':
+            case '/':
+            case '\\':
+            case '?':
+            case '#':
+            case '%':
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    static int encodedLength(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            if (isPathSegmentChar(codePoint)) {
+                length++;
+            } else {
+                length += 3 * utf8Length(codePoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return length;
+    }
+
+    static void appendEncoded(StringBuilder out, String value) {
+        for (int i = 0; i < value.length(); ) {
+            int codePoint = value.codePointAt(i);
+            if (isPathSegmentChar(codePoint)) {
+                out.append((char) codePoint);
+            } else if (codePoint < 0x80) {
+                appendByte(out, codePoint);
+            } else if (codePoint < 0x800) {
+                appendByte(out, 0xc0 | (codePoint >> 6));
+                appendByte(out, 0x80 | (codePoint & 0x3f));
+            } else if (codePoint < 0x10000) {
+                appendByte(out, 0xe0 | (codePoint >> 12));
+                appendByte(out, 0x80 | ((codePoint >> 6) & 0x3f));
+                appendByte(out, 0x80 | (codePoint & 0x3f));
+            } else {
+                appendByte(out, 0xf0 | (codePoint >> 18));
+                appendByte(out, 0x80 | ((codePoint >> 12) & 0x3f));
+                appendByte(out, 0x80 | ((codePoint >> 6) & 0x3f));
+                appendByte(out, 0x80 | (codePoint & 0x3f));
+            }
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        } else if (codePoint < 0x800) {
+            return 2;
+        } else if (codePoint < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static void appendByte(StringBuilder out, int b) {
+        out.append('%').append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+    }
+}
@@ -0,0 +1,90 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import io.reactivex.observers.DisposableSingleObserver;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class AsyncExecutionTest {
+    private static final int CALLS = 200;
+
+    private final MockWebServer server = new MockWebServer();
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("\"ok\"").setHeadersDelay(20, TimeUnit.MILLISECONDS);
+            }
+        });
+        server.start();
+        JtRetrofit.setAsyncExecution(true);
+        JtRetrofit.setThreadingPolicy(ThreadingPolicy.BACKGROUND);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.setAsyncExecution(false);
+        JtRetrofit.setThreadingPolicy(ThreadingPolicy.DEFAULT);
+        server.shutdown();
+    }
+
+    private Single<String> call() {
+        return JtRetrofit.create().url(server.url("/async").toString()).build().post(String.class);
+    }
+
+    @Test
+    public void enqueuedCallsDoNotGrowThreadCount() throws Exception {
+        // 预热，让dispatcher和连接池创建好线程
+        assertEquals("ok", call().blockingGet());
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        int baseline = threads.getThreadCount();
+        final CountDownLatch done = new CountDownLatch(CALLS);
+        final AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < CALLS; i++) {
+            call().subscribe(new DisposableSingleObserver<String>() {
+                @Override
+                public void onSuccess(String value) {
+                    if ("ok".equals(value)) {
+                        succeeded.incrementAndGet();
+                    }
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(Throwable e) {
+                    done.countDown();
+                }
+            });
+        }
+
+        int peak = baseline;
+        while (!done.await(10, TimeUnit.MILLISECONDS)) {
+            peak = Math.max(peak, threads.getThreadCount());
+        }
+
+        assertEquals(CALLS, succeeded.get());
+        assertEquals(CALLS + 1, server.getRequestCount());
+        // 阻塞执行时每个请求占用一个io线程，这里只允许dispatcher和mock server的少量线程
+        int maxRequestsPerHost = HttpClient.getHttpClient().dispatcher().getMaxRequestsPerHost();
+        assertTrue("thread count grew from " + baseline + " to " + peak,
+                peak - baseline <= 2 * maxRequestsPerHost + 4);
+    }
+}
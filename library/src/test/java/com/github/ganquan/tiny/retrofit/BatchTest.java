@@ -0,0 +1,187 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Batch;
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.FieldMap;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import io.reactivex.Single;
+import io.reactivex.observers.TestObserver;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class BatchTest {
+    private final MockWebServer server = new MockWebServer();
+    private final Gson gson = new Gson();
+
+    interface Service {
+        @Batch(window = 100, maxSize = 10)
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://batch.test/items")
+        Single<Item> item(@Field("id") String id);
+
+        @Batch
+        @Url("http://batch.test/items")
+        Single<Item> items(@Field("id") List<String> ids);
+
+        @Batch
+        @Url("http://batch.test/items")
+        Single<Item> query(@FieldMap Map<String, ?> params);
+    }
+
+    static class Item {
+        String id;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        // 批量请求的url在注解中是常量，通过拦截器转发到mock server
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody(respond(request));
+            }
+        });
+        server.start();
+        final HttpUrl base = server.url("/");
+        HttpClient.setOkHttpClient(new OkHttpClient.Builder()
+                .addInterceptor(new Interceptor() {
+                    @Override
+                    public Response intercept(Chain chain) throws IOException {
+                        okhttp3.Request request = chain.request();
+                        return chain.proceed(request.newBuilder()
+                                .url(request.url().newBuilder()
+                                        .host(base.host())
+                                        .port(base.port())
+                                        .build())
+                                .build());
+                    }
+                })
+                .build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+    }
+
+    /**
+     * 按顺序返回每个调用的结果，id为"bad"的调用返回error
+     */
+    private String respond(RecordedRequest request) {
+        try {
+            String body = request.getBody().clone().readUtf8();
+            String batch = URLDecoder.decode(body.substring("batch=".length()), "UTF-8");
+            List<Map<String, String>> calls =
+                    gson.fromJson(batch, new TypeToken<List<Map<String, String>>>() {
+                    }.getType());
+            StringBuilder out = new StringBuilder("[");
+            for (int i = 0; i < calls.size(); i++) {
+                String id = calls.get(i).get("id");
+                out.append(i > 0 ? "," : "");
+                if ("bad".equals(id)) {
+                    out.append("{\"error\":{\"code\":42,\"msg\":\"no such item\"}}");
+                } else {
+                    out.append("{\"data\":{\"id\":\"").append(id).append("\"}}");
+                }
+            }
+            return out.append(']').toString();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    public void callsWithinWindowShareOneRequest() throws Exception {
+        Service service = JtRetrofit.create(Service.class);
+        List<TestObserver<Item>> observers = new ArrayList<>();
+        for (String id : new String[]{"1", "2", "bad", "4"}) {
+            observers.add(service.item(id).test());
+        }
+        for (TestObserver<Item> observer : observers) {
+            assertTrue(observer.awaitTerminalEvent(10, TimeUnit.SECONDS));
+        }
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals("1", observers.get(0).values().get(0).id);
+        assertEquals("2", observers.get(1).values().get(0).id);
+        assertEquals("4", observers.get(3).values().get(0).id);
+        // 部分失败只通知对应的调用者
+        observers.get(2).assertNoValues();
+        JtApiException error = (JtApiException) observers.get(2).errors().get(0);
+        assertEquals(42, error.code);
+        assertEquals("no such item", error.msg);
+    }
+
+    @Test
+    public void maxSizeFlushesBeforeWindow() throws Exception {
+        Service service = JtRetrofit.create(Service.class);
+        List<TestObserver<Item>> observers = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            observers.add(service.item(String.valueOf(i)).test());
+        }
+        for (int i = 0; i < observers.size(); i++) {
+            assertTrue(observers.get(i).awaitTerminalEvent(10, TimeUnit.SECONDS));
+            assertEquals(String.valueOf(i), observers.get(i).values().get(0).id);
+        }
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void disposedCallsAreDroppedBeforeFlush() throws Exception {
+        Service service = JtRetrofit.create(Service.class);
+        service.item("dropped").test().dispose();
+        TestObserver<Item> kept = service.item("kept").test();
+
+        assertTrue(kept.awaitTerminalEvent(10, TimeUnit.SECONDS));
+        assertEquals("kept", kept.values().get(0).id);
+        String body = URLDecoder.decode(server.takeRequest().getBody().readUtf8(), "UTF-8");
+        assertEquals("batch=[{\"id\":\"kept\"}]", body);
+    }
+
+    @Test
+    public void multiValuedFieldsAreRejected() {
+        Service service = JtRetrofit.create(Service.class);
+        try {
+            service.items(Arrays.asList("1", "2"));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("multi-valued"));
+        }
+        try {
+            service.query(Collections.singletonMap("id", Arrays.asList("1", "2")));
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("multi-valued field id"));
+        }
+        assertEquals(0, server.getRequestCount());
+    }
+}
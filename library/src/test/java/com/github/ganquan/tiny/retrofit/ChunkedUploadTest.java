@@ -0,0 +1,224 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import io.reactivex.functions.Predicate;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class ChunkedUploadTest {
+    private static final Charset LATIN1 = Charset.forName("ISO-8859-1");
+    private static final int CHUNK = 64 * 1024;
+
+    private final MockWebServer server = new MockWebServer();
+    private File file;
+    private File progressFile;
+    private byte[] content;
+    private UploadServer uploadServer;
+
+    /**
+     * 按offset把收到的分片写回，failIndex对应的分片返回500；
+     * 确认ackLimit个分片之后，之后的分片阻塞到release，然后返回500
+     */
+    private class UploadServer extends Dispatcher {
+        final byte[] received = new byte[content.length];
+        final Set<String> uploadIds = Collections.synchronizedSet(new HashSet<String>());
+        final List<Integer> indexes = Collections.synchronizedList(new ArrayList<Integer>());
+        final AtomicInteger concurrency = new AtomicInteger();
+        final AtomicInteger peakConcurrency = new AtomicInteger();
+        volatile int failIndex = -1;
+        volatile int ackLimit = Integer.MAX_VALUE;
+        final AtomicInteger acks = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+            int current = concurrency.incrementAndGet();
+            try {
+                while (true) {
+                    int peak = peakConcurrency.get();
+                    if (current <= peak || peakConcurrency.compareAndSet(peak, current)) {
+                        break;
+                    }
+                }
+                Thread.sleep(20);
+                String body = request.getBody().clone().readString(LATIN1);
+                int index = Integer.parseInt(field(body, "index"));
+                if (index == failIndex) {
+                    return new MockResponse().setResponseCode(500);
+                }
+                if (acks.incrementAndGet() > ackLimit) {
+                    release.await();
+                    return new MockResponse().setResponseCode(500);
+                }
+                int offset = Integer.parseInt(field(body, "offset"));
+                int size = Integer.parseInt(field(body, "size"));
+                int start = body.indexOf("\r\n\r\n", body.indexOf("filename=\"" + file.getName())) + 4;
+                byte[] chunk = body.substring(start, start + size).getBytes(LATIN1);
+                System.arraycopy(chunk, 0, received, offset, size);
+                uploadIds.add(field(body, "uploadId"));
+                indexes.add(index);
+                return new MockResponse().setBody("{}");
+            } finally {
+                concurrency.decrementAndGet();
+            }
+        }
+    }
+
+    private static String field(String body, String name) {
+        Matcher matcher = Pattern.compile("name=\"" + name + "\"\r\n(?:[^\r\n]+\r\n)*\r\n([^\r\n]*)\r\n")
+                .matcher(body);
+        if (!matcher.find()) {
+            throw new AssertionError("missing field " + name);
+        }
+        return matcher.group(1);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        content = new byte[CHUNK * 5 + 1234];
+        new Random(7).nextBytes(content);
+        file = File.createTempFile("upload", ".bin");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        progressFile = new File(file.getPath() + ".progress");
+        uploadServer = new UploadServer();
+        server.setDispatcher(uploadServer);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        file.delete();
+        progressFile.delete();
+    }
+
+    private ChunkedUpload upload(RetryPolicy retryPolicy) {
+        return new ChunkedUpload.Builder(server.url("/upload").toString(), file)
+                .chunkSize(CHUNK)
+                .parallelism(2)
+                .progressFile(progressFile)
+                .addFormParams("token", "abc")
+                .retryPolicy(retryPolicy)
+                .build();
+    }
+
+    @Test
+    public void uploadsAllChunksWithBoundedParallelism() throws Exception {
+        List<ChunkedUpload.Progress> progress = upload(null).start().toList().blockingGet();
+
+        assertArrayEquals(content, uploadServer.received);
+        assertEquals(6, uploadServer.indexes.size());
+        assertTrue("peak " + uploadServer.peakConcurrency, uploadServer.peakConcurrency.get() <= 2);
+        assertEquals(1, uploadServer.uploadIds.size());
+        assertEquals(0, progress.get(0).uploadedBytes);
+        ChunkedUpload.Progress last = progress.get(progress.size() - 1);
+        assertTrue(last.isDone());
+        assertEquals(content.length, last.uploadedBytes);
+        assertFalse("progress is deleted after completion", progressFile.exists());
+        assertEquals("abc", field(server.takeRequest().getBody().readString(LATIN1), "token"));
+    }
+
+    @Test
+    public void resumesFromLastAcknowledgedChunk() throws Exception {
+        //确认3个分片后其余分片阻塞在server上，此时取消上传
+        uploadServer.ackLimit = 3;
+        ChunkedUpload.Progress stopped = upload(null).start().takeUntil(new Predicate<ChunkedUpload.Progress>() {
+            @Override
+            public boolean test(ChunkedUpload.Progress progress) {
+                return progress.uploadedChunks == 3;
+            }
+        }).blockingLast();
+        assertEquals(3, stopped.uploadedChunks);
+        assertTrue(progressFile.exists());
+        List<Integer> firstRun = new ArrayList<>(uploadServer.indexes);
+
+        uploadServer.ackLimit = Integer.MAX_VALUE;
+        //被阻塞的分片返回500，不会记录
+        uploadServer.release.countDown();
+        uploadServer.indexes.clear();
+        List<ChunkedUpload.Progress> secondRun = upload(null).start().toList().blockingGet();
+        ChunkedUpload.Progress resumed = secondRun.get(secondRun.size() - 1);
+
+        assertEquals(3, secondRun.get(0).uploadedChunks);
+        assertEquals("only unacknowledged chunks are sent again", 3, uploadServer.indexes.size());
+        for (Integer index : firstRun) {
+            assertFalse(uploadServer.indexes.contains(index));
+        }
+        assertTrue(resumed.isDone());
+        assertArrayEquals(content, uploadServer.received);
+        assertEquals(1, uploadServer.uploadIds.size());
+    }
+
+    @Test
+    public void changedFileStartsOver() throws Exception {
+        uploadServer.failIndex = 5;
+        try {
+            upload(null).start().blockingLast();
+            fail();
+        } catch (RuntimeException expected) {
+        }
+        assertTrue(progressFile.exists());
+
+        content[0]++;
+        content = Arrays.copyOf(content, content.length - 1);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content);
+        }
+        uploadServer.failIndex = -1;
+
+        ChunkedUpload.Progress first = upload(null).start().blockingFirst();
+        assertEquals(0, first.uploadedChunks);
+    }
+
+    @Test
+    public void retriesFailedChunk() throws IOException {
+        uploadServer.failIndex = 2;
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(150);
+                } catch (InterruptedException ignored) {
+                }
+                uploadServer.failIndex = -1;
+            }
+        }.start();
+
+        upload(new RetryPolicy.Builder()
+                .maxAttempts(10)
+                .backoff(50, 50, TimeUnit.MILLISECONDS)
+                .build()).start().blockingLast();
+
+        assertArrayEquals(content, uploadServer.received);
+    }
+}
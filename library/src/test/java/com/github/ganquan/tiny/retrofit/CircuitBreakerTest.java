@@ -0,0 +1,193 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class CircuitBreakerTest {
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.SECONDS.toNanos(2);
+
+    private final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/a")
+        Single<String> a(@Path("port") int port);
+
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/b")
+        Single<String> b(@Path("port") int port);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.setCircuitBreakerConfig(null);
+        server.shutdown();
+    }
+
+    private static CircuitBreaker.Config.Builder config() {
+        return new CircuitBreaker.Config.Builder()
+                .minimumCalls(4)
+                .failureRateThreshold(0.5f)
+                .openDuration(100, TimeUnit.MILLISECONDS)
+                .halfOpenCalls(2);
+    }
+
+    private static void call(CircuitBreaker breaker, long nanos, Throwable error) {
+        assertTrue(breaker.tryAcquire());
+        breaker.onResult(nanos, error);
+    }
+
+    private static JtApiException httpError(int code) {
+        JtApiException error = new JtApiException(-1, "error");
+        error.httpCode = code;
+        return error;
+    }
+
+    @Test
+    public void opensWhenFailureRateExceedsThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(config().build());
+        call(breaker, FAST, null);
+        call(breaker, FAST, new IOException());
+        call(breaker, FAST, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        call(breaker, FAST, httpError(503));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void clientErrorsAreNotFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(config().build());
+        for (int i = 0; i < 10; i++) {
+            call(breaker, FAST, httpError(404));
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void opensWhenSlowCallRateExceedsThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(config()
+                .slowCallRateThreshold(0.75f, 1, TimeUnit.SECONDS).build());
+        call(breaker, SLOW, null);
+        call(breaker, SLOW, null);
+        call(breaker, FAST, null);
+        call(breaker, SLOW, null);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test
+    public void halfOpenClosesAfterSuccessfulProbes() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(config().build());
+        for (int i = 0; i < 4; i++) {
+            call(breaker, FAST, new IOException());
+        }
+        assertFalse(breaker.tryAcquire());
+        Thread.sleep(150);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.state());
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse("only halfOpenCalls probes are permitted", breaker.tryAcquire());
+        breaker.onResult(FAST, null);
+        breaker.onResult(FAST, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+
+        // 关闭时清空窗口，之前的失败不再计入
+        call(breaker, FAST, new IOException());
+        call(breaker, FAST, null);
+        call(breaker, FAST, null);
+        call(breaker, FAST, null);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    public void failedProbeReopens() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(config().build());
+        for (int i = 0; i < 4; i++) {
+            call(breaker, FAST, new IOException());
+        }
+        Thread.sleep(150);
+        call(breaker, FAST, new IOException());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    public void ignoredProbeReturnsPermit() throws Exception {
+        CircuitBreaker breaker = new CircuitBreaker(config().halfOpenCalls(1).build());
+        for (int i = 0; i < 4; i++) {
+            call(breaker, FAST, new IOException());
+        }
+        Thread.sleep(150);
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        breaker.onIgnored();
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    public void openCircuitFailsFastWithoutRequest() {
+        JtRetrofit.setCircuitBreakerConfig(config().build());
+        Service service = JtRetrofit.create(Service.class);
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            try {
+                service.a(server.getPort()).blockingGet();
+                fail();
+            } catch (RuntimeException expected) {
+            }
+        }
+        assertEquals(4, server.getRequestCount());
+
+        try {
+            service.b(server.getPort()).blockingGet();
+            fail();
+        } catch (RuntimeException e) {
+            JtApiException error = (JtApiException) e.getCause();
+            assertEquals(JtApiException.CODE_CIRCUIT_OPEN, error.code);
+        }
+        assertEquals("same host shares the breaker", 4, server.getRequestCount());
+    }
+
+    @Test
+    public void perMethodBreakersAreIndependent() {
+        JtRetrofit.setCircuitBreakerConfig(config().perMethod(true).build());
+        Service service = JtRetrofit.create(Service.class);
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+            try {
+                service.a(server.getPort()).blockingGet();
+                fail();
+            } catch (RuntimeException expected) {
+            }
+        }
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+        assertEquals("ok", service.b(server.getPort()).blockingGet());
+        assertEquals(CircuitBreaker.State.OPEN, JtRetrofit.getCircuitBreaker("localhost",
+                Service.class.getName() + "#a").state());
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Coalesce;
+import com.github.ganquan.tiny.retrofit.annotate.Hedge;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class CoalesceTest {
+    private static final int SUBSCRIBERS = 50;
+
+    private final MockWebServer server = new MockWebServer();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final AtomicInteger requests = new AtomicInteger();
+
+    interface Service {
+        @Coalesce
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/profile")
+        Single<Profile> profile(@Path("port") int port);
+
+        @Coalesce
+        @Hedge(delay = 50)
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/hedged")
+        Single<Profile> hedged(@Path("port") int port);
+
+        @Coalesce(excludeParams = "ts")
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/profile")
+        Single<Profile> stamped(@Path("port") int port);
+    }
+
+    static class Profile {
+        String name;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                //对冲请求不等待
+                if (requests.incrementAndGet() > 1 && request.getPath().equals("/hedged")) {
+                    return new MockResponse().setBody("{\"name\":\"hedged\"}");
+                }
+                release.await(10, TimeUnit.SECONDS);
+                return new MockResponse().setBody("{\"name\":\"jt\"}");
+            }
+        });
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.clearHttpInterceptors();
+        JtRetrofit.setRequestSigner(null);
+        release.countDown();
+        server.shutdown();
+    }
+
+    @Test
+    public void concurrentIdenticalCallsShareOneRequest() throws Exception {
+        Service service = JtRetrofit.create(Service.class);
+        final Set<Profile> results = Collections.synchronizedSet(new HashSet<Profile>());
+        final CountDownLatch done = new CountDownLatch(SUBSCRIBERS);
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            service.profile(server.getPort()).subscribe(new Consumer<Profile>() {
+                @Override
+                public void accept(Profile profile) {
+                    results.add(profile);
+                    done.countDown();
+                }
+            });
+        }
+        // 等待所有订阅在io线程上加入进行中的请求
+        Thread.sleep(500);
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        assertEquals(1, results.size());
+        assertEquals("jt", results.iterator().next().name);
+    }
+
+    @Test
+    public void changingAndSignatureParamsAreNotCompared() throws Exception {
+        final AtomicInteger timestamps = new AtomicInteger();
+        JtRetrofit.addHttpInterceptor(new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                apiParams.put("ts", String.valueOf(timestamps.incrementAndGet()));
+            }
+        });
+        JtRetrofit.setRequestSigner(new RequestSigner.Builder("secret".getBytes("UTF-8")).build());
+        Service service = JtRetrofit.create(Service.class);
+        final CountDownLatch done = new CountDownLatch(2);
+        Consumer<Profile> consumer = new Consumer<Profile>() {
+            @Override
+            public void accept(Profile profile) {
+                done.countDown();
+            }
+        };
+        service.stamped(server.getPort()).subscribe(consumer);
+        service.stamped(server.getPort()).subscribe(consumer);
+        Thread.sleep(300);
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, timestamps.get());
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void coalescedCallsShareTheHedgedRequest() throws Exception {
+        Service service = JtRetrofit.create(Service.class);
+        final Set<Profile> results = Collections.synchronizedSet(new HashSet<Profile>());
+        final CountDownLatch done = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            service.hedged(server.getPort()).subscribe(new Consumer<Profile>() {
+                @Override
+                public void accept(Profile profile) {
+                    results.add(profile);
+                    done.countDown();
+                }
+            });
+        }
+
+        //第一个请求一直等待release，只有对冲请求能返回
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+        assertEquals(1, results.size());
+        assertEquals("hedged", results.iterator().next().name);
+    }
+
+    @Test
+    public void disposingOneSubscriberDoesNotCancelOthers() throws Exception {
+        Service service = JtRetrofit.create(Service.class);
+        final CountDownLatch done = new CountDownLatch(1);
+        Disposable first = service.profile(server.getPort()).subscribe();
+        service.profile(server.getPort()).subscribe(new Consumer<Profile>() {
+            @Override
+            public void accept(Profile profile) {
+                done.countDown();
+            }
+        });
+        Thread.sleep(300);
+        first.dispose();
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+}
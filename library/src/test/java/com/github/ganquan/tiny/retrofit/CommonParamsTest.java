@@ -0,0 +1,101 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class CommonParamsTest {
+
+    @After
+    public void tearDown() {
+        JtRetrofit.clearHttpInterceptors();
+    }
+
+    private static Map<String, String> params() {
+        return JtRetrofit.create().url("http://localhost/x").addFormParams("api", "1").build().getFormEncodeParams();
+    }
+
+    @Test
+    public void staticInterceptorRunsOnceUntilInvalidated() {
+        final AtomicInteger calls = new AtomicInteger();
+        JtRetrofit.addStaticHttpInterceptor(new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                assertTrue(apiParams.isEmpty());
+                apiParams.put("uid", "u" + calls.incrementAndGet());
+                apiParams.put("skipped", null);
+            }
+        });
+
+        assertEquals("u1", params().get("uid"));
+        assertEquals("u1", params().get("uid"));
+        CommonParams.Snapshot snapshot = JtRetrofit.getCommonParams();
+        assertEquals(1, calls.get());
+        assertSame(snapshot, JtRetrofit.getCommonParams());
+        assertFalse(snapshot.getParams().containsKey("skipped"));
+
+        JtRetrofit.invalidateCommonParams();
+        Map<String, String> params = params();
+        assertEquals("u2", params.get("uid"));
+        assertEquals("1", params.get("api"));
+        assertEquals(2, calls.get());
+        assertTrue(JtRetrofit.getCommonParams().getVersion() > snapshot.getVersion());
+        assertEquals("u1", snapshot.getParams().get("uid"));
+    }
+
+    @Test
+    public void perRequestInterceptorRunsAfterSnapshot() {
+        final AtomicInteger calls = new AtomicInteger();
+        JtRetrofit.addStaticHttpInterceptor(new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                apiParams.put("api", "common");
+                apiParams.put("channel", "store");
+            }
+        });
+        JtRetrofit.addHttpInterceptor(new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                calls.incrementAndGet();
+                apiParams.put("sign", apiParams.get("api") + "|" + apiParams.get("channel"));
+            }
+        });
+
+        Map<String, String> params = params();
+        params();
+
+        assertEquals(2, calls.get());
+        assertEquals("common", params.get("api"));
+        assertEquals("common|store", params.get("sign"));
+    }
+
+    @Test
+    public void registryCanChangeWhileApplying() {
+        final IHttpInterceptor late = new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                apiParams.put("late", "1");
+            }
+        };
+        JtRetrofit.addHttpInterceptor(new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                JtRetrofit.removeHttpInterceptor(this);
+                JtRetrofit.addHttpInterceptor(late);
+            }
+        });
+
+        assertNull(params().get("late"));
+        assertEquals("1", params().get("late"));
+        assertTrue(JtRetrofit.removeHttpInterceptor(late));
+        assertNull(params().get("late"));
+    }
+}
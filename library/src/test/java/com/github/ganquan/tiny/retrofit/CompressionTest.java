@@ -0,0 +1,136 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Compressed;
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.GET;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Query;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.FormBody;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.GzipSource;
+
+public class CompressionTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @Compressed
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/log")
+        Single<String> upload(@Path("port") int port, @Field("logs") String logs);
+
+        @GET
+        @Compressed
+        @Url("http://localhost:{port}/log")
+        Single<String> bad(@Path("port") int port, @Query("q") String q);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.setCompressionThreshold(1024);
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+    }
+
+    private static String logs(int lines) {
+        StringBuilder logs = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            logs.append("2018-04-09 12:00:00.").append(i % 1000).append(" I/Upload: event=click id=").append(i)
+                    .append('\n');
+        }
+        return logs.toString();
+    }
+
+    private static String gunzip(Buffer body) throws IOException {
+        Buffer plain = new Buffer();
+        try (GzipSource source = new GzipSource(body)) {
+            while (source.read(plain, 8192) != -1) {
+                //读完为止
+            }
+        }
+        return plain.readString(UTF_8);
+    }
+
+    @Test
+    public void gzipsLargeFormBody() throws Exception {
+        String logs = logs(500);
+        JtRetrofit.create(Service.class).upload(server.getPort(), logs).blockingGet();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+        assertEquals("application/x-www-form-urlencoded", request.getHeader("Content-Type"));
+        long wireBytes = request.getBodySize();
+        String expected = new FormBody.Builder().add("logs", logs).build().encodedValue(0);
+        assertEquals("logs=" + expected, gunzip(request.getBody()));
+        assertTrue(wireBytes + " bytes", wireBytes * 4 < logs.length());
+    }
+
+    @Test
+    public void smallBodyIsNotCompressed() throws Exception {
+        JtRetrofit.create(Service.class).upload(server.getPort(), "short").blockingGet();
+
+        RecordedRequest request = server.takeRequest();
+        assertNull(request.getHeader("Content-Encoding"));
+        assertEquals("logs=short", request.getBody().readUtf8());
+    }
+
+    @Test
+    public void gzipsMultipartBody() throws Exception {
+        JtRetrofit.setCompressionThreshold(0);
+        HttpClient.create().url(server.url("/log").toString())
+                .addFormParams("device", "d1")
+                .addFormDataPart("file", "a.log", RequestBody.create(MediaType.parse("text/plain"), "hello"))
+                .compressed()
+                .build()
+                .post(JtRetrofit.<String>responseBodyConverter(String.class, null),
+                        ThreadingPolicy.of(ThreadMode.IMMEDIATE, ThreadMode.IMMEDIATE))
+                .blockingGet();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("gzip", request.getHeader("Content-Encoding"));
+        assertTrue(request.getHeader("Content-Type").startsWith("multipart/form-data"));
+        String body = gunzip(request.getBody());
+        assertTrue(body, body.contains("filename=\"a.log\"") && body.contains("hello") && body.contains("d1"));
+    }
+
+    @Test
+    public void getCanNotBeCompressed() {
+        try {
+            JtRetrofit.create(Service.class).bad(server.getPort(), "x");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("@Compressed"));
+        }
+    }
+}
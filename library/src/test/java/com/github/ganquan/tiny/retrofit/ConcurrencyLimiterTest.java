@@ -0,0 +1,153 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import io.reactivex.functions.BiConsumer;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class ConcurrencyLimiterTest {
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicInteger serverConcurrency = new AtomicInteger();
+
+    interface Service {
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/work")
+        Single<String> work(@Path("port") int port);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.setConcurrencyLimitConfig(null);
+        server.shutdown();
+    }
+
+    /**
+     * 模拟服务端：并发不超过8时耗时20ms，之后每多一个并发多排队10ms
+     */
+    private void congestedServer() {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int concurrency = serverConcurrency.incrementAndGet();
+                try {
+                    Thread.sleep(20 + 10 * Math.max(0, concurrency - 8));
+                    return new MockResponse().setBody("\"ok\"");
+                } finally {
+                    serverConcurrency.decrementAndGet();
+                }
+            }
+        });
+    }
+
+    private List<Throwable> run(Service service, int count) throws InterruptedException {
+        final List<Throwable> errors = new ArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            service.work(server.getPort()).subscribe(new BiConsumer<String, Throwable>() {
+                @Override
+                public void accept(String s, Throwable error) {
+                    if (error != null) {
+                        synchronized (errors) {
+                            errors.add(error);
+                        }
+                    }
+                    latch.countDown();
+                }
+            });
+        }
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+        return errors;
+    }
+
+    @Test
+    public void queuesBeyondLimitAndRejectsWhenQueueIsFull() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(new ConcurrencyLimiter.Config.Builder()
+                .limit(2, 1, 2).maxQueue(2).build());
+        final List<String> ran = new ArrayList<>();
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        assertTrue(limiter.enqueue(job(ran, "a")));
+        assertTrue(limiter.enqueue(job(ran, "b")));
+        assertFalse(limiter.enqueue(job(ran, "c")));
+        assertEquals(2, limiter.queueDepth());
+        assertEquals(1, limiter.rejectedCount());
+
+        limiter.release();
+        assertEquals(1, ran.size());
+        assertEquals("a", ran.get(0));
+        assertEquals(1, limiter.queueDepth());
+        assertEquals(2, limiter.inFlight());
+        assertFalse("queued requests go first", limiter.tryAcquire());
+    }
+
+    private static Runnable job(final List<String> ran, final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                ran.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void limitShrinksWhenLatencyGrowsWithConcurrency() throws Exception {
+        congestedServer();
+        JtRetrofit.setConcurrencyLimitConfig(new ConcurrencyLimiter.Config.Builder()
+                .limit(40, 1, 100).maxQueue(1000).build());
+        Service service = JtRetrofit.create(Service.class);
+
+        List<Throwable> errors = run(service, 400);
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        ConcurrencyLimiter limiter = JtRetrofit.getConcurrencyLimiter("localhost");
+        // 稳定时排队数limit * (1 - 20 / rtt)落在[3, 6]之间，limit约为10
+        assertTrue("limit " + limiter.limit(), limiter.limit() < 20);
+        assertEquals(0, limiter.inFlight());
+        assertEquals(0, limiter.queueDepth());
+    }
+
+    @Test
+    public void rejectsWithDistinctCodeWhenQueueIsFull() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().setBody("\"ok\"").setBodyDelay(300, TimeUnit.MILLISECONDS);
+            }
+        });
+        JtRetrofit.setConcurrencyLimitConfig(new ConcurrencyLimiter.Config.Builder()
+                .limit(1, 1, 1).maxQueue(1).build());
+
+        List<Throwable> errors = run(JtRetrofit.create(Service.class), 3);
+
+        assertEquals(errors.toString(), 1, errors.size());
+        assertEquals(JtApiException.CODE_LIMIT_EXCEEDED, ((JtApiException) errors.get(0)).code);
+        assertEquals(2, server.getRequestCount());
+    }
+}
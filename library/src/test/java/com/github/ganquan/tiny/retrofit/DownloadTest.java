@@ -0,0 +1,271 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Retry;
+import com.github.ganquan.tiny.retrofit.annotate.SaveTo;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+import okio.Buffer;
+
+public class DownloadTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MockWebServer server = new MockWebServer();
+    private final byte[] content = new byte[256 * 1024];
+    private File target;
+    private File part;
+    private File meta;
+
+    interface Service {
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/file")
+        Single<File> download(@Path("port") int port, @SaveTo File target);
+
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Retry(backoff = 10)
+        @Url("http://localhost:{port}/file")
+        Single<File> downloadWithRetry(@Path("port") int port, @SaveTo File target);
+
+        @Url("http://localhost:{port}/file")
+        Single<String> wrongReturnType(@Path("port") int port, @SaveTo File target);
+    }
+
+    /**
+     * 按Range返回206，supportsRange为false或者If-Range不是当前etag时返回200；
+     * etag为null时不返回ETag；truncateOnce时第一次响应在body中途断开
+     */
+    private class RangeServer extends Dispatcher {
+        final AtomicInteger requests = new AtomicInteger();
+        volatile boolean supportsRange = true;
+        volatile boolean truncateOnce;
+        volatile String etag = "\"v1\"";
+
+        @Override
+        public MockResponse dispatch(RecordedRequest request) {
+            requests.incrementAndGet();
+            String range = request.getHeader("Range");
+            String ifRange = request.getHeader("If-Range");
+            MockResponse response;
+            if (range == null || !supportsRange || (ifRange != null && !ifRange.equals(etag))) {
+                response = new MockResponse().setBody(new Buffer().write(content));
+            } else {
+                int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                if (start >= content.length) {
+                    return new MockResponse().setResponseCode(416)
+                            .setHeader("Content-Range", "bytes */" + content.length)
+                            .setHeader("ETag", etag);
+                }
+                response = new MockResponse().setResponseCode(206)
+                        .setHeader("Content-Range", "bytes " + start + "-" + (content.length - 1)
+                                + "/" + content.length)
+                        .setBody(new Buffer().write(content, start, content.length - start));
+            }
+            if (etag != null) {
+                response.setHeader("ETag", etag);
+            }
+            if (truncateOnce) {
+                truncateOnce = false;
+                response.setSocketPolicy(SocketPolicy.DISCONNECT_DURING_RESPONSE_BODY);
+            }
+            return response;
+        }
+    }
+
+    private RangeServer rangeServer;
+
+    @Before
+    public void setUp() throws Exception {
+        new Random(7).nextBytes(content);
+        target = new File(folder.getRoot(), "file.bin");
+        part = new File(folder.getRoot(), "file.bin.part");
+        meta = new File(folder.getRoot(), "file.bin.part.meta");
+        rangeServer = new RangeServer();
+        server.setDispatcher(rangeServer);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+    }
+
+    /**
+     * 模拟上次下载留下的.part文件，validator为null时不保存
+     */
+    private void writePart(byte[] data, int length, String validator) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(part)) {
+            out.write(data, 0, length);
+        }
+        if (validator != null) {
+            Files.write(meta.toPath(), validator.getBytes("UTF-8"));
+        }
+    }
+
+    private void writePart(byte[] data, int length) throws IOException {
+        writePart(data, length, rangeServer.etag);
+    }
+
+    private void assertDownloaded(File file) throws IOException {
+        assertEquals(target, file);
+        assertArrayEquals(content, Files.readAllBytes(target.toPath()));
+        assertFalse(part.exists());
+        assertFalse(meta.exists());
+    }
+
+    @Test
+    public void downloadsWholeFile() throws Exception {
+        File file = JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+
+        assertDownloaded(file);
+        assertNull(server.takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void resumesPartialFile() throws Exception {
+        writePart(content, 100000);
+
+        File file = JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+
+        assertDownloaded(file);
+        RecordedRequest request = server.takeRequest();
+        assertEquals("bytes=100000-", request.getHeader("Range"));
+        assertEquals("\"v1\"", request.getHeader("If-Range"));
+    }
+
+    @Test
+    public void restartsWhenResourceChanged() throws Exception {
+        byte[] stale = new byte[100000];
+        Arrays.fill(stale, (byte) 1);
+        writePart(stale, stale.length, "\"v0\"");
+
+        File file = JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+
+        assertDownloaded(file);
+        RecordedRequest request = server.takeRequest();
+        assertEquals("bytes=100000-", request.getHeader("Range"));
+        assertEquals("\"v0\"", request.getHeader("If-Range"));
+    }
+
+    @Test
+    public void doesNotResumeWithoutValidator() throws Exception {
+        byte[] stale = new byte[1000];
+        Arrays.fill(stale, (byte) 1);
+        writePart(stale, stale.length, null);
+
+        File file = JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+
+        assertDownloaded(file);
+        assertNull(server.takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void doesNotSaveWeakEtag() throws Exception {
+        rangeServer.etag = "W/\"v1\"";
+        rangeServer.truncateOnce = true;
+        try {
+            JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+            fail();
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+
+        assertTrue(part.length() > 0);
+        assertFalse("weak etag can not be used in If-Range", meta.exists());
+    }
+
+    @Test
+    public void restartsWhenServerIgnoresRange() throws Exception {
+        byte[] stale = new byte[1000];
+        Arrays.fill(stale, (byte) 1);
+        writePart(stale, stale.length);
+        rangeServer.supportsRange = false;
+
+        File file = JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+
+        assertDownloaded(file);
+    }
+
+    @Test
+    public void completesAlreadyDownloadedPart() throws Exception {
+        writePart(content, content.length);
+
+        File file = JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+
+        assertDownloaded(file);
+        assertEquals("bytes=" + content.length + "-", server.takeRequest().getHeader("Range"));
+    }
+
+    @Test
+    public void keepsPartialDataAndRetryResumes() throws Exception {
+        rangeServer.truncateOnce = true;
+        try {
+            JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+            fail();
+        } catch (RuntimeException expected) {
+            assertTrue(String.valueOf(expected.getCause()), expected.getCause() instanceof IOException);
+        }
+        long kept = part.length();
+        assertTrue("kept " + kept, kept > 0 && kept < content.length);
+        assertFalse(target.exists());
+
+        rangeServer.truncateOnce = true;
+        File file = JtRetrofit.create(Service.class).downloadWithRetry(server.getPort(), target)
+                .blockingGet();
+
+        assertDownloaded(file);
+        assertEquals(3, rangeServer.requests.get());
+    }
+
+    @Test
+    public void rejectsLongerPartThanServerFile() throws Exception {
+        byte[] longer = Arrays.copyOf(content, content.length + 10);
+        writePart(longer, longer.length);
+
+        try {
+            JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet();
+            fail();
+        } catch (RuntimeException expected) {
+            assertTrue(expected.getCause() instanceof IOException);
+        }
+        assertFalse("invalid part is discarded", part.exists());
+
+        assertDownloaded(JtRetrofit.create(Service.class).download(server.getPort(), target).blockingGet());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void saveToRequiresFileReturnType() {
+        JtRetrofit.create(Service.class).wrongReturnType(server.getPort(), target);
+    }
+}
@@ -0,0 +1,144 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.FieldMap;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+import com.github.ganquan.tiny.retrofit.internal.Request;
+
+import io.reactivex.Single;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class FieldTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/form")
+        Single<String> form(@Path("port") int port, @Field("id") int id, @Field("tag") List<String> tags,
+                            @Field("flag") boolean[] flags, @Field("skip") String skip,
+                            @FieldMap Map<String, Object> extra, @Field("name") String... names);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+    }
+
+    @Test
+    public void sendsRepeatedFieldsInParameterOrder() throws Exception {
+        Map<String, Object> extra = new LinkedHashMap<>();
+        extra.put("z", 1.5);
+        extra.put("none", null);
+        extra.put("a", Arrays.asList("x", null, "y"));
+
+        JtRetrofit.create(Service.class).form(server.getPort(), 7, Arrays.asList("a b", null, "c&d"),
+                new boolean[]{true, false}, null, extra, "Bob", "Jane").blockingGet();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("application/x-www-form-urlencoded", request.getHeader("Content-Type"));
+        assertEquals("id=7&tag=a%20b&tag=c%26d&flag=true&flag=false&z=1.5&a=x&a=y&name=Bob&name=Jane",
+                request.getBody().readUtf8());
+    }
+
+    @Test
+    public void emptyCollectionsSendNothing() throws Exception {
+        JtRetrofit.create(Service.class).form(server.getPort(), 1, Collections.<String>emptyList(),
+                new boolean[0], "s", Collections.<String, Object>emptyMap()).blockingGet();
+
+        assertEquals("id=1&skip=s", server.takeRequest().getBody().readUtf8());
+    }
+
+    @Test
+    public void mixesFieldsIntoMultipartInOrder() throws Exception {
+        HttpClient.create().url(server.url("/upload").toString())
+                .addField("tag", Arrays.asList("b", "a"))
+                .addFormParams("token", "t")
+                .addFormDataPart("file", "a.txt", RequestBody.create(MediaType.parse("text/plain"), "hello"))
+                .build()
+                .post(JtRetrofit.<String>responseBodyConverter(String.class, null),
+                        ThreadingPolicy.of(ThreadMode.IMMEDIATE, ThreadMode.IMMEDIATE))
+                .blockingGet();
+
+        RecordedRequest request = server.takeRequest();
+        assertTrue(request.getHeader("Content-Type").startsWith("multipart/form-data"));
+        String body = request.getBody().readString(UTF_8);
+        int first = body.indexOf("name=\"tag\"\r\nContent-Length: 1\r\n\r\nb");
+        int second = body.indexOf("name=\"tag\"\r\nContent-Length: 1\r\n\r\na");
+        int token = body.indexOf("name=\"token\"");
+        int file = body.indexOf("filename=\"a.txt\"");
+        assertTrue(body, first >= 0 && first < second && second < token && token < file);
+    }
+
+    @Test
+    public void oneShotBuilderGrowsAndCanNotBeReused() {
+        Request.Builder builder = JtRetrofit.create(1).url("http://localhost/x")
+                .addField("a", 1)
+                .addField("b", Arrays.asList(2, 3, 4, 5, 6, 7, 8, 9));
+
+        Map<String, String> params = builder.build().getFormEncodeParams();
+        assertEquals(9, params.size());
+        assertEquals("1", params.get("a"));
+        try {
+            builder.addField("c", 1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            builder.build();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            builder.addHeader("X-Token", "t");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            builder.url("http://localhost/y");
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void plainBuilderCopiesParamsOnBuild() {
+        Request.Builder builder = JtRetrofit.create().url("http://localhost/x").addField("a", 1);
+        Request first = builder.build();
+        builder.addField("b", 2);
+
+        assertEquals(1, first.getFormEncodeParams().size());
+        assertEquals(2, builder.build().getFormEncodeParams().size());
+    }
+}
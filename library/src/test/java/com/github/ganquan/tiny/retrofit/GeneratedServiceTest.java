@@ -0,0 +1,190 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import io.reactivex.Single;
+import okhttp3.OkHttpClient;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * 在进程内用javac编译同一个接口两次：一次运行注解处理器，一次不运行，比较生成类和动态代理发出的请求
+ */
+public class GeneratedServiceTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String SERVICE = "sample.UserService";
+    private static final String PROCESSOR = "com.github.ganquan.tiny.retrofit.compiler.JtServiceProcessor";
+    private static final String SOURCE = ""
+            + "package sample;\n"
+            + "\n"
+            + "import java.lang.annotation.Retention;\n"
+            + "import java.lang.annotation.RetentionPolicy;\n"
+            + "import java.util.List;\n"
+            + "import java.util.Map;\n"
+            + "\n"
+            + "import com.github.ganquan.tiny.retrofit.ThreadMode;\n"
+            + "import com.github.ganquan.tiny.retrofit.annotate.Field;\n"
+            + "import com.github.ganquan.tiny.retrofit.annotate.FieldMap;\n"
+            + "import com.github.ganquan.tiny.retrofit.annotate.Path;\n"
+            + "import com.github.ganquan.tiny.retrofit.annotate.Threading;\n"
+            + "import com.github.ganquan.tiny.retrofit.annotate.Url;\n"
+            + "\n"
+            + "import io.reactivex.Single;\n"
+            + "\n"
+            + "public interface UserService {\n"
+            + "    @Retention(RetentionPolicy.RUNTIME)\n"
+            + "    @interface Envelope {\n"
+            + "    }\n"
+            + "\n"
+            + "    @Envelope\n"
+            + "    @Threading(observeOn = ThreadMode.IMMEDIATE)\n"
+            + "    @Url(\"http://localhost:{port}/user/{id}\")\n"
+            + "    Single<String> update(@Path(\"port\") int port, @Path(\"id\") long id, @Field(\"name\") String name,\n"
+            + "                          @Field(\"tag\") List<String> tags, @FieldMap Map<String, String> extra);\n"
+            + "}\n";
+
+    private final MockWebServer server = new MockWebServer();
+    private File dir;
+
+    @BeforeClass
+    public static void addEnvelopeFactory() {
+        //只处理带有@Envelope的方法，不影响其他测试
+        JtRetrofit.addConverterFactory(new Converter.Factory() {
+            @Override
+            public Converter<?> responseBodyConverter(Type type, Annotation[] annotations) {
+                for (Annotation annotation : annotations) {
+                    if (annotation.annotationType().getName().equals(SERVICE + "$Envelope")) {
+                        return new Converter<String>() {
+                            @Override
+                            public String convert(ResponseBody body) throws IOException {
+                                return "envelope:" + body.string();
+                            }
+                        };
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        dir = File.createTempFile("generated", "");
+        dir.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+        delete(dir);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * 编译SOURCE，返回加载了编译结果的接口
+     */
+    private Class<?> compile(String name, boolean process) throws Exception {
+        File src = new File(dir, name + "/src/sample");
+        File out = new File(dir, name + "/out");
+        assertTrue(src.mkdirs() && out.mkdirs());
+        File source = new File(src, "UserService.java");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(source), UTF_8)) {
+            writer.write(SOURCE);
+        }
+
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager files = javac.getStandardFileManager(null, null, UTF_8)) {
+            //compiler模块只在测试的运行时classpath中
+            String classpath = System.getProperty("java.class.path");
+            List<String> options = process
+                    ? Arrays.asList("-d", out.getPath(), "-s", out.getPath(), "-classpath", classpath,
+                    "-processorpath", classpath, "-processor", PROCESSOR)
+                    : Arrays.asList("-d", out.getPath(), "-classpath", classpath, "-proc:none");
+            assertTrue(javac.getTask(null, files, null, options, null, files.getJavaFileObjects(source)).call());
+        }
+        ClassLoader loader = new URLClassLoader(new URL[] {out.toURI().toURL()}, getClass().getClassLoader());
+        return loader.loadClass(SERVICE);
+    }
+
+    private String update(Object service) throws Exception {
+        Map<String, String> extra = new LinkedHashMap<>();
+        extra.put("city", "Shen Zhen");
+        Method update = service.getClass().getMethod("update", int.class, long.class, String.class, List.class,
+                Map.class);
+        Single<?> single = (Single<?>) update.invoke(service, server.getPort(), 42L, "Gan Quan",
+                Arrays.asList("a", "b"), extra);
+        return (String) single.blockingGet();
+    }
+
+    @Test
+    public void generatedImplMatchesProxy() throws Exception {
+        server.enqueue(new MockResponse().setBody("ok"));
+        server.enqueue(new MockResponse().setBody("ok"));
+        Class<?> generatedService = compile("generated", true);
+        Class<?> proxyService = compile("proxy", false);
+
+        Object generated = JtRetrofit.create(generatedService);
+        Object proxy = JtRetrofit.create(proxyService);
+        assertEquals(SERVICE + "$Impl", generated.getClass().getName());
+        assertFalse(Proxy.isProxyClass(generated.getClass()));
+        assertTrue(Proxy.isProxyClass(proxy.getClass()));
+
+        //converter按方法上的注解查找，两条路径都应该找到@Envelope对应的converter
+        assertEquals("envelope:ok", update(generated));
+        assertEquals("envelope:ok", update(proxy));
+
+        RecordedRequest fromGenerated = server.takeRequest();
+        RecordedRequest fromProxy = server.takeRequest();
+        assertNotNull(fromGenerated);
+        assertEquals("/user/42", fromGenerated.getPath());
+        assertEquals(fromProxy.getMethod(), fromGenerated.getMethod());
+        assertEquals(fromProxy.getPath(), fromGenerated.getPath());
+        assertEquals(fromProxy.getHeader("Content-Type"), fromGenerated.getHeader("Content-Type"));
+        String body = fromGenerated.getBody().readUtf8();
+        assertEquals("name=Gan%20Quan&tag=a&tag=b&city=Shen%20Zhen", body);
+        assertEquals(body, fromProxy.getBody().readUtf8());
+    }
+}
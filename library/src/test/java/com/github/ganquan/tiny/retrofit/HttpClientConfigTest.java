@@ -0,0 +1,90 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import org.junit.After;
+import org.junit.Test;
+
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+
+public class HttpClientConfigTest {
+
+    @After
+    public void tearDown() {
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+    }
+
+    @Test
+    public void setTimeOutAfterInitRebuildsClient() {
+        OkHttpClient before = HttpClient.getHttpClient();
+        JtRetrofit.setTimeOut(3, 4, 5);
+        OkHttpClient after = HttpClient.getHttpClient();
+
+        assertNotSame(before, after);
+        assertEquals(3000, after.connectTimeoutMillis());
+        assertEquals(4000, after.readTimeoutMillis());
+        assertEquals(5000, after.writeTimeoutMillis());
+        // 只修改超时不丢弃已建立的连接
+        assertSame(before.connectionPool(), after.connectionPool());
+    }
+
+    @Test
+    public void configIsAppliedToDispatcherAndProtocols() {
+        JtRetrofit.setHttpClientConfig(new HttpClient.Config.Builder()
+                .dispatcher(128, 32)
+                .connectionPool(16, 60)
+                .http2(false)
+                .build());
+        OkHttpClient client = HttpClient.getHttpClient();
+
+        assertEquals(128, client.dispatcher().getMaxRequests());
+        assertEquals(32, client.dispatcher().getMaxRequestsPerHost());
+        assertEquals(Collections.singletonList(Protocol.HTTP_1_1), client.protocols());
+        assertSame(client, HttpClient.getHttpClient());
+    }
+
+    @Test
+    public void prebuiltClientIsUsedAsIsAndDerivedFrom() {
+        OkHttpClient prebuilt = new OkHttpClient.Builder().retryOnConnectionFailure(false).build();
+        JtRetrofit.setOkHttpClient(prebuilt);
+        // 只增加统计用的EventListener，连接池和dispatcher与原client共用
+        OkHttpClient client = HttpClient.getHttpClient();
+        assertSame(prebuilt.connectionPool(), client.connectionPool());
+        assertSame(prebuilt.dispatcher(), client.dispatcher());
+        assertEquals(false, client.retryOnConnectionFailure());
+
+        JtRetrofit.setTimeOut(7, 7, 7);
+        OkHttpClient derived = HttpClient.getHttpClient();
+        assertEquals(7000, derived.readTimeoutMillis());
+        assertEquals(false, derived.retryOnConnectionFailure());
+    }
+
+    @Test
+    public void configUpdatesOneDispatcherInPlace() {
+        HttpClient.setConfig(new HttpClient.Config.Builder().dispatcher(10, 2).build());
+        Dispatcher dispatcher = HttpClient.getHttpClient().dispatcher();
+        HttpClient.setConfig(new HttpClient.Config.Builder().dispatcher(20, 4).build());
+        OkHttpClient client = HttpClient.getHttpClient();
+
+        assertSame(dispatcher, client.dispatcher());
+        assertEquals(20, dispatcher.getMaxRequests());
+        assertEquals(4, dispatcher.getMaxRequestsPerHost());
+    }
+
+    @Test
+    public void configKeepsPrebuiltClientDispatcher() {
+        OkHttpClient prebuilt = new OkHttpClient();
+        JtRetrofit.setOkHttpClient(prebuilt);
+        JtRetrofit.setHttpClientConfig(new HttpClient.Config.Builder().dispatcher(128, 32).build());
+
+        assertSame(prebuilt.dispatcher(), HttpClient.getHttpClient().dispatcher());
+        assertEquals(32, prebuilt.dispatcher().getMaxRequestsPerHost());
+    }
+}
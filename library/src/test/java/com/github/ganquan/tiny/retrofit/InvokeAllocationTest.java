@@ -0,0 +1,73 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+import com.github.ganquan.tiny.retrofit.internal.Request;
+
+import io.reactivex.Single;
+
+/**
+ * 一次api调用从方法参数到okhttp3.Request的分配字节数不超过{@link #BUDGET_BYTES}，不包括请求体编码；
+ * 其中约1KB是okhttp解析url的分配
+ */
+public class InvokeAllocationTest {
+    /**
+     * 每次调用允许分配的字节数
+     */
+    private static final long BUDGET_BYTES = 2048;
+    private static final int WARMUP = 20000;
+    private static final int ITERATIONS = 20000;
+
+    interface UserService {
+        @Url("http://localhost/user/{id}/update")
+        Single<String> update(@Path("id") long id, @Field("name") String name, @Field("email") String email,
+                              @Field("age") int age);
+    }
+
+    @Test
+    public void invokeToOkRequestStaysWithinBudget() throws Throwable {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        JtRetrofit.MethodHandler handler = JtRetrofit.loadMethodHandler(UserService.class.getDeclaredMethod(
+                "update", long.class, String.class, String.class, int.class));
+        Method method = Request.class.getDeclaredMethod("buildRequest");
+        method.setAccessible(true);
+        MethodHandle buildRequest = MethodHandles.lookup().unreflect(method);
+        //代理每次调用都会创建参数数组，这里复用同一个，只统计框架本身的分配
+        Object[] args = {42L, "Gan Quan", "gq@example.com", 18};
+
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += invoke(handler, buildRequest, args).hashCode();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += invoke(handler, buildRequest, args).hashCode();
+        }
+        long bytes = (threads.getThreadAllocatedBytes(threadId) - before) / ITERATIONS;
+
+        assertTrue("allocates " + bytes + " B/op, budget is " + BUDGET_BYTES + " (" + sink + ")",
+                bytes <= BUDGET_BYTES);
+    }
+
+    private static okhttp3.Request invoke(JtRetrofit.MethodHandler handler, MethodHandle buildRequest,
+                                          Object[] args) throws Throwable {
+        return (okhttp3.Request) buildRequest.invoke(handler.newBuilder(args).build());
+    }
+}
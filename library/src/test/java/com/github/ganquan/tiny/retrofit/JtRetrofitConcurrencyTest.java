@@ -0,0 +1,164 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class JtRetrofitConcurrencyTest {
+    private static final int THREADS = 16;
+    private static final int ITERATIONS = 200;
+
+    /**
+     * 每个MethodHandler解析时得到一个新的converter，converter返回自己的Token，
+     * 由此知道每次调用实际使用的是哪个MethodHandler
+     */
+    static final class Token {
+    }
+
+    interface HammerService {
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost/users/{id}")
+        Single<Token> user(@Path("id") String id);
+
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost/config")
+        Single<Token> config(@Field("key") String key);
+    }
+
+    interface PreloadService {
+        @Url("http://localhost/users")
+        Single<String> users();
+    }
+
+    interface BrokenService {
+        @Url("http://localhost/broken")
+        String broken();
+    }
+
+    @BeforeClass
+    public static void addTokenFactory() {
+        JtRetrofit.addConverterFactory(new Converter.Factory() {
+            @Override
+            public Converter<?> responseBodyConverter(Type type, Annotation[] annotations) {
+                if (type != Token.class) {
+                    return null;
+                }
+                return new Converter<Token>() {
+                    final Token token = new Token();
+
+                    @Override
+                    public Token convert(ResponseBody body) {
+                        return token;
+                    }
+                };
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        HttpClient.setOkHttpClient(new OkHttpClient());
+    }
+
+    private static Set<Token> newTokenSet() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Token, Boolean>()));
+    }
+
+    @Test
+    public void concurrentCreateAndInvokeShareOneMethodHandler() throws Exception {
+        //不经过网络，直接返回200
+        HttpClient.setOkHttpClient(new OkHttpClient.Builder().addInterceptor(new Interceptor() {
+            @Override
+            public Response intercept(Chain chain) {
+                return new Response.Builder().request(chain.request()).protocol(Protocol.HTTP_1_1)
+                        .code(200).message("OK").body(ResponseBody.create(null, "{}")).build();
+            }
+        }).build());
+        final Set<Token> userTokens = newTokenSet();
+        final Set<Token> configTokens = newTokenSet();
+        final Set<Object> services =
+                Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()));
+
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        Future<?>[] futures = new Future<?>[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            futures[t] = executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        HammerService service = JtRetrofit.create(HammerService.class);
+                        services.add(service);
+                        userTokens.add(service.user(String.valueOf(i)).blockingGet());
+                        configTokens.add(service.config("key" + i).blockingGet());
+                    }
+                }
+            });
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(1, services.size());
+        assertEquals(1, userTokens.size());
+        assertEquals(1, configTokens.size());
+    }
+
+    @Test
+    public void preloadCachesMethodHandlers() throws Exception {
+        Method users = PreloadService.class.getDeclaredMethod("users");
+        assertNull(JtRetrofit.cachedMethodHandler(users));
+
+        assertTrue(JtRetrofit.preload(PreloadService.class).blockingAwait(10, TimeUnit.SECONDS));
+        JtRetrofit.MethodHandler preloaded = JtRetrofit.cachedMethodHandler(users);
+        assertNotNull(preloaded);
+        assertSame(preloaded, JtRetrofit.loadMethodHandler(users));
+    }
+
+    @Test
+    public void preloadReportsInvalidMethods() {
+        try {
+            JtRetrofit.preload(BrokenService.class).blockingAwait(10, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.SocketPolicy;
+
+public class MetricsTest {
+    private static final String METHOD = Service.class.getName() + "#call";
+
+    private final MockWebServer server = new MockWebServer();
+    private final Metrics metrics = new Metrics();
+
+    interface Service {
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/call")
+        Single<String> call(@Path("port") int port, @Field("name") String name);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        JtRetrofit.setMetricsListener(metrics);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.setMetricsListener(null);
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+    }
+
+    private Metrics.Snapshot snapshot() {
+        return metrics.snapshot().get(METHOD);
+    }
+
+    private void callExpectingError() {
+        try {
+            JtRetrofit.create(Service.class).call(server.getPort(), "x").blockingGet();
+            fail();
+        } catch (RuntimeException expected) {
+        }
+    }
+
+    @Test
+    public void histogramPercentilesStayWithinBucketError() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), snapshot.max());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500) + 500000, snapshot.mean());
+        assertNear(TimeUnit.MILLISECONDS.toNanos(500), snapshot.percentile(0.5));
+        assertNear(TimeUnit.MILLISECONDS.toNanos(990), snapshot.percentile(0.99));
+    }
+
+    private static void assertNear(long expected, long actual) {
+        assertTrue(expected + " vs " + actual, Math.abs(actual - expected) <= expected / 4);
+    }
+
+    @Test
+    public void histogramBucketsAreContiguous() {
+        for (int i = 1; i < Histogram.BUCKET_COUNT; i++) {
+            long lower = Histogram.lowerBound(i);
+            assertEquals(i, Histogram.bucket(lower));
+            assertEquals(i - 1, Histogram.bucket(lower - 1));
+        }
+        assertEquals(Histogram.BUCKET_COUNT - 1, Histogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void recordsPhasesAndBytesPerMethod() {
+        String body = "\"hello metrics\"";
+        server.enqueue(new MockResponse().setBody(body));
+        server.enqueue(new MockResponse().setBody(body));
+        Service service = JtRetrofit.create(Service.class);
+
+        assertEquals("hello metrics", service.call(server.getPort(), "x").blockingGet());
+        assertEquals("hello metrics", service.call(server.getPort(), "x").blockingGet());
+
+        Metrics.Snapshot snapshot = snapshot();
+        assertEquals(2, snapshot.count());
+        assertEquals(2 * "name=x".length(), snapshot.requestBytes());
+        assertEquals(2 * body.length(), snapshot.responseBytes());
+        for (MetricsListener.Phase phase : new MetricsListener.Phase[]{MetricsListener.Phase.QUEUE,
+                MetricsListener.Phase.TTFB, MetricsListener.Phase.BODY, MetricsListener.Phase.DECODE,
+                MetricsListener.Phase.TOTAL}) {
+            assertEquals(phase.toString(), 2, snapshot.phase(phase).count());
+        }
+        assertEquals("second call reuses the connection", 1,
+                snapshot.phase(MetricsListener.Phase.CONNECT).count());
+        assertEquals(0, snapshot.phase(MetricsListener.Phase.TLS).count());
+    }
+
+    @Test
+    public void classifiesErrors() {
+        HttpClient.setOkHttpClient(new OkHttpClient.Builder()
+                .readTimeout(300, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(false)
+                .build());
+        server.enqueue(new MockResponse().setResponseCode(503));
+        callExpectingError();
+        server.enqueue(new MockResponse().setResponseCode(404));
+        callExpectingError();
+        server.enqueue(new MockResponse().setBody("{not json"));
+        callExpectingError();
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        callExpectingError();
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.NO_RESPONSE));
+        callExpectingError();
+
+        Metrics.Snapshot snapshot = snapshot();
+        assertEquals(5, snapshot.count());
+        assertEquals(1, snapshot.errorCount(MetricsListener.ErrorClass.SERVER_ERROR));
+        assertEquals(1, snapshot.errorCount(MetricsListener.ErrorClass.CLIENT_ERROR));
+        assertEquals(1, snapshot.errorCount(MetricsListener.ErrorClass.DECODE));
+        assertEquals(1, snapshot.errorCount(MetricsListener.ErrorClass.IO));
+        assertEquals(1, snapshot.errorCount(MetricsListener.ErrorClass.TIMEOUT));
+    }
+
+    @Test
+    public void existingEventListenerStillReceivesEvents() {
+        final AtomicInteger callStarts = new AtomicInteger();
+        HttpClient.setOkHttpClient(new OkHttpClient.Builder()
+                .eventListener(new EventListener() {
+                    @Override
+                    public void callStart(Call call) {
+                        callStarts.incrementAndGet();
+                    }
+                })
+                .build());
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+
+        JtRetrofit.create(Service.class).call(server.getPort(), "x").blockingGet();
+
+        assertEquals(1, callStarts.get());
+        assertEquals(1, snapshot().phase(MetricsListener.Phase.TTFB).count());
+    }
+}
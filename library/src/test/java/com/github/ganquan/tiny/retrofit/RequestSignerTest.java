@@ -0,0 +1,204 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Random;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.After;
+import org.junit.Test;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.RequestBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class RequestSignerTest {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] SECRET = "secret".getBytes(UTF_8);
+
+    @After
+    public void tearDown() {
+        JtRetrofit.setRequestSigner(null);
+        JtRetrofit.clearHttpInterceptors();
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+    }
+
+    private static RequestSigner.Params params(final String... namesAndValues) {
+        return new RequestSigner.Params() {
+            @Override
+            public int size() {
+                return namesAndValues.length / 2;
+            }
+
+            @Override
+            public String name(int index) {
+                return namesAndValues[index * 2];
+            }
+
+            @Override
+            public String value(int index) {
+                return namesAndValues[index * 2 + 1];
+            }
+        };
+    }
+
+    @Test
+    public void knownAnswers() {
+        RequestSigner signer = new RequestSigner.Builder(SECRET).build();
+        assertEquals("1078689167b419cc2e2157158d3dbbbc24a0dafe399bbb39625802d1a7ac87ec",
+                signer.sign(params("b", "2", "a", "1", "c", "中文 😀", "sign", "stale", "a", "0")));
+        assertEquals("f9e66e179b6747ae54108f82f8ade8b3c25d76fd30afde6c395822c530196169", signer.sign(params()));
+
+        RequestSigner sha1 = new RequestSigner.Builder("key".getBytes(UTF_8))
+                .algorithm("HmacSHA1").exclude("token").build();
+        assertEquals("16e1f602a0436e26b6933bdeeeca7c0b94bfa42c",
+                sha1.sign(params("name", "Gan Quan", "token", "t", "id", "42")));
+    }
+
+    @Test
+    public void failedSignDoesNotLeakIntoNextOne() {
+        RequestSigner signer = new RequestSigner.Builder(SECRET).build();
+        final RequestSigner.Params params = params("a", "1", "b", "2");
+        try {
+            signer.sign(new RequestSigner.Params() {
+                @Override
+                public int size() {
+                    return params.size();
+                }
+
+                @Override
+                public String name(int index) {
+                    return params.name(index);
+                }
+
+                @Override
+                public String value(int index) {
+                    if (index == 1) {
+                        throw new IllegalStateException("value not ready");
+                    }
+                    return params.value(index);
+                }
+            });
+            throw new AssertionError();
+        } catch (IllegalStateException expected) {
+        }
+
+        assertEquals(new RequestSigner.Builder(SECRET).build().sign(params), signer.sign(params));
+    }
+
+    @Test
+    public void matchesConcatenatedString() throws Exception {
+        RequestSigner signer = new RequestSigner.Builder(SECRET).build();
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(SECRET, "HmacSHA256"));
+        Random random = new Random(7);
+        char[] alphabet = {'a', 'Z', '0', ' ', '&', '=', 'é', '中', '\ud83d', '\ude00', '\u0000'};
+
+        for (int round = 0; round < 200; round++) {
+            String[] namesAndValues = new String[2 * (1 + random.nextInt(6))];
+            for (int i = 0; i < namesAndValues.length; i++) {
+                //偶尔生成超过缓冲区长度的值
+                char[] chars = new char[random.nextInt(round % 10 == 0 ? 400 : 12)];
+                for (int j = 0; j < chars.length; j++) {
+                    chars[j] = alphabet[random.nextInt(alphabet.length)];
+                }
+                namesAndValues[i] = i % 2 == 0 ? "k" + random.nextInt(4) + new String(chars) : new String(chars);
+            }
+            Integer[] order = new Integer[namesAndValues.length / 2];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            final String[] source = namesAndValues;
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(Integer a, Integer b) {
+                    return source[a * 2].compareTo(source[b * 2]);
+                }
+            });
+            StringBuilder expected = new StringBuilder();
+            for (int i : order) {
+                if (expected.length() > 0) {
+                    expected.append('&');
+                }
+                expected.append(source[i * 2]).append('=').append(source[i * 2 + 1]);
+            }
+            byte[] digest = mac.doFinal(expected.toString().getBytes(UTF_8));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+
+            assertEquals(hex.toString(), signer.sign(params(namesAndValues)));
+        }
+    }
+
+    @Test
+    public void signsFinalParamsIntoParam() {
+        JtRetrofit.addStaticHttpInterceptor(new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                apiParams.put("c", "中文 😀");
+            }
+        });
+        RequestSigner signer = new RequestSigner.Builder(SECRET).build();
+        JtRetrofit.setRequestSigner(signer);
+
+        Map<String, String> params = JtRetrofit.create().url("http://localhost/x")
+                .addFormParams("sign", "stale")
+                .addField("b", 2)
+                .addField("a", Arrays.asList(1, 0))
+                .build().getFormEncodeParams();
+
+        assertEquals("1078689167b419cc2e2157158d3dbbbc24a0dafe399bbb39625802d1a7ac87ec", params.get("sign"));
+        assertEquals(5, params.size());
+    }
+
+    @Test
+    public void signsMultipartTextFieldsIntoHeader() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+        server.start();
+        try {
+            JtRetrofit.setRequestSigner(new RequestSigner.Builder("key".getBytes(UTF_8))
+                    .algorithm("HmacSHA1").header("X-Sign").build());
+
+            HttpClient.create().url(server.url("/upload").toString())
+                    .addFormParams("name", "Gan Quan")
+                    .addFormParams("id", "42")
+                    .addFormDataPart("file", "a.txt", RequestBody.create(MediaType.parse("text/plain"), "hello"))
+                    .build()
+                    .post(JtRetrofit.<String>responseBodyConverter(String.class, null),
+                            ThreadingPolicy.of(ThreadMode.IMMEDIATE, ThreadMode.IMMEDIATE))
+                    .blockingGet();
+
+            RecordedRequest request = server.takeRequest();
+            assertEquals("16e1f602a0436e26b6933bdeeeca7c0b94bfa42c", request.getHeader("X-Sign"));
+            assertEquals(-1, request.getBody().readString(UTF_8).indexOf("name=\"sign\""));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownAlgorithm() {
+        new RequestSigner.Builder(SECRET).algorithm("HmacNope").build();
+    }
+
+    @Test
+    public void headerModeHasNoParamName() {
+        RequestSigner signer = new RequestSigner.Builder(SECRET).header("X-Sign").build();
+        assertNull(signer.getParamName());
+        assertEquals("X-Sign", signer.getHeaderName());
+    }
+}
@@ -0,0 +1,164 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.ganquan.tiny.retrofit.annotate.Cacheable;
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.ResponseBody;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class ResponseCacheTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Converter<String> STRING = new Converter<String>() {
+        @Override
+        public String convert(ResponseBody body) throws IOException {
+            return body.string();
+        }
+    };
+
+    interface Service {
+        @Threading(subscribeOn = ThreadMode.IMMEDIATE, observeOn = ThreadMode.IMMEDIATE)
+        @Cacheable(ttl = 1, unit = TimeUnit.MINUTES, excludeParams = "ts")
+        @Url("http://localhost:{port}/config")
+        Single<String> config(@Path("port") int port, @Field("key") String key, @Field("ts") String ts);
+    }
+
+    @After
+    public void tearDown() {
+        JtRetrofit.setResponseCache(new ResponseCache.Builder().build());
+    }
+
+    @Test
+    public void memoryTierEvictsLeastRecentlyUsed() {
+        ResponseCache cache = new ResponseCache.Builder().maxEntries(2).build();
+        cache.put("a", String.class, "A", null, 60000);
+        cache.put("b", String.class, "B", null, 60000);
+        assertEquals("A", cache.get("a", String.class, STRING));
+        cache.put("c", String.class, "C", null, 60000);
+
+        assertNull(cache.get("b", String.class, STRING));
+        assertEquals("A", cache.get("a", String.class, STRING));
+        assertEquals("C", cache.get("c", String.class, STRING));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.evictionCount());
+        assertEquals(3, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void expiredEntriesAreMisses() throws Exception {
+        ResponseCache cache = new ResponseCache.Builder().build();
+        cache.put("a", String.class, "A", null, 1);
+        Thread.sleep(20);
+
+        assertNull(cache.get("a", String.class, STRING));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.evictionCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void memoryTierIsKeyedByResponseType() {
+        ResponseCache cache = new ResponseCache.Builder().build();
+        cache.put("a", String.class, "A", null, 60000);
+        assertNull(cache.get("a", Integer.class, new Converter<Integer>() {
+            @Override
+            public Integer convert(ResponseBody body) {
+                throw new AssertionError();
+            }
+        }));
+    }
+
+    @Test
+    public void diskTierSurvivesNewInstance() throws Exception {
+        File directory = folder.newFolder();
+        ResponseCache first = new ResponseCache.Builder().diskCache(directory, 1024).build();
+        first.put("a", String.class, "A", "\"A\"".getBytes("UTF-8"), 60000);
+
+        ResponseCache second = new ResponseCache.Builder().diskCache(directory, 1024).build();
+        assertEquals("\"A\"", second.get("a", String.class, STRING));
+        assertEquals(1, second.diskHitCount());
+        // 磁盘命中后提升到内存层
+        second.get("a", String.class, STRING);
+        assertEquals(1, second.memoryHitCount());
+    }
+
+    @Test
+    public void diskTierIsKeyedByResponseType() throws Exception {
+        File directory = folder.newFolder();
+        ResponseCache cache = new ResponseCache.Builder().maxEntries(0).diskCache(directory, 1024).build();
+        cache.put("a", String.class, "A", "A".getBytes("UTF-8"), 60000);
+        cache.put("a", Integer.class, 1, "1".getBytes("UTF-8"), 60000);
+
+        assertEquals(2, directory.listFiles().length);
+        assertEquals("A", cache.get("a", String.class, STRING));
+        assertEquals(Integer.valueOf(1), cache.get("a", Integer.class, new Converter<Integer>() {
+            @Override
+            public Integer convert(ResponseBody body) throws IOException {
+                return Integer.valueOf(body.string());
+            }
+        }));
+    }
+
+    @Test
+    public void diskTierEvictsOldestFilesOverLimit() throws Exception {
+        File directory = folder.newFolder();
+        ResponseCache cache = new ResponseCache.Builder()
+                .maxEntries(0)
+                .diskCache(directory, 250)
+                .build();
+        byte[] raw = new byte[100];
+        cache.put("a", String.class, "A", raw, 60000);
+        cache.put("b", String.class, "B", raw, 60000);
+        cache.put("c", String.class, "C", raw, 60000);
+
+        assertTrue(cache.diskSize() <= 250);
+        assertEquals(1, cache.evictionCount());
+        assertEquals(2, directory.listFiles().length);
+        assertNull(cache.get("a", String.class, STRING));
+    }
+
+    @Test
+    public void cacheableMethodHitsServerOnce() throws Exception {
+        ResponseCache cache = new ResponseCache.Builder().build();
+        JtRetrofit.setResponseCache(cache);
+        MockWebServer server = new MockWebServer();
+        server.enqueue(new MockResponse().setBody("\"first\""));
+        server.enqueue(new MockResponse().setBody("\"other\""));
+        server.start();
+        try {
+            Service service = JtRetrofit.create(Service.class);
+            String first = service.config(server.getPort(), "k", "1").blockingGet();
+            // ts不参与缓存key
+            assertSame(first, service.config(server.getPort(), "k", "2").blockingGet());
+            assertEquals("other", service.config(server.getPort(), "other", "3").blockingGet());
+
+            assertEquals("first", first);
+            assertEquals(2, server.getRequestCount());
+            assertEquals(1, cache.hitCount());
+            assertEquals(2, cache.missCount());
+        } finally {
+            server.shutdown();
+        }
+    }
+}
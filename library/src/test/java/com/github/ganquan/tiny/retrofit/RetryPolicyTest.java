@@ -0,0 +1,174 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Hedge;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Retry;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+public class RetryPolicyTest {
+    private final MockWebServer server = new MockWebServer();
+
+    interface Service {
+        @Retry(maxAttempts = 3, backoff = 10)
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/retry")
+        Single<String> retry(@Path("port") int port);
+
+        @Hedge(delay = 100)
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/hedge")
+        Single<String> hedge(@Path("port") int port);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private Service service() {
+        return JtRetrofit.create(Service.class);
+    }
+
+    @Test
+    public void retriesServerErrorsUntilSuccess() {
+        server.enqueue(new MockResponse().setResponseCode(503));
+        server.enqueue(new MockResponse().setResponseCode(502));
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+
+        assertEquals("ok", service().retry(server.getPort()).blockingGet());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void retriesDroppedConnections() {
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AT_START));
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+
+        assertEquals("ok", service().retry(server.getPort()).blockingGet());
+    }
+
+    @Test
+    public void doesNotRetryClientErrors() {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setBody("\"ok\""));
+
+        try {
+            service().retry(server.getPort()).blockingGet();
+            throw new AssertionError();
+        } catch (RuntimeException e) {
+            assertEquals(404, ((JtApiException) e.getCause()).httpCode);
+        }
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void givesUpAfterMaxAttempts() {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(new MockResponse().setResponseCode(500));
+        }
+        try {
+            service().retry(server.getPort()).blockingGet();
+            throw new AssertionError();
+        } catch (RuntimeException e) {
+            assertEquals(500, ((JtApiException) e.getCause()).httpCode);
+        }
+        assertEquals(3, server.getRequestCount());
+    }
+
+    @Test
+    public void hedgedRequestWinsOverSlowOne() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger requests = new AtomicInteger();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if (requests.incrementAndGet() == 1) {
+                    release.await(10, TimeUnit.SECONDS);
+                    return new MockResponse().setBody("\"slow\"");
+                }
+                return new MockResponse().setBody("\"fast\"");
+            }
+        });
+        try {
+            long start = System.nanoTime();
+            assertEquals("fast", service().hedge(server.getPort()).blockingGet());
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000);
+            assertEquals(2, requests.get());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void adaptiveHedgeDelayKeepsSubMillisecondP95() {
+        HedgePolicy policy = new HedgePolicy(50, TimeUnit.MILLISECONDS, true);
+        assertEquals(50, policy.delayMillis());
+        for (int i = 0; i < 100; i++) {
+            policy.record(TimeUnit.MICROSECONDS.toNanos(i < 95 ? 200 : 800));
+        }
+
+        assertEquals(TimeUnit.MICROSECONDS.toNanos(800), policy.delayNanos());
+        assertEquals(1, policy.delayMillis());
+    }
+
+    @Test
+    public void backoffGrowsExponentiallyWithinJitter() {
+        RetryPolicy policy = new RetryPolicy.Builder()
+                .backoff(100, 1000, TimeUnit.MILLISECONDS)
+                .jitter(0.5)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            assertInRange(policy.backoffMillis(1), 50, 100);
+            assertInRange(policy.backoffMillis(3), 200, 400);
+            assertInRange(policy.backoffMillis(10), 500, 1000);
+        }
+    }
+
+    @Test
+    public void classifiesErrors() {
+        RetryPolicy policy = new RetryPolicy.Builder().build();
+        assertTrue(policy.isRetryable(new IOException()));
+        assertTrue(policy.isRetryable(httpError(503)));
+        assertTrue(policy.isRetryable(httpError(429)));
+        assertFalse(policy.isRetryable(httpError(404)));
+        assertFalse(policy.isRetryable(new JtApiException(-1, "malformed json")));
+        assertFalse(new RetryPolicy.Builder().retryOnIOException(false).build()
+                .isRetryable(new IOException()));
+    }
+
+    private static JtApiException httpError(int code) {
+        JtApiException error = new JtApiException(-1, "http " + code);
+        error.httpCode = code;
+        return error;
+    }
+
+    private static void assertInRange(long value, long min, long max) {
+        assertTrue(value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+    }
+}
@@ -0,0 +1,216 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Field;
+import com.github.ganquan.tiny.retrofit.annotate.GET;
+import com.github.ganquan.tiny.retrofit.annotate.Header;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Query;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+public class RevalidationTest {
+    private static final String BODY = "{\"name\":\"" + new String(new char[4096]).replace('\0', 'x') + "\"}";
+
+    private final MockWebServer server = new MockWebServer();
+    /**
+     * 每个响应读取的响应体字节数
+     */
+    private final List<Long> bodyBytes = new CopyOnWriteArrayList<>();
+
+    static class Config {
+        String name;
+    }
+
+    interface Service {
+        @GET
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/config")
+        Single<Config> config(@Path("port") int port, @Query("v") List<Integer> versions,
+                              @Header("X-Lang") String language);
+
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/update")
+        Single<Config> update(@Path("port") int port, @Query("v") int version, @Field("name") String name);
+
+        @GET
+        @Url("http://localhost:{port}/bad")
+        Single<Config> bad(@Path("port") int port, @Field("name") String name);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        HttpClient.setOkHttpClient(new OkHttpClient.Builder().eventListener(new EventListener() {
+            @Override
+            public void responseBodyEnd(Call call, long byteCount) {
+                bodyBytes.add(byteCount);
+            }
+        }).build());
+        JtRetrofit.setRevalidationCache(new RevalidationCache.Builder().excludeParams("ts").build());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.setRevalidationCache(null);
+        JtRetrofit.clearHttpInterceptors();
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+    }
+
+    private Config config() {
+        return JtRetrofit.create(Service.class).config(server.getPort(), Arrays.asList(1, 2), "zh")
+                .blockingGet();
+    }
+
+    @Test
+    public void notModifiedReturnsStoredObjectWithoutBody() throws Exception {
+        server.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+
+        Config first = config();
+        Config second = config();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("GET", request.getMethod());
+        assertEquals("/config?v=1&v=2", request.getPath());
+        assertEquals("zh", request.getHeader("X-Lang"));
+        assertNull(request.getHeader("If-None-Match"));
+        assertEquals(0, request.getBodySize());
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+
+        assertSame(first, second);
+        assertEquals(2, bodyBytes.size());
+        assertTrue(bodyBytes.get(0) >= BODY.length());
+        assertEquals(0L, (long) bodyBytes.get(1));
+        assertEquals(1, JtRetrofit.getRevalidationCache().revalidatedCount());
+    }
+
+    @Test
+    public void headerValuesAreKeyedSeparately() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"name\":\"中文\"}").setHeader("ETag", "\"zh\""));
+        server.enqueue(new MockResponse().setBody("{\"name\":\"english\"}").setHeader("ETag", "\"en\""));
+        Service service = JtRetrofit.create(Service.class);
+
+        Config zh = service.config(server.getPort(), Arrays.asList(1, 2), "zh").blockingGet();
+        Config en = service.config(server.getPort(), Arrays.asList(1, 2), "en").blockingGet();
+
+        server.takeRequest();
+        RecordedRequest request = server.takeRequest();
+        assertEquals("en", request.getHeader("X-Lang"));
+        assertNull(request.getHeader("If-None-Match"));
+        assertEquals("中文", zh.name);
+        assertEquals("english", en.name);
+        assertEquals(2, JtRetrofit.getRevalidationCache().size());
+    }
+
+    @Test
+    public void builderRequestsDoNotFillStore() throws Exception {
+        server.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setBody(BODY).setHeader("ETag", "\"v1\""));
+
+        JtRetrofit.setThreadingPolicy(ThreadingPolicy.of(ThreadMode.IMMEDIATE, ThreadMode.IMMEDIATE));
+        try {
+            for (int i = 0; i < 2; i++) {
+                HttpClient.create().url(server.url("/config").toString()).get().build()
+                        .post(Config.class).blockingGet();
+            }
+        } finally {
+            JtRetrofit.setThreadingPolicy(ThreadingPolicy.DEFAULT);
+        }
+
+        server.takeRequest();
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+        assertEquals(0, JtRetrofit.getRevalidationCache().size());
+    }
+
+    @Test
+    public void changedResponseReplacesStoredObject() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"name\":\"a\"}")
+                .setHeader("Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"));
+        server.enqueue(new MockResponse().setBody("{\"name\":\"b\"}"));
+        server.enqueue(new MockResponse().setBody("{\"name\":\"c\"}"));
+
+        Config a = config();
+        Config b = config();
+        Config c = config();
+
+        server.takeRequest();
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", server.takeRequest().getHeader("If-Modified-Since"));
+        //第二个响应没有验证信息，条目被删除
+        assertNull(server.takeRequest().getHeader("If-Modified-Since"));
+        assertEquals("a", a.name);
+        assertEquals("b", b.name);
+        assertNotSame(b, c);
+        assertEquals(0, JtRetrofit.getRevalidationCache().size());
+    }
+
+    @Test
+    public void commonParamsGoToQueryAndExcludedParamsKeepKey() throws Exception {
+        JtRetrofit.addHttpInterceptor(new IHttpInterceptor() {
+            @Override
+            public void onHandleDataParams(Map<String, String> apiParams) {
+                apiParams.put("ts", String.valueOf(System.nanoTime()));
+                apiParams.put("channel", "store");
+            }
+        });
+        server.enqueue(new MockResponse().setBody("{\"name\":\"a\"}").setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setResponseCode(304));
+
+        Config first = config();
+        Config second = config();
+
+        assertTrue(server.takeRequest().getPath().matches("/config\\?v=1&v=2&ts=\\d+&channel=store"));
+        assertEquals("\"v1\"", server.takeRequest().getHeader("If-None-Match"));
+        assertSame(first, second);
+    }
+
+    @Test
+    public void postSendsQueryInUrlAndFieldsInBody() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"name\":\"a\"}").setHeader("ETag", "\"v1\""));
+        server.enqueue(new MockResponse().setBody("{\"name\":\"a\"}").setHeader("ETag", "\"v1\""));
+
+        JtRetrofit.create(Service.class).update(server.getPort(), 3, "Bob Smith").blockingGet();
+        JtRetrofit.create(Service.class).update(server.getPort(), 3, "Bob Smith").blockingGet();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals("/update?v=3", request.getPath());
+        assertEquals("name=Bob%20Smith", request.getBody().readUtf8());
+        assertNull(server.takeRequest().getHeader("If-None-Match"));
+    }
+
+    @Test
+    public void getRejectsFields() {
+        try {
+            JtRetrofit.create(Service.class).bad(server.getPort(), "x");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage().contains("@Query"));
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.ArrayPath;
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import io.reactivex.subscribers.TestSubscriber;
+import okhttp3.ConnectionPool;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class StreamingTest {
+    private static final AtomicInteger DECODED = new AtomicInteger();
+
+    private final MockWebServer server = new MockWebServer();
+
+    static class Item {
+        int id;
+
+        Item() {
+            DECODED.incrementAndGet();
+        }
+    }
+
+    interface Service {
+        @Threading(subscribeOn = ThreadMode.IMMEDIATE, observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/items")
+        Flowable<Integer> numbers(@Path("port") int port);
+
+        @Threading(subscribeOn = ThreadMode.IMMEDIATE, observeOn = ThreadMode.IMMEDIATE)
+        @ArrayPath("data.items")
+        @Url("http://localhost:{port}/items")
+        Flowable<Item> items(@Path("port") int port);
+
+        @Threading(observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/items")
+        Flowable<Item> itemsOnIo(@Path("port") int port);
+
+        @ArrayPath("items")
+        @Url("http://localhost:{port}/items")
+        Single<List<Item>> notStreaming(@Path("port") int port);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        DECODED.set(0);
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        HttpClient.setOkHttpClient(new OkHttpClient());
+        HttpClient.setConfig(HttpClient.Config.DEFAULT);
+        server.shutdown();
+    }
+
+    private static String items(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            json.append(i > 0 ? "," : "").append("{\"id\":").append(i).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    @Test
+    public void emitsTopLevelArrayElements() {
+        server.enqueue(new MockResponse().setBody("[1, 2, null, 3]"));
+
+        List<Integer> numbers = JtRetrofit.create(Service.class).numbers(server.getPort())
+                .toList().blockingGet();
+
+        assertEquals(Arrays.asList(1, 2, 3), numbers);
+    }
+
+    @Test
+    public void emitsNestedArrayAndSkipsOtherFields() {
+        server.enqueue(new MockResponse().setBody("{\"code\":0,\"data\":{\"meta\":{\"items\":[9]},"
+                + "\"items\":[{\"id\":1},{\"id\":2}],\"total\":2}}"));
+
+        List<Item> items = JtRetrofit.create(Service.class).items(server.getPort()).toList().blockingGet();
+
+        assertEquals(2, items.size());
+        assertEquals(1, items.get(0).id);
+        assertEquals(2, items.get(1).id);
+    }
+
+    @Test
+    public void decodesOnlyRequestedElements() {
+        server.enqueue(new MockResponse().setBody("{\"data\":{\"items\":" + items(20000) + "}}"));
+        TestSubscriber<Item> subscriber = JtRetrofit.create(Service.class).items(server.getPort()).test(0);
+        assertEquals(0, DECODED.get());
+
+        subscriber.request(5);
+        subscriber.assertValueCount(5).assertNotComplete();
+        assertEquals(5, DECODED.get());
+
+        subscriber.request(Long.MAX_VALUE);
+        subscriber.assertValueCount(20000).assertComplete();
+        assertEquals(19999, subscriber.values().get(19999).id);
+    }
+
+    @Test
+    public void slowConsumerPausesDecoding() throws Exception {
+        server.enqueue(new MockResponse().setBody(items(20000)));
+        TestSubscriber<Item> subscriber = JtRetrofit.create(Service.class).itemsOnIo(server.getPort())
+                .test(10);
+
+        subscriber.awaitCount(10);
+        Thread.sleep(200);
+        assertEquals("decoding stops at the requested count", 10, DECODED.get());
+
+        subscriber.request(Long.MAX_VALUE);
+        assertTrue(subscriber.await(5, TimeUnit.SECONDS));
+        subscriber.assertValueCount(20000).assertComplete();
+    }
+
+    @Test
+    public void emitsElementsBeforeMalformedTail() {
+        server.enqueue(new MockResponse().setBody("[{\"id\":1},{\"id\":2},{\"id\""));
+
+        TestSubscriber<Item> subscriber = JtRetrofit.create(Service.class).itemsOnIo(server.getPort()).test();
+
+        subscriber.awaitTerminalEvent();
+        subscriber.assertValueCount(2).assertError(JtApiException.class);
+    }
+
+    @Test
+    public void cancelReleasesConnection() throws Exception {
+        server.enqueue(new MockResponse().setBody(items(20000)));
+        server.enqueue(new MockResponse().setBody("[7]"));
+        Service service = JtRetrofit.create(Service.class);
+
+        assertEquals(2, service.itemsOnIo(server.getPort()).take(2).toList().blockingGet().size());
+        assertEquals(Arrays.asList(7), service.numbers(server.getPort()).toList().blockingGet());
+        //取消后在解析线程上关闭响应体
+        ConnectionPool pool = HttpClient.getHttpClient().connectionPool();
+        for (int i = 0; i < 100 && pool.connectionCount() != pool.idleConnectionCount(); i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(pool.connectionCount(), pool.idleConnectionCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void arrayPathRequiresFlowable() {
+        JtRetrofit.create(Service.class).notStreaming(server.getPort());
+    }
+}
@@ -0,0 +1,71 @@
+package com.github.ganquan.tiny.retrofit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.ganquan.tiny.retrofit.annotate.Path;
+import com.github.ganquan.tiny.retrofit.annotate.Threading;
+import com.github.ganquan.tiny.retrofit.annotate.Url;
+
+import io.reactivex.Single;
+import io.reactivex.functions.Consumer;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+public class ThreadingPolicyTest {
+    private final MockWebServer server = new MockWebServer();
+    private final AtomicReference<Thread> deliveredOn = new AtomicReference<>();
+
+    interface Service {
+        @Url("http://localhost:{port}/global")
+        Single<String> global(@Path("port") int port);
+
+        @Threading(subscribeOn = ThreadMode.IMMEDIATE, observeOn = ThreadMode.IMMEDIATE)
+        @Url("http://localhost:{port}/immediate")
+        Single<String> immediate(@Path("port") int port);
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        JtRetrofit.setThreadingPolicy(ThreadingPolicy.DEFAULT);
+        server.shutdown();
+    }
+
+    private String await(Single<String> single) {
+        return single.doOnSuccess(new Consumer<String>() {
+            @Override
+            public void accept(String value) throws Exception {
+                deliveredOn.set(Thread.currentThread());
+            }
+        }).blockingGet();
+    }
+
+    @Test
+    public void globalPolicyDeliversOnIoThread() {
+        JtRetrofit.setThreadingPolicy(ThreadingPolicy.BACKGROUND);
+        server.enqueue(new MockResponse().setBody("\"global\""));
+
+        assertEquals("global", await(JtRetrofit.create(Service.class).global(server.getPort())));
+        assertTrue(deliveredOn.get().getName(), deliveredOn.get().getName().startsWith("RxCached"));
+    }
+
+    @Test
+    public void methodAnnotationOverridesGlobalPolicy() {
+        server.enqueue(new MockResponse().setBody("\"immediate\""));
+
+        assertEquals("immediate", await(JtRetrofit.create(Service.class).immediate(server.getPort())));
+        assertSame(Thread.currentThread(), deliveredOn.get());
+    }
+}
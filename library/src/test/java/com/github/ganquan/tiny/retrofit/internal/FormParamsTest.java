@@ -0,0 +1,94 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+import okhttp3.FormBody;
+import okhttp3.RequestBody;
+import okio.Buffer;
+
+public class FormParamsTest {
+    private static final String[] SAMPLES = {
+            "", "plain", "Bob Smith", "a+b=c&d", "100%", "~!@#$^*()_-[]{}|\\;:'\",.<>/?`",
+            "\t\r\n\u007f", "中文", "é", "emoji 😀", "lone \ud83d surrogate", "\udc00"};
+
+    private static String body(RequestBody body) throws IOException {
+        Buffer buffer = new Buffer();
+        body.writeTo(buffer);
+        assertEquals(body.contentLength(), buffer.size());
+        return buffer.readUtf8();
+    }
+
+    @Test
+    public void encodesLikeOkHttpFormBody() throws IOException {
+        for (String name : SAMPLES) {
+            for (String value : SAMPLES) {
+                FormParams params = new FormParams();
+                params.add(name, value);
+                params.add("k", value);
+                FormBody expected = new FormBody.Builder().add(name, value).add("k", value).build();
+
+                assertEquals(name + "=" + value, body(expected), body(params.toRequestBody()));
+            }
+        }
+        assertEquals(new FormBody.Builder().build().contentType(), new FormParams().toRequestBody().contentType());
+    }
+
+    @Test
+    public void keepsOrderAndRepeatedNames() throws IOException {
+        FormParams params = new FormParams(1);
+        params.add("b", "1");
+        params.add("a", "2");
+        params.add("b", "3");
+        params.add("c", null);
+
+        assertEquals("b=1&a=2&b=3", body(params.toRequestBody()));
+        int[] sorted = params.sortedIndexes();
+        assertEquals(1, sorted[0]);
+        assertEquals(0, sorted[1]);
+        assertEquals(2, sorted[2]);
+    }
+
+    @Test
+    public void mapViewReplacesAndRemoves() throws IOException {
+        FormParams params = new FormParams();
+        params.add("a", "1");
+        params.add("b", "2");
+        params.add("a", "3");
+        Map<String, String> map = params.asMap();
+
+        assertEquals(3, map.size());
+        assertEquals("1", map.get("a"));
+        assertEquals("1", map.put("a", "x"));
+        assertEquals("a=x&b=2", body(params.toRequestBody()));
+
+        map.put("c", "4");
+        assertEquals("2", map.remove("b"));
+        assertNull(map.get("b"));
+        assertEquals("a=x&c=4", body(params.toRequestBody()));
+
+        Iterator<Map.Entry<String, String>> iterator = map.entrySet().iterator();
+        iterator.next().setValue("y");
+        iterator.next();
+        iterator.remove();
+        assertEquals("a=y", body(params.toRequestBody()));
+    }
+
+    @Test
+    public void copyIsIndependent() throws IOException {
+        FormParams params = new FormParams();
+        params.add("a", "1");
+        FormParams copy = new FormParams(params);
+        copy.add("b", "2");
+        params.set("a", "3");
+
+        assertEquals("a=3", body(params.toRequestBody()));
+        assertEquals("a=1&b=2", body(copy.toRequestBody()));
+    }
+}
@@ -0,0 +1,46 @@
+package com.github.ganquan.tiny.retrofit.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class UrlTemplateTest {
+
+    @Test
+    public void expandsPlaceholdersInOrder() {
+        UrlTemplate template = UrlTemplate.parse("http://host/users/{id}/repos/{repo}?tab={id}");
+        assertEquals(3, template.placeholderCount());
+        assertEquals("repo", template.placeholderName(1));
+        assertEquals("http://host/users/42/repos/tiny?tab=42",
+                template.expand(new Object[] {42, "tiny"}, new int[] {0, 1, 0}));
+    }
+
+    @Test
+    public void leavesInvalidPlaceholdersAsLiterals() {
+        UrlTemplate template = UrlTemplate.parse("http://host/{1a}/{}/{ok}");
+        assertEquals(1, template.placeholderCount());
+        assertEquals("http://host/{1a}/{}/x", template.expand(new Object[] {"x"}, null));
+    }
+
+    @Test
+    public void encodesPathSegment() {
+        UrlTemplate template = UrlTemplate.parse("http://host/{name}");
+        assertEquals("http://host/a%20b%2Fc%3F%25d:@!$&'()*+,;=~", template.expand(
+                new Object[] {"a b/c?%d:@!$&'()*+,;=~"}, null));
+        assertEquals("http://host/%E4%B8%AD%F0%9F%98%80",
+                template.expand(new Object[] {"中😀"}, null));
+    }
+
+    @Test
+    public void rejectsNullAndTraversal() {
+        UrlTemplate template = UrlTemplate.parse("http://host/{name}");
+        for (Object value : new Object[] {null, ".", ".."}) {
+            try {
+                template.expand(new Object[] {value}, null);
+                fail();
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+    }
+}